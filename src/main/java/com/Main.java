@@ -1,27 +1,175 @@
 package com;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tradingbot.api.AlphaVantageClient;
+import com.tradingbot.api.SymbolIndex;
+import com.tradingbot.bootstrap.Bootstrap;
 import com.tradingbot.bot.TradingBot;
+import com.tradingbot.cluster.ClusterFront;
+import com.tradingbot.cluster.ClusterWorker;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.database.DatabaseManager;
+import com.tradingbot.fx.FxRates;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+// Avvio rapido con archivio CDS (Class Data Sharing):
+//   java -XX:ArchiveClassesAtExit=tradingbot.jsa -cp ... com.Main --cds-training
+//   java -XX:SharedArchiveFile=tradingbot.jsa -cp ... com.Main
+// Il classpath deve contenere solo jar (il JDK non archivia classi da directory).
+// Il run di addestramento esegue tutto il bootstrap senza collegarsi a Telegram
+// e termina, così l'archivio contiene le classi caricate durante l'avvio.
 public class Main {
+    private static final String TRAINING_UPDATE = """
+            {"update_id":1,"message":{"message_id":1,"date":0,
+             "chat":{"id":1,"type":"private"},"from":{"id":1,"is_bot":false,"first_name":"cds"},
+             "text":"/help"}}
+            """;
+
     public static void main(String[] args) {
+        if (args.length >= 2 && args[0].equals("--worker")) {
+            runWorker(Integer.parseInt(args[1]));
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--cds-training")) {
+            runTraining();
+            return;
+        }
+
         System.out.println("💼 Avvio Trading Simulator Bot...");
 
+        Bootstrap bootstrap = new Bootstrap();
+        int workers = bootstrap.call("configurazione", ConfigManager::getInstance).getClusterWorkers();
+        if (workers > 0) {
+            runFront(bootstrap, workers);
+            return;
+        }
+
         try {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            TradingBot bot = new TradingBot();
-            botsApi.registerBot(bot);
+            // Database (tabelle, replay del journal, classifica) e client HTTP partono in parallelo
+            // mentre il thread principale prepara la sessione Telegram
+            CompletableFuture<DatabaseManager> db = bootstrap.async("database e journal", DatabaseManager::getInstance);
+            CompletableFuture<AlphaVantageClient> api = bootstrap.async("client Alpha Vantage", AlphaVantageClient::getInstance);
+            TelegramBotsApi botsApi = bootstrap.call("sessione Telegram", () -> new TelegramBotsApi(DefaultBotSession.class));
+            Bootstrap.join(db);
+            Bootstrap.join(api);
+
+            TradingBot bot = bootstrap.call("bot", TradingBot::new);
+            bootstrap.run("ripresa offset update", bot::resumeUpdates);
+            bootstrap.run("registrazione bot", () -> botsApi.registerBot(bot));
 
-            System.out.println("✅ Bot avviato con successo!");
+            // Da qui il bot riceve già messaggi: il resto parte in background
+            bootstrap.defer("motore ordini", bot::warmUp);
+            bootstrap.defer("refresher quotazioni", () -> AlphaVantageClient.getInstance().startQuoteRefresher());
+            bootstrap.defer("controllo configurazione", () -> ConfigManager.getInstance().startWatching());
+            bootstrap.defer("riepiloghi watchlist", bot::startDigests);
+            bootstrap.defer("cambi valute", () -> FxRates.getInstance().start());
+            bootstrap.defer("indice simboli", () -> SymbolIndex.getInstance().addSymbols(DatabaseManager.getInstance().getKnownSymbols()));
+            bootstrap.defer("archivio transazioni", () -> DatabaseManager.getInstance().startArchiver());
+
+            System.out.println("✅ Bot avviato con successo in " + bootstrap.elapsedMillis() + " ms!");
             System.out.println("🤖 Username: " + bot.getBotUsername());
             System.out.println("📡 In attesa di messaggi...");
             System.out.println("💡 Gli utenti iniziano con un saldo virtuale di $10,000");
+            bootstrap.finish();
 
         } catch (TelegramApiException e) {
             System.err.println("❌ Errore nell'avvio del bot: " + e.getMessage());
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    // Front del cluster: riceve da Telegram e smista sui worker
+    private static void runFront(Bootstrap bootstrap, int workers) {
+        try {
+            TelegramBotsApi botsApi = bootstrap.call("sessione Telegram", () -> new TelegramBotsApi(DefaultBotSession.class));
+            ClusterFront front = new ClusterFront(workers);
+            bootstrap.run("avvio worker", front::start);
+            bootstrap.run("registrazione front", () -> botsApi.registerBot(front));
+
+            System.out.println("✅ Front avviato con " + workers + " worker in " + bootstrap.elapsedMillis() + " ms");
+            System.out.println("🤖 Username: " + front.getBotUsername());
+            bootstrap.finish();
+        } catch (TelegramApiException e) {
+            System.err.println("❌ Errore nell'avvio del front: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Worker del cluster: non fa polling, riceve gli update dal front
+    private static void runWorker(int port) {
+        System.setProperty("tradingbot.node", "worker" + port);
+        Bootstrap bootstrap = new Bootstrap();
+        try {
+            ConfigManager config = bootstrap.call("configurazione", ConfigManager::getInstance);
+            CompletableFuture<DatabaseManager> db = bootstrap.async("database e journal", DatabaseManager::getInstance);
+            CompletableFuture<AlphaVantageClient> api = bootstrap.async("client Alpha Vantage", AlphaVantageClient::getInstance);
+            Bootstrap.join(db);
+            Bootstrap.join(api);
+            TradingBot bot = bootstrap.call("bot", TradingBot::new);
+            ClusterWorker worker = new ClusterWorker(port, bot);
+
+            bootstrap.defer("motore ordini", bot::warmUp);
+            bootstrap.defer("refresher quotazioni", () -> AlphaVantageClient.getInstance().startQuoteRefresher());
+            bootstrap.defer("controllo configurazione", () -> ConfigManager.getInstance().startWatching());
+            if (config.getClusterWorkerIndex() == 0) {
+                bootstrap.defer("riepiloghi watchlist", bot::startSharedDigests);
+            }
+            bootstrap.defer("cambi valute", () -> FxRates.getInstance().start());
+            bootstrap.defer("indice simboli", () -> SymbolIndex.getInstance().addSymbols(DatabaseManager.getInstance().getKnownSymbols()));
+            bootstrap.finish();
+            worker.run();
+        } catch (IOException e) {
+            System.err.println("❌ Errore nel worker " + port + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Esegue il bootstrap completo senza rete, per generare l'archivio CDS
+    private static void runTraining() {
+        Bootstrap bootstrap = new Bootstrap();
+        Path scratch = null;
+        try {
+            // Database e journal temporanei: non tocca quelli di un'istanza in esecuzione durante un rilascio
+            scratch = Files.createTempDirectory("tradingbot-cds");
+            bootstrap.call("configurazione", ConfigManager::getInstance).useScratchStorage(scratch);
+            CompletableFuture<DatabaseManager> db = bootstrap.async("database e journal", DatabaseManager::getInstance);
+            CompletableFuture<AlphaVantageClient> api = bootstrap.async("client Alpha Vantage", AlphaVantageClient::getInstance);
+            bootstrap.call("sessione Telegram", () -> new TelegramBotsApi(DefaultBotSession.class));
+            Bootstrap.join(db);
+            Bootstrap.join(api);
+            TradingBot bot = bootstrap.call("bot", TradingBot::new);
+            bootstrap.call("decodifica update", () -> new ObjectMapper().readValue(TRAINING_UPDATE, Update.class));
+            bootstrap.defer("motore ordini", bot::warmUp);
+            bootstrap.finish().join();
+
+            DatabaseManager.getInstance().close();
+            deleteRecursively(scratch);
+            System.out.println("✅ Run di addestramento CDS completato");
+        } catch (TelegramApiException | IOException e) {
+            System.err.println("❌ Errore nel run di addestramento: " + e.getMessage());
+            if (scratch != null) {
+                System.err.println("   File temporanei in " + scratch);
+            }
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -1,92 +1,384 @@
 package com.tradingbot.api;
 
 import com.tradingbot.config.ConfigManager;
+import com.tradingbot.money.Money;
+import com.tradingbot.symbols.IntLongMap;
+import com.tradingbot.symbols.SymbolSlots;
+import com.tradingbot.symbols.SymbolTable;
+import com.tradingbot.ticks.TickStore;
+import com.tradingbot.tracing.QuoteCacheEvent;
+import com.tradingbot.tracing.RequestContext;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class AlphaVantageClient {
     private static AlphaVantageClient instance;
     private final OkHttpClient client;
+    // Cache HTTP su disco condivisa tra utenti e riavvii (null se disattivata)
+    private final Cache httpCache;
     private final String apiKey;
     private static final String BASE_URL = "https://www.alphavantage.co/query";
 
-    // Cache per limitare le chiamate API
-    private final Map<String, CachedPrice> priceCache = new HashMap<>();
-    private static final long CACHE_DURATION = 60000; // 1 minuto
+    // Cache per limitare le chiamate API (condivisa con il refresher in background),
+    // indicizzata per id di simbolo
+    private final SymbolTable ids = SymbolTable.getInstance();
+    private final SymbolSlots<CachedPrice> priceCache = new SymbolSlots<>();
+    private volatile long cacheMillis; // QUOTE_CACHE_SECONDS, modificabile a caldo
+
+    // Aggiorna in anticipo i simboli più richiesti
+    private final QuoteRefresher refresher;
+
+    // Storico delle quotazioni osservate per le statistiche intraday
+    private final TickStore ticks = TickStore.getInstance();
+
+    // Simboli e nomi visti nelle risposte, per i suggerimenti offline (modalità inline)
+    private final SymbolIndex symbols = SymbolIndex.getInstance();
+
+    // Componenti interessati ai nuovi prezzi (classifica, ordini, ...)
+    private final List<PriceListener> priceListeners = new CopyOnWriteArrayList<>();
+
+    // Un circuit breaker per famiglia di endpoint e l'ultima risposta valida per richiesta,
+    // servita con la sua età mentre il circuito è aperto (le quotazioni usano priceCache)
+    private final Map<EndpointFamily, CircuitBreaker> breakers = new EnumMap<>(EndpointFamily.class);
+    private final Map<String, LastGood> lastGood = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LastGood> eldest) {
+            return size() > LAST_GOOD_ENTRIES;
+        }
+    };
+    private final ScheduledExecutorService probes = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "breaker-probe");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final int LAST_GOOD_ENTRIES = 256;
+
+    private record LastGood(JsonObject json, long receivedAt) {
+    }
 
     private static class CachedPrice {
-        double price;
-        long timestamp;
+        final long price; // micro-unità
+        final long timestamp;
 
-        CachedPrice(double price) {
+        CachedPrice(long price, long timestamp) {
             this.price = price;
-            this.timestamp = System.currentTimeMillis();
+            this.timestamp = timestamp;
+        }
+
+        boolean isExpired(long ttl) {
+            return System.currentTimeMillis() - timestamp > ttl;
         }
 
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > CACHE_DURATION;
+        long millisToExpiry(long ttl) {
+            return timestamp + ttl - System.currentTimeMillis();
         }
     }
 
+    // Prezzo in cache con la sua età, anche se scaduto
+    public record CachedQuote(long price, long ageMillis) {
+    }
+
+    public record HttpCacheStats(int requests, int networkRequests, int hits, long sizeBytes, long maxBytes) {
+    }
+
     private AlphaVantageClient() {
-        this.client = new OkHttpClient();
-        this.apiKey = ConfigManager.getInstance().getAlphaVantageApiKey();
+        ConfigManager config = ConfigManager.getInstance();
+        this.apiKey = config.getAlphaVantageApiKey();
+        config.subscribe(settings -> cacheMillis = settings.quoteCacheMillis());
+
+        long cacheBytes = config.getHttpCacheSizeMb() * 1024L * 1024L;
+        this.httpCache = cacheBytes > 0 ? new Cache(new File(config.getHttpCacheDir()), cacheBytes) : null;
+        this.client = new OkHttpClient.Builder()
+                .cache(httpCache)
+                .addInterceptor(new TracingInterceptor())
+                .addNetworkInterceptor(new ResponseCachePolicy(() -> cacheMillis))
+                // Un solo host: poche connessioni tenute aperte a lungo evitano nuovi handshake TLS
+                .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .build();
+
+        this.refresher = new QuoteRefresher(this, config);
+
+        for (EndpointFamily family : EndpointFamily.values()) {
+            breakers.put(family, new CircuitBreaker(family, config.getBreakerFailures(),
+                    config.getBreakerCooldownSeconds() * 1000L, config.getBreakerMaxCooldownSeconds() * 1000L));
+        }
     }
 
-    public static AlphaVantageClient getInstance() {
+    public static synchronized AlphaVantageClient getInstance() {
         if (instance == null) {
             instance = new AlphaVantageClient();
         }
         return instance;
     }
 
+    public void addPriceListener(PriceListener listener) {
+        priceListeners.add(listener);
+    }
+
+    public void startQuoteRefresher() {
+        refresher.start();
+    }
+
+    public void stopQuoteRefresher() {
+        refresher.stop();
+    }
+
+    // Per la visualizzazione: se Alpha Vantage non risponde restituisce l'ultimo prezzo noto
+    // con "staleMillis" (la sua età) invece di un errore
     public JsonObject getQuote(String symbol) throws IOException {
+        try {
+            return quote(symbol);
+        } catch (IOException e) {
+            CachedPrice cached = priceCache.get(ids.find(symbol));
+            if (cached == null || !(e instanceof CircuitOpenException || breakers.get(EndpointFamily.QUOTES).isOpen())) {
+                throw e;
+            }
+            JsonObject stale = new JsonObject();
+            stale.addProperty("price", Money.toDouble(cached.price));
+            stale.addProperty("priceMicros", cached.price);
+            stale.addProperty("cached", true);
+            stale.addProperty("staleMillis", System.currentTimeMillis() - cached.timestamp);
+            return stale;
+        }
+    }
+
+    // Solo prezzi entro la validità della cache: un trade non deve mai usare un prezzo vecchio
+    private JsonObject quote(String symbol) throws IOException {
+        refresher.recordRequest(symbol);
+
         // Controlla la cache
-        CachedPrice cached = priceCache.get(symbol);
-        if (cached != null && !cached.isExpired()) {
+        QuoteCacheEvent event = new QuoteCacheEvent();
+        event.begin();
+        CachedPrice cached = priceCache.get(ids.find(symbol));
+        boolean hit = cached != null && !cached.isExpired(cacheMillis);
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestId = RequestContext.current();
+            event.symbol = symbol;
+            event.hit = hit;
+            event.commit();
+        }
+        if (hit) {
             JsonObject cachedResult = new JsonObject();
-            cachedResult.addProperty("price", cached.price);
+            cachedResult.addProperty("price", Money.toDouble(cached.price));
+            cachedResult.addProperty("priceMicros", cached.price);
             cachedResult.addProperty("cached", true);
             return cachedResult;
         }
 
+        return fetchQuote(symbol);
+    }
+
+    // Ultimo prezzo noto senza chiamate di rete (null se il simbolo non è mai stato quotato)
+    public CachedQuote getCachedQuote(String symbol) {
+        CachedPrice cached = priceCache.get(ids.find(symbol));
+        return cached != null ? new CachedQuote(cached.price, System.currentTimeMillis() - cached.timestamp) : null;
+    }
+
+    // Millisecondi mancanti alla scadenza del prezzo in cache (-1 se assente)
+    long millisToExpiry(String symbol) {
+        CachedPrice cached = priceCache.get(ids.find(symbol));
+        return cached != null ? cached.millisToExpiry(cacheMillis) : -1;
+    }
+
+    // Statistiche della cache HTTP su disco (null se disattivata)
+    public HttpCacheStats getHttpCacheStats() {
+        if (httpCache == null) {
+            return null;
+        }
+        long size;
+        try {
+            size = httpCache.size();
+        } catch (IOException e) {
+            size = -1;
+        }
+        return new HttpCacheStats(httpCache.requestCount(), httpCache.networkCount(),
+                httpCache.hitCount(), size, httpCache.maxSize());
+    }
+
+    // Quotazione passando dalla cache HTTP, che può contenere la risposta di un
+    // altro utente o di un'esecuzione precedente ancora valida
+    JsonObject fetchQuote(String symbol) throws IOException {
+        return fetchQuote(symbol, null);
+    }
+
+    // Scarica sempre la quotazione da Alpha Vantage: usato dal refresh anticipato
+    JsonObject refreshQuote(String symbol) throws IOException {
+        return fetchQuote(symbol, CacheControl.FORCE_NETWORK);
+    }
+
+    private JsonObject fetchQuote(String symbol, CacheControl cacheControl) throws IOException {
         String url = String.format("%s?function=GLOBAL_QUOTE&symbol=%s&apikey=%s",
                 BASE_URL, symbol, apiKey);
 
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
+        Fetched fetched = call(EndpointFamily.QUOTES, url, cacheControl);
+        JsonObject jsonResponse = fetched.json();
+
+        // Controlla se c'è un errore
+        if (jsonResponse.has("Error Message")) {
+            throw new IOException("Simbolo non valido");
+        }
+
+        JsonObject globalQuote = jsonResponse.getAsJsonObject("Global Quote");
+        if (globalQuote == null || globalQuote.size() == 0) {
+            throw new IOException("Simbolo non trovato o dati non disponibili");
+        }
+
+        // Estrai il prezzo e metti in cache; una risposta dalla cache HTTP conserva
+        // l'ora in cui era stata ricevuta, così non resta valida più del dovuto
+        long price = Money.parse(globalQuote.get("05. price").getAsString());
+        long receivedAt = fetched.receivedAt();
+        int id = ids.id(symbol);
+        priceCache.set(id, new CachedPrice(price, receivedAt));
+        ticks.record(id, receivedAt, price, parseVolume(globalQuote));
+        symbols.addSymbols(List.of(symbol));
+        notifyPriceListeners(id, symbol, price);
+
+        return globalQuote;
+    }
+
+    private record Fetched(JsonObject json, long receivedAt) {
+    }
+
+    boolean isCircuitOpen(EndpointFamily family) {
+        return breakers.get(family).isOpen();
+    }
 
+    // Unico punto da cui le richieste vanno in rete. Con il circuito aperto non parte
+    // nessuna richiesta; errori di rete, risposte non 2xx e limiti di quota contano come
+    // guasti, mentre gli errori sul simbolo ("Error Message") sono risposte valide
+    private Fetched call(EndpointFamily family, String url, CacheControl cacheControl) throws IOException {
+        CircuitBreaker breaker = breakers.get(family);
+        if (breaker.isOpen()) {
+            throw new CircuitOpenException("Alpha Vantage (" + family.label + ") non disponibile, nuovo tentativo tra "
+                    + Math.max(1, breaker.retryInMillis() / 1000) + " s", breaker.retryInMillis());
+        }
+
+        Request.Builder builder = new Request.Builder()
+                .url(url);
+        if (cacheControl != null) {
+            builder.cacheControl(cacheControl);
+        }
+        Request request = builder.build();
+
+        JsonObject json;
+        long receivedAt;
         try (Response response = client.newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 throw new IOException("Richiesta fallita: " + response);
             }
+            json = JsonParser.parseString(response.body().string()).getAsJsonObject();
+            receivedAt = response.receivedResponseAtMillis();
+        } catch (IOException | RuntimeException e) {
+            failed(family, url, false);
+            throw e instanceof IOException io ? io : new IOException("Risposta non valida: " + e.getMessage(), e);
+        }
+
+        if (json.has("Note") || json.has("Information")) {
+            failed(family, url, true);
+            throw new IOException("API limit raggiunto");
+        }
+        breaker.onSuccess();
+        return new Fetched(json, receivedAt);
+    }
 
-            String responseBody = response.body().string();
-            JsonObject jsonResponse = JsonParser.parseString(responseBody).getAsJsonObject();
+    private void failed(EndpointFamily family, String url, boolean rateLimited) {
+        CircuitBreaker breaker = breakers.get(family);
+        if (breaker.onFailure(rateLimited)) {
+            scheduleProbe(family, url, breaker.cooldownMillis());
+        }
+    }
 
-            // Controlla se c'è un errore o limite raggiunto
-            if (jsonResponse.has("Note") || jsonResponse.has("Error Message")) {
-                throw new IOException("API limit raggiunto o simbolo non valido");
+    // Ripete in background l'ultima richiesta fallita, scavalcando circuito e cache HTTP
+    private void scheduleProbe(EndpointFamily family, String url, long delayMillis) {
+        probes.schedule(() -> {
+            CircuitBreaker breaker = breakers.get(family);
+            // Richiuso nel frattempo da una richiesta partita prima dell'apertura
+            if (!breaker.isOpen()) {
+                return;
+            }
+            Request request = new Request.Builder()
+                    .url(url)
+                    .cacheControl(CacheControl.FORCE_NETWORK)
+                    .build();
+            boolean recovered = false;
+            try (Response response = client.newCall(request).execute()) {
+                if (response.isSuccessful()) {
+                    String head = response.peekBody(512).string();
+                    recovered = !head.contains("\"Note\"") && !head.contains("\"Information\"");
+                }
+            } catch (IOException e) {
+                System.err.println("Errore probe Alpha Vantage " + family.label + ": " + e.getMessage());
+            }
+            if (recovered) {
+                breaker.onSuccess();
+            } else {
+                breaker.onProbeFailure();
+                scheduleProbe(family, url, breaker.cooldownMillis());
             }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
 
-            JsonObject globalQuote = jsonResponse.getAsJsonObject("Global Quote");
-            if (globalQuote == null || globalQuote.size() == 0) {
-                throw new IOException("Simbolo non trovato o dati non disponibili");
+    // Risposta JSON di una famiglia con fallback sull'ultima risposta valida per la stessa
+    // richiesta: servita con "staleMillis" (la sua età) quando Alpha Vantage non risponde
+    private JsonObject callWithFallback(EndpointFamily family, String key, String url) throws IOException {
+        try {
+            Fetched fetched = call(family, url, null);
+            if (!fetched.json().has("Error Message")) {
+                synchronized (lastGood) {
+                    lastGood.put(key, new LastGood(fetched.json(), fetched.receivedAt()));
+                }
+            }
+            return fetched.json();
+        } catch (IOException e) {
+            LastGood previous;
+            synchronized (lastGood) {
+                previous = lastGood.get(key);
+            }
+            if (previous == null) {
+                throw e;
             }
+            JsonObject stale = previous.json().deepCopy();
+            stale.addProperty("staleMillis", System.currentTimeMillis() - previous.receivedAt());
+            return stale;
+        }
+    }
 
-            // Estrai il prezzo e metti in cache
-            double price = Double.parseDouble(globalQuote.get("05. price").getAsString());
-            priceCache.put(symbol, new CachedPrice(price));
+    private static long parseVolume(JsonObject globalQuote) {
+        try {
+            return globalQuote.has("06. volume") ? Long.parseLong(globalQuote.get("06. volume").getAsString()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 
-            return globalQuote;
+    private void notifyPriceListeners(int symbolId, String symbol, long price) {
+        for (PriceListener listener : priceListeners) {
+            try {
+                listener.onPriceUpdate(symbolId, price);
+            } catch (RuntimeException e) {
+                System.err.println("Errore listener prezzi per " + symbol + ": " + e.getMessage());
+            }
         }
     }
 
@@ -94,103 +386,77 @@ public class AlphaVantageClient {
         String url = String.format("%s?function=TIME_SERIES_INTRADAY&symbol=%s&interval=%s&apikey=%s",
                 BASE_URL, symbol, interval, apiKey);
 
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Richiesta fallita: " + response);
-            }
-
-            String responseBody = response.body().string();
-            return JsonParser.parseString(responseBody).getAsJsonObject();
-        }
+        return callWithFallback(EndpointFamily.SERIES, "TIME_SERIES_INTRADAY:" + symbol + ":" + interval, url);
     }
 
     public JsonObject getDailyData(String symbol) throws IOException {
         String url = String.format("%s?function=TIME_SERIES_DAILY&symbol=%s&apikey=%s",
                 BASE_URL, symbol, apiKey);
 
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Richiesta fallita: " + response);
-            }
-
-            String responseBody = response.body().string();
-            return JsonParser.parseString(responseBody).getAsJsonObject();
-        }
+        return callWithFallback(EndpointFamily.SERIES, "TIME_SERIES_DAILY:" + symbol, url);
     }
 
     public JsonObject getCompanyOverview(String symbol) throws IOException {
         String url = String.format("%s?function=OVERVIEW&symbol=%s&apikey=%s",
                 BASE_URL, symbol, apiKey);
 
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Richiesta fallita: " + response);
-            }
-
-            String responseBody = response.body().string();
-            JsonObject overview = JsonParser.parseString(responseBody).getAsJsonObject();
-
-            if (overview.has("Note") || overview.size() == 0) {
-                throw new IOException("Dati non disponibili per questo simbolo");
-            }
-
-            return overview;
+        JsonObject overview = callWithFallback(EndpointFamily.FUNDAMENTALS, "OVERVIEW:" + symbol, url);
+        if (overview.size() == 0 || !overview.has("Name")) {
+            throw new IOException("Dati non disponibili per questo simbolo");
         }
+        symbols.add(symbol, overview.get("Name").getAsString());
+        return overview;
     }
 
     public JsonObject searchSymbol(String keywords) throws IOException {
         String url = String.format("%s?function=SYMBOL_SEARCH&keywords=%s&apikey=%s",
                 BASE_URL, keywords, apiKey);
 
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
+        JsonObject result = callWithFallback(EndpointFamily.FUNDAMENTALS, "SYMBOL_SEARCH:" + keywords, url);
+        symbols.learnSearch(result);
+        return result;
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Richiesta fallita: " + response);
-            }
+    // Cambio in micro-unità: quante unità di "to" per un'unità di "from"
+    public long getExchangeRate(String from, String to) throws IOException {
+        String url = String.format("%s?function=CURRENCY_EXCHANGE_RATE&from_currency=%s&to_currency=%s&apikey=%s",
+                BASE_URL, from, to, apiKey);
 
-            String responseBody = response.body().string();
-            return JsonParser.parseString(responseBody).getAsJsonObject();
+        // Nessun fallback: FxRates tiene già il cambio precedente
+        JsonObject rate = call(EndpointFamily.FX, url, null).json()
+                .getAsJsonObject("Realtime Currency Exchange Rate");
+        if (rate == null || !rate.has("5. Exchange Rate")) {
+            throw new IOException("Cambio non disponibile per " + from + "/" + to);
         }
+        return Money.parse(rate.get("5. Exchange Rate").getAsString());
     }
 
-    public double getCurrentPrice(String symbol) throws IOException {
-        JsonObject quote = getQuote(symbol);
+    // Prezzo corrente in micro-unità (vedi Money)
+    public long getCurrentPrice(String symbol) throws IOException {
+        JsonObject quote = quote(symbol);
 
         if (quote.has("cached")) {
-            return quote.get("price").getAsDouble();
+            return quote.get("priceMicros").getAsLong();
         }
 
-        return Double.parseDouble(quote.get("05. price").getAsString());
+        return Money.parse(quote.get("05. price").getAsString());
     }
 
-    public Map<String, Double> getCurrentPrices(String... symbols) {
-        Map<String, Double> prices = new HashMap<>();
+    // Prezzi per id di simbolo (vedi SymbolTable)
+    public IntLongMap getCurrentPrices(String... symbols) {
+        IntLongMap prices = new IntLongMap(symbols.length);
 
         for (String symbol : symbols) {
             try {
-                double price = getCurrentPrice(symbol);
-                prices.put(symbol, price);
+                long price = getCurrentPrice(symbol);
+                prices.put(ids.id(symbol), price);
             } catch (IOException e) {
                 System.err.println("Errore recupero prezzo per " + symbol + ": " + e.getMessage());
                 // Usa prezzo dalla cache se disponibile
-                CachedPrice cached = priceCache.get(symbol);
+                int id = ids.find(symbol);
+                CachedPrice cached = priceCache.get(id);
                 if (cached != null) {
-                    prices.put(symbol, cached.price);
+                    prices.put(id, cached.price);
                 }
             }
         }
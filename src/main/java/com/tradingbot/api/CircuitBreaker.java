@@ -0,0 +1,72 @@
+package com.tradingbot.api;
+
+// Circuit breaker per una famiglia di endpoint. Si apre dopo N errori consecutivi o
+// subito su un limite di quota ("Note"/"Information"); da aperto nessuna richiesta va
+// in rete e un solo probe in background verifica la ripresa. Ogni probe fallito
+// raddoppia l'attesa fino al massimo configurato.
+class CircuitBreaker {
+    private final EndpointFamily family;
+    private final int failureThreshold;
+    private final long baseCooldownMillis;
+    private final long maxCooldownMillis;
+
+    private int failures;
+    private boolean open;
+    private long openedAt;
+    private long cooldownMillis;
+
+    CircuitBreaker(EndpointFamily family, int failureThreshold, long baseCooldownMillis, long maxCooldownMillis) {
+        this.family = family;
+        this.failureThreshold = failureThreshold;
+        this.baseCooldownMillis = baseCooldownMillis;
+        this.maxCooldownMillis = Math.max(baseCooldownMillis, maxCooldownMillis);
+        this.cooldownMillis = baseCooldownMillis;
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+
+    // Millisecondi al prossimo tentativo di ripresa (0 se chiuso)
+    synchronized long retryInMillis() {
+        return open ? Math.max(0, openedAt + cooldownMillis - System.currentTimeMillis()) : 0;
+    }
+
+    synchronized long cooldownMillis() {
+        return cooldownMillis;
+    }
+
+    synchronized void onSuccess() {
+        failures = 0;
+        if (open) {
+            open = false;
+            System.out.println("🟢 Alpha Vantage " + family.label + ": circuito richiuso");
+        }
+        cooldownMillis = baseCooldownMillis;
+    }
+
+    // true se questo errore ha appena aperto il circuito: il chiamante programma il probe
+    synchronized boolean onFailure(boolean rateLimited) {
+        if (open) {
+            return false;
+        }
+        failures++;
+        if (!rateLimited && failures < failureThreshold) {
+            return false;
+        }
+        open = true;
+        openedAt = System.currentTimeMillis();
+        System.out.println("🔴 Alpha Vantage " + family.label + ": circuito aperto"
+                + (rateLimited ? " (limite di quota)" : " dopo " + failures + " errori")
+                + ", nuovo tentativo tra " + cooldownMillis / 1000 + " s");
+        return true;
+    }
+
+    // Probe fallito: resta aperto e aspetta il doppio
+    synchronized void onProbeFailure() {
+        openedAt = System.currentTimeMillis();
+        cooldownMillis = Math.min(maxCooldownMillis, cooldownMillis * 2);
+        System.out.println("🔴 Alpha Vantage " + family.label + ": ancora non disponibile, nuovo tentativo tra "
+                + cooldownMillis / 1000 + " s");
+    }
+}
@@ -0,0 +1,20 @@
+package com.tradingbot.api;
+
+import java.io.IOException;
+
+// Richiesta non inviata perché il circuito della famiglia di endpoint è aperto
+// e non c'è un valore precedente da restituire
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryInMillis;
+
+    public CircuitOpenException(String message, long retryInMillis) {
+        super(message);
+        this.retryInMillis = retryInMillis;
+    }
+
+    public long getRetryInMillis() {
+        return retryInMillis;
+    }
+}
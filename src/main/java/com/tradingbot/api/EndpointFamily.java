@@ -0,0 +1,16 @@
+package com.tradingbot.api;
+
+// Gruppi di endpoint Alpha Vantage con un circuit breaker ciascuno: un limite o un guasto
+// sulle serie storiche non deve bloccare le quotazioni, e viceversa
+enum EndpointFamily {
+    QUOTES("quotazioni"),
+    SERIES("serie storiche"),
+    FUNDAMENTALS("dati aziendali"),
+    FX("cambi valute");
+
+    final String label;
+
+    EndpointFamily(String label) {
+        this.label = label;
+    }
+}
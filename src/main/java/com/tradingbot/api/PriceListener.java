@@ -0,0 +1,7 @@
+package com.tradingbot.api;
+
+// Notificato ogni volta che arriva una nuova quotazione da Alpha Vantage (prezzo in micro-unità).
+// Il simbolo arriva come id della SymbolTable, già pronto come indice per i book dei listener.
+public interface PriceListener {
+    void onPriceUpdate(int symbolId, long price);
+}
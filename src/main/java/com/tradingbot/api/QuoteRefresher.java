@@ -0,0 +1,154 @@
+package com.tradingbot.api;
+
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.config.RuntimeSettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Rinfresca in background le quotazioni dei simboli più richiesti poco prima
+// che scadano in cache, così gli utenti trovano sempre il prezzo già pronto.
+class QuoteRefresher {
+    private static final long TICK_MILLIS = 5000;
+    private static final double MIN_SCORE = 2.0;
+
+    private final AlphaVantageClient api;
+    // Aggiornati a caldo quando cambia config.properties
+    private volatile int topN;
+    private volatile int callsPerMinute;
+    private volatile long leadMillis;
+    private volatile double decayPerMilli;
+
+    // Contatore di popolarità con decadimento esponenziale per simbolo
+    private final Map<String, Popularity> popularity = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private long budgetWindowStart;
+    private int callsInWindow;
+
+    private static class Popularity {
+        double score;
+        long lastUpdate;
+
+        synchronized void hit(long now, double decayPerMilli) {
+            score = decayed(now, decayPerMilli) + 1.0;
+            lastUpdate = now;
+        }
+
+        synchronized double decayed(long now, double decayPerMilli) {
+            return score * Math.exp(-decayPerMilli * (now - lastUpdate));
+        }
+    }
+
+    QuoteRefresher(AlphaVantageClient api, ConfigManager config) {
+        this.api = api;
+        config.subscribe(this::apply);
+    }
+
+    private void apply(RuntimeSettings settings) {
+        topN = settings.refreshAheadTopN();
+        callsPerMinute = settings.refreshAheadCallsPerMinute();
+        leadMillis = settings.refreshAheadLeadMillis();
+        // Emivita in minuti -> costante di decadimento per millisecondo
+        decayPerMilli = Math.log(2) / (settings.refreshAheadHalfLifeMinutes() * 60_000.0);
+    }
+
+    void recordRequest(String symbol) {
+        popularity.computeIfAbsent(symbol, s -> new Popularity())
+                .hit(System.currentTimeMillis(), decayPerMilli);
+    }
+
+    // Lo scheduler parte comunque: con topN o budget a 0 ogni giro non fa nulla,
+    // così il refresh si può riattivare modificando la configurazione
+    synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quote-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void tick() {
+        if (topN <= 0 || callsPerMinute <= 0) {
+            return;
+        }
+        // Con il circuito aperto il refresh fallirebbe comunque: se ne occupa il probe
+        if (api.isCircuitOpen(EndpointFamily.QUOTES)) {
+            return;
+        }
+        try {
+            for (String symbol : hotSymbols()) {
+                long toExpiry = api.millisToExpiry(symbol);
+                // Solo simboli già in cache e vicini alla scadenza
+                if (toExpiry < 0 || toExpiry > leadMillis) {
+                    continue;
+                }
+                if (!acquireBudget()) {
+                    return;
+                }
+                try {
+                    api.refreshQuote(symbol);
+                } catch (IOException e) {
+                    System.err.println("Errore refresh anticipato per " + symbol + ": " + e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Errore nel refresher quotazioni: " + e.getMessage());
+        }
+    }
+
+    // I topN simboli con il punteggio decaduto più alto
+    private List<String> hotSymbols() {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Double>> scored = new ArrayList<>();
+
+        popularity.forEach((symbol, p) -> {
+            double score = p.decayed(now, decayPerMilli);
+            if (score >= MIN_SCORE) {
+                scored.add(Map.entry(symbol, score));
+            } else if (score < 0.01) {
+                // Simbolo dimenticato: libera memoria
+                popularity.remove(symbol, p);
+            }
+        });
+
+        scored.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+
+        List<String> result = new ArrayList<>(Math.min(topN, scored.size()));
+        for (int i = 0; i < scored.size() && i < topN; i++) {
+            result.add(scored.get(i).getKey());
+        }
+        return result;
+    }
+
+    // Quota di chiamate API al minuto riservata al refresh anticipato
+    private boolean acquireBudget() {
+        long now = System.currentTimeMillis();
+        if (now - budgetWindowStart >= 60_000) {
+            budgetWindowStart = now;
+            callsInWindow = 0;
+        }
+        if (callsInWindow >= callsPerMinute) {
+            return false;
+        }
+        callsInWindow++;
+        return true;
+    }
+}
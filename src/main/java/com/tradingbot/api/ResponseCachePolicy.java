@@ -0,0 +1,72 @@
+package com.tradingbot.api;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.function.LongSupplier;
+
+// Interceptor di rete: Alpha Vantage non manda header di cache utili, quindi la
+// durata di ogni risposta viene decisa qui in base al parametro "function".
+// Le risposte con errori o limiti di quota ("Note", "Information", "Error Message")
+// arrivano con stato 200 e non devono mai finire in cache.
+class ResponseCachePolicy implements Interceptor {
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+    // I dati giornalieri sono aggiornati poco dopo la chiusura delle 16:00
+    private static final LocalTime DAILY_UPDATE = LocalTime.of(16, 15);
+    private static final long DAY_SECONDS = 24 * 60 * 60;
+    private static final long PEEK_BYTES = 512;
+
+    private final LongSupplier quoteTtlMillis;
+
+    ResponseCachePolicy(LongSupplier quoteTtlMillis) {
+        this.quoteTtlMillis = quoteTtlMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        long maxAge = response.isSuccessful() && !isApiError(response)
+                ? maxAgeSeconds(chain.request().url().queryParameter("function"))
+                : 0;
+
+        Response.Builder builder = response.newBuilder()
+                .removeHeader("Pragma")
+                .removeHeader("Expires");
+        return maxAge > 0
+                ? builder.header("Cache-Control", "public, max-age=" + maxAge).build()
+                : builder.header("Cache-Control", "no-store").build();
+    }
+
+    private long maxAgeSeconds(String function) {
+        if (function == null) {
+            return 0;
+        }
+        return switch (function) {
+            case "GLOBAL_QUOTE", "TIME_SERIES_INTRADAY", "CURRENCY_EXCHANGE_RATE" -> quoteTtlMillis.getAsLong() / 1000;
+            case "OVERVIEW", "SYMBOL_SEARCH" -> DAY_SECONDS;
+            case "TIME_SERIES_DAILY" -> secondsUntilDailyUpdate();
+            default -> 0;
+        };
+    }
+
+    private static long secondsUntilDailyUpdate() {
+        ZonedDateTime now = ZonedDateTime.now(MARKET_ZONE);
+        ZonedDateTime next = now.with(DAILY_UPDATE);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        return Math.max(60, next.toEpochSecond() - now.toEpochSecond());
+    }
+
+    // Gli errori sono oggetti JSON piccoli con una sola chiave (o vuoti, per OVERVIEW
+    // su simboli inesistenti): basta guardare l'inizio del corpo
+    private static boolean isApiError(Response response) throws IOException {
+        String head = response.peekBody(PEEK_BYTES).string();
+        return head.isBlank() || head.strip().equals("{}")
+                || head.contains("\"Note\"") || head.contains("\"Information\"") || head.contains("\"Error Message\"");
+    }
+}
@@ -0,0 +1,192 @@
+package com.tradingbot.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Indice locale dei simboli conosciuti (con il nome della società quando noto) per i
+// suggerimenti senza chiamate API. Si riempie con i simboli del database, le ricerche
+// su Alpha Vantage e i dati aziendali già scaricati.
+// Le letture usano uno snapshot immutabile di array ordinati: una ricerca per prefisso
+// è una ricerca binaria senza lock; ogni aggiunta ricostruisce lo snapshot.
+public class SymbolIndex {
+    private static SymbolIndex instance;
+
+    // Sempre presenti, anche prima del caricamento dal database (come in /top)
+    private static final String[][] POPULAR = {
+            {"AAPL", "Apple Inc."},
+            {"MSFT", "Microsoft Corporation"},
+            {"TSLA", "Tesla Inc."},
+            {"AMZN", "Amazon.com Inc."},
+            {"GOOGL", "Alphabet Inc."},
+            {"V", "Visa Inc."},
+            {"NVDA", "NVIDIA Corporation"},
+            {"SBUX", "Starbucks Corporation"},
+            {"DIS", "The Walt Disney Company"},
+            {"BA", "Boeing Company"},
+    };
+
+    public record Match(String symbol, String name) {
+    }
+
+    // symbols/names ordinati per simbolo; words (parole dei nomi in minuscolo) ordinate,
+    // con wordEntry che punta alla posizione del simbolo corrispondente
+    private record Snapshot(String[] symbols, String[] names, String[] words, int[] wordEntry) {
+    }
+
+    private final Map<String, String> entries = new TreeMap<>();
+    private final List<Match> popular = new ArrayList<>();
+    private volatile Snapshot snapshot;
+
+    private SymbolIndex() {
+        for (String[] entry : POPULAR) {
+            entries.put(entry[0], entry[1]);
+            popular.add(new Match(entry[0], entry[1]));
+        }
+        snapshot = build(entries);
+    }
+
+    public static synchronized SymbolIndex getInstance() {
+        if (instance == null) {
+            instance = new SymbolIndex();
+        }
+        return instance;
+    }
+
+    public List<Match> popular() {
+        return popular;
+    }
+
+    public int size() {
+        return snapshot.symbols().length;
+    }
+
+    // Simboli senza nome (dal database): non sovrascrivono un nome già noto
+    public synchronized void addSymbols(List<String> symbols) {
+        boolean changed = false;
+        for (String symbol : symbols) {
+            if (symbol != null && !symbol.isBlank() && !entries.containsKey(symbol)) {
+                entries.put(symbol, null);
+                changed = true;
+            }
+        }
+        if (changed) {
+            snapshot = build(entries);
+        }
+    }
+
+    public void add(String symbol, String name) {
+        addAll(Collections.singletonMap(symbol, name));
+    }
+
+    public synchronized void addAll(Map<String, String> named) {
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : named.entrySet()) {
+            String name = entry.getValue() != null && !entry.getValue().isBlank() ? entry.getValue() : null;
+            if (!entries.containsKey(entry.getKey()) || (name != null && !name.equals(entries.get(entry.getKey())))) {
+                entries.put(entry.getKey(), name);
+                changed = true;
+            }
+        }
+        if (changed) {
+            snapshot = build(entries);
+        }
+    }
+
+    // Impara dai "bestMatches" di SYMBOL_SEARCH
+    void learnSearch(JsonObject result) {
+        JsonArray matches = result.getAsJsonArray("bestMatches");
+        if (matches == null || matches.isEmpty()) {
+            return;
+        }
+        Map<String, String> named = new TreeMap<>();
+        for (JsonElement element : matches) {
+            JsonObject match = element.getAsJsonObject();
+            if (match.has("1. symbol") && match.has("2. name")) {
+                named.put(match.get("1. symbol").getAsString(), match.get("2. name").getAsString());
+            }
+        }
+        addAll(named);
+    }
+
+    // Fino a limit simboli che iniziano con query, poi quelli con una parola del nome che
+    // inizia con query (query >= 2 caratteri). Nessun lock e nessuna chiamata di rete.
+    public List<Match> lookup(String query, int limit) {
+        Snapshot s = snapshot;
+        List<Match> result = new ArrayList<>(limit);
+        String symbolPrefix = query.toUpperCase(Locale.ROOT);
+        int from = lowerBound(s.symbols(), symbolPrefix);
+        for (int i = from; i < s.symbols().length && result.size() < limit
+                && s.symbols()[i].startsWith(symbolPrefix); i++) {
+            result.add(new Match(s.symbols()[i], s.names()[i]));
+        }
+        if (result.size() >= limit || query.length() < 2) {
+            return result;
+        }
+        String wordPrefix = query.toLowerCase(Locale.ROOT);
+        from = lowerBound(s.words(), wordPrefix);
+        for (int i = from; i < s.words().length && result.size() < limit
+                && s.words()[i].startsWith(wordPrefix); i++) {
+            int entry = s.wordEntry()[i];
+            if (!contains(result, s.symbols()[entry]) && !s.symbols()[entry].startsWith(symbolPrefix)) {
+                result.add(new Match(s.symbols()[entry], s.names()[entry]));
+            }
+        }
+        return result;
+    }
+
+    private static boolean contains(List<Match> matches, String symbol) {
+        for (Match match : matches) {
+            if (match.symbol().equals(symbol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int index = Arrays.binarySearch(sorted, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private record Word(String word, int entry) {
+    }
+
+    private static Snapshot build(Map<String, String> entries) {
+        int n = entries.size();
+        String[] symbols = new String[n];
+        String[] names = new String[n];
+        List<Word> words = new ArrayList<>();
+        int i = 0;
+        // TreeMap: simboli già in ordine
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            symbols[i] = entry.getKey();
+            names[i] = entry.getValue();
+            if (entry.getValue() != null) {
+                for (String word : entry.getValue().toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                    if (word.length() >= 2) {
+                        words.add(new Word(word, i));
+                    }
+                }
+            }
+            i++;
+        }
+        words.sort(Comparator.comparing(Word::word));
+        String[] sortedWords = new String[words.size()];
+        int[] wordEntry = new int[words.size()];
+        for (int w = 0; w < sortedWords.length; w++) {
+            sortedWords[w] = words.get(w).word();
+            wordEntry[w] = words.get(w).entry();
+        }
+        return new Snapshot(symbols, names, sortedWords, wordEntry);
+    }
+}
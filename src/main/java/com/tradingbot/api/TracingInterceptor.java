@@ -0,0 +1,38 @@
+package com.tradingbot.api;
+
+import com.tradingbot.tracing.AlphaVantageCallEvent;
+import com.tradingbot.tracing.RequestContext;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+// Interceptor applicativo: un evento JFR per chiamata, cache HTTP compresa.
+// Le chiamate sono sincrone, quindi girano sul thread della richiesta e ne vedono l'id.
+class TracingInterceptor implements Interceptor {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        AlphaVantageCallEvent event = new AlphaVantageCallEvent();
+        event.begin();
+        Response response = null;
+        try {
+            response = chain.proceed(chain.request());
+            return response;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                HttpUrl url = chain.request().url();
+                event.requestId = RequestContext.current();
+                event.function = url.queryParameter("function");
+                event.symbol = url.queryParameter("symbol") != null ? url.queryParameter("symbol")
+                        : url.queryParameter("keywords");
+                if (response != null) {
+                    event.status = response.code();
+                    event.fromCache = response.networkResponse() == null;
+                }
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.tradingbot.backtest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.tradingbot.api.AlphaVantageClient;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.money.Money;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+// Backtest delle strategie sulle serie giornaliere di Alpha Vantage.
+// Le serie, convertite una volta in array primitivi, restano in memoria: insieme alla
+// cache HTTP su disco (valida fino alla chiusura del mercato) un backtest ripetuto
+// non consuma quota. Simboli e combinazioni di parametri girano in parallelo su un
+// pool fork-join dedicato, separato dal pool comune e dai thread dei comandi.
+public class BacktestEngine {
+    // Capitale nozionale di ogni simulazione
+    public static final long CAPITAL = Money.of(10_000);
+
+    private static final int[] FAST_GRID = {3, 5, 10, 15, 20};
+    private static final int[] SLOW_GRID = {20, 30, 50, 60};
+
+    private static BacktestEngine instance;
+
+    private final AlphaVantageClient api = AlphaVantageClient.getInstance();
+    private final long cacheMillis = ConfigManager.getInstance().getBacktestSeriesCacheMinutes() * 60_000L;
+    private final Map<String, CachedSeries> series = new ConcurrentHashMap<>();
+
+    final ForkJoinPool pool = new ForkJoinPool(ConfigManager.getInstance().getBacktestThreads(), p -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        t.setName("backtest-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    // I download delle serie aspettano la rete: non devono occupare i thread di calcolo
+    private final ExecutorService fetchers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "backtest-fetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private record CachedSeries(DailySeries series, long loadedAt) {
+    }
+
+    private BacktestEngine() {
+    }
+
+    public static synchronized BacktestEngine getInstance() {
+        if (instance == null) {
+            instance = new BacktestEngine();
+        }
+        return instance;
+    }
+
+    // Serie dei simboli richiesti, scaricate in parallelo solo se non già in memoria
+    public List<DailySeries> load(List<String> symbols) throws IOException {
+        List<CompletableFuture<DailySeries>> futures = new ArrayList<>();
+        for (String symbol : symbols) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return seriesFor(symbol);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, fetchers));
+        }
+        List<DailySeries> loaded = new ArrayList<>();
+        for (CompletableFuture<DailySeries> future : futures) {
+            try {
+                loaded.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof RuntimeException r && r.getCause() != null
+                        ? r.getCause() : e.getCause();
+                throw cause instanceof IOException io ? io : new IOException(cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download delle serie interrotto");
+            }
+        }
+        return loaded;
+    }
+
+    public List<BacktestResult> buyAndHold(List<DailySeries> all) {
+        return compute(() -> all.parallelStream()
+                .map(s -> Simulator.buyAndHold(s, CAPITAL))
+                .toList());
+    }
+
+    // Ogni coppia (serie, parametri) è un compito indipendente
+    public List<BacktestResult> smaCrossover(List<DailySeries> all, List<Strategy.SmaCrossover> grid) {
+        return compute(() -> all.parallelStream()
+                .flatMap(s -> grid.stream()
+                        .filter(p -> p.slow() < s.size())
+                        .map(p -> Map.entry(s, p)))
+                .map(task -> Simulator.smaCrossover(task.getKey(), task.getValue(), CAPITAL))
+                .toList());
+    }
+
+    // null se i simboli non hanno abbastanza sedute in comune
+    public BacktestResult rebalance(List<DailySeries> all, int periodDays) {
+        return compute(() -> Simulator.rebalance(all, new Strategy.Rebalance(periodDays), CAPITAL));
+    }
+
+    // Griglia predefinita per /backtest sma senza parametri
+    public static List<Strategy.SmaCrossover> defaultGrid() {
+        List<Strategy.SmaCrossover> grid = new ArrayList<>();
+        for (int fast : FAST_GRID) {
+            for (int slow : SLOW_GRID) {
+                if (fast < slow) {
+                    grid.add(new Strategy.SmaCrossover(fast, slow));
+                }
+            }
+        }
+        return grid;
+    }
+
+    // Lo stream parallelo eseguito dentro il pool usa i suoi thread invece del pool comune
+    <T> T compute(Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Backtest interrotto");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException r ? r : new IllegalStateException(e.getCause());
+        }
+    }
+
+    private DailySeries seriesFor(String symbol) throws IOException {
+        CachedSeries cached = series.get(symbol);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt() < cacheMillis) {
+            return cached.series();
+        }
+        try {
+            DailySeries fresh = parse(symbol, api.getDailyData(symbol));
+            series.put(symbol, new CachedSeries(fresh, System.currentTimeMillis()));
+            return fresh;
+        } catch (IOException e) {
+            // Quota esaurita o rete assente: per un backtest una serie di qualche ora fa va benissimo
+            if (cached != null) {
+                System.err.println("Errore aggiornamento serie " + symbol + ", uso quella in memoria: " + e.getMessage());
+                return cached.series();
+            }
+            throw e;
+        }
+    }
+
+    static DailySeries parse(String symbol, JsonObject json) throws IOException {
+        JsonObject daily = json.getAsJsonObject("Time Series (Daily)");
+        if (daily == null || daily.size() == 0) {
+            JsonElement note = json.has("Note") ? json.get("Note") : json.get("Information");
+            throw new IOException(note != null ? note.getAsString()
+                    : "Serie giornaliera non disponibile per " + symbol);
+        }
+        int[] days = new int[daily.size()];
+        long[] closes = new long[daily.size()];
+        int i = 0;
+        for (Map.Entry<String, JsonElement> entry : daily.entrySet()) {
+            days[i] = (int) LocalDate.parse(entry.getKey()).toEpochDay();
+            closes[i] = Money.parse(entry.getValue().getAsJsonObject().get("4. close").getAsString());
+            i++;
+        }
+        // Alpha Vantage restituisce le sedute dalla più recente: ordine cronologico per la simulazione
+        Integer[] order = new Integer[days.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(days[a], days[b]));
+        int[] sortedDays = new int[days.length];
+        long[] sortedCloses = new long[days.length];
+        for (int k = 0; k < order.length; k++) {
+            sortedDays[k] = days[order[k]];
+            sortedCloses[k] = closes[order[k]];
+        }
+        return new DailySeries(symbol, sortedDays, sortedCloses);
+    }
+}
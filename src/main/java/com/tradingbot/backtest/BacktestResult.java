@@ -0,0 +1,12 @@
+package com.tradingbot.backtest;
+
+import com.tradingbot.money.Money;
+
+// Esito di una simulazione: tutte le posizioni vengono chiuse all'ultima seduta,
+// quindi il P/L realizzato coincide con il risultato complessivo
+public record BacktestResult(String symbols, Strategy strategy, int firstDay, int lastDay,
+                             long initialCapital, TradeStats stats) {
+    public double returnPercent() {
+        return Money.percent(stats.realizedPl(), initialCapital);
+    }
+}
@@ -0,0 +1,9 @@
+package com.tradingbot.backtest;
+
+// Chiusure giornaliere di un simbolo in ordine cronologico, su array primitivi:
+// giorni come epoch day, prezzi in micro-unità
+public record DailySeries(String symbol, int[] days, long[] closes) {
+    public int size() {
+        return closes.length;
+    }
+}
@@ -0,0 +1,153 @@
+package com.tradingbot.backtest;
+
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.money.Money;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+// Proiezione Monte Carlo del valore di un portafoglio. Ogni percorso pesca con
+// reinserimento sedute storiche comuni a tutti i simboli (bootstrap): i rendimenti
+// dello stesso giorno restano insieme, quindi le correlazioni tra titoli sono preservate
+// senza stimare una matrice di covarianza su poche decine di osservazioni.
+// I percorsi sono divisi in blocchi sul pool di calcolo di /backtest, ciascuno con il
+// proprio SplittableRandom: nessuna contesa sul generatore e nessun oggetto per percorso.
+public class MonteCarloRisk {
+    private static MonteCarloRisk instance;
+
+    private final BacktestEngine engine = BacktestEngine.getInstance();
+    private final int paths = ConfigManager.getInstance().getRiskPaths();
+
+    // Rendimenti lordi giornalieri per simbolo, ricalcolati solo quando cambia la serie sottostante
+    private final Map<String, Returns> returns = new ConcurrentHashMap<>();
+
+    private record Returns(DailySeries source, int[] days, double[] gross) {
+    }
+
+    private MonteCarloRisk() {
+    }
+
+    public static synchronized MonteCarloRisk getInstance() {
+        if (instance == null) {
+            instance = new MonteCarloRisk();
+        }
+        return instance;
+    }
+
+    // quantities e prices per simbolo in micro-unità; senza prezzo si usa l'ultima chiusura.
+    // null se i simboli non hanno abbastanza sedute in comune
+    public RiskReport simulate(Map<String, Long> quantities, Map<String, Long> prices, int horizonDays)
+            throws IOException {
+        List<String> symbols = new ArrayList<>(quantities.keySet());
+        List<DailySeries> series = engine.load(symbols);
+        int count = symbols.size();
+
+        List<Returns> perSymbol = new ArrayList<>(count);
+        double[] start = new double[count];
+        long currentValue = 0;
+        for (int s = 0; s < count; s++) {
+            DailySeries source = series.get(s);
+            perSymbol.add(returnsFor(source));
+            long price = prices.getOrDefault(symbols.get(s), source.closes()[source.size() - 1]);
+            long value = Money.mul(quantities.get(symbols.get(s)), price);
+            start[s] = Money.toDouble(value);
+            currentValue += value;
+        }
+
+        // Matrice [seduta][simbolo] appiattita sulle sole sedute presenti per tutti
+        double[] matrix = alignedMatrix(perSymbol);
+        int history = matrix.length / count;
+        if (history < 2) {
+            return null;
+        }
+
+        double[] outcomes = new double[paths];
+        int blocks = engine.pool.getParallelism() * 4;
+        SplittableRandom root = new SplittableRandom();
+        SplittableRandom[] generators = new SplittableRandom[blocks];
+        for (int b = 0; b < blocks; b++) {
+            generators[b] = root.split();
+        }
+        engine.compute(() -> {
+            IntStream.range(0, blocks).parallel().forEach(b -> {
+                SplittableRandom random = generators[b];
+                double[] values = new double[count];
+                int from = (int) ((long) paths * b / blocks);
+                int to = (int) ((long) paths * (b + 1) / blocks);
+                for (int p = from; p < to; p++) {
+                    System.arraycopy(start, 0, values, 0, count);
+                    for (int day = 0; day < horizonDays; day++) {
+                        int row = random.nextInt(history) * count;
+                        for (int s = 0; s < count; s++) {
+                            values[s] *= matrix[row + s];
+                        }
+                    }
+                    double total = 0;
+                    for (int s = 0; s < count; s++) {
+                        total += values[s];
+                    }
+                    outcomes[p] = total;
+                }
+            });
+            return null;
+        });
+
+        Arrays.sort(outcomes);
+        double current = Money.toDouble(currentValue);
+        int tail95 = Math.max(1, (int) (paths * 0.05));
+        double tailSum = 0;
+        for (int i = 0; i < tail95; i++) {
+            tailSum += outcomes[i];
+        }
+        int losing = 0;
+        while (losing < paths && outcomes[losing] < current) {
+            losing++;
+        }
+        return new RiskReport(horizonDays, paths, history, currentValue,
+                Money.of(percentile(outcomes, 0.05)), Money.of(percentile(outcomes, 0.50)),
+                Money.of(percentile(outcomes, 0.95)),
+                Money.of(current - percentile(outcomes, 0.05)), Money.of(current - percentile(outcomes, 0.01)),
+                Money.of(current - tailSum / tail95), losing * 100.0 / paths);
+    }
+
+    private Returns returnsFor(DailySeries source) {
+        Returns cached = returns.get(source.symbol());
+        if (cached != null && cached.source() == source) {
+            return cached;
+        }
+        int n = source.size() - 1;
+        int[] days = new int[Math.max(0, n)];
+        double[] gross = new double[Math.max(0, n)];
+        long[] closes = source.closes();
+        for (int i = 0; i < n; i++) {
+            days[i] = source.days()[i + 1];
+            gross[i] = (double) closes[i + 1] / closes[i];
+        }
+        Returns fresh = new Returns(source, days, gross);
+        returns.put(source.symbol(), fresh);
+        return fresh;
+    }
+
+    private static double[] alignedMatrix(List<Returns> all) {
+        int count = all.size();
+        int[][] rows = Simulator.alignedRows(all.stream().map(Returns::days).toList());
+        int history = rows[0].length;
+        double[] matrix = new double[history * count];
+        for (int t = 0; t < history; t++) {
+            for (int s = 0; s < count; s++) {
+                matrix[t * count + s] = all.get(s).gross()[rows[s][t]];
+            }
+        }
+        return matrix;
+    }
+
+    private static double percentile(double[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(quantile * sorted.length))];
+    }
+}
@@ -0,0 +1,8 @@
+package com.tradingbot.backtest;
+
+// Distribuzione del valore del portafoglio a fine orizzonte; importi in micro-unità.
+// Le perdite (VaR, expected shortfall) sono positive quando il valore scende.
+public record RiskReport(int horizonDays, int paths, int historyDays, long currentValue,
+                         long p5, long median, long p95, long var95, long var99,
+                         long expectedShortfall95, double lossProbability) {
+}
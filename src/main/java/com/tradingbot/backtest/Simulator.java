@@ -0,0 +1,192 @@
+package com.tradingbot.backtest;
+
+import com.tradingbot.money.Money;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Simulazioni su array primitivi: nessun oggetto per candela, così una griglia di parametri
+// su più simboli resta un ciclo stretto per ogni combinazione
+final class Simulator {
+    private Simulator() {
+    }
+
+    static BacktestResult buyAndHold(DailySeries series, long capital) {
+        TradeStats stats = new TradeStats();
+        int last = series.size() - 1;
+        long qty = affordable(capital, series.closes()[0]);
+        long cost = Money.mul(qty, series.closes()[0]);
+        long proceeds = Money.mul(qty, series.closes()[last]);
+        stats.recordSell(series.symbol(), proceeds - cost, series.days()[last] - series.days()[0]);
+        return new BacktestResult(series.symbol(), new Strategy.BuyAndHold(),
+                series.days()[0], series.days()[last], capital, stats);
+    }
+
+    static BacktestResult smaCrossover(DailySeries series, Strategy.SmaCrossover params, long capital) {
+        int fast = params.fast();
+        int slow = params.slow();
+        long[] closes = series.closes();
+        int[] days = series.days();
+        int n = closes.length;
+
+        // Somme prefisse: ogni media mobile costa una sottrazione
+        long[] prefix = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + closes[i];
+        }
+
+        TradeStats stats = new TradeStats();
+        long cash = capital;
+        long qty = 0;
+        long cost = 0;
+        int entryDay = 0;
+        boolean wasAbove = false;
+        for (int i = slow - 1; i < n; i++) {
+            // fastSum/fast > slowSum/slow senza divisioni
+            long fastSum = prefix[i + 1] - prefix[i + 1 - fast];
+            long slowSum = prefix[i + 1] - prefix[i + 1 - slow];
+            boolean above = fastSum * slow > slowSum * fast;
+            // La prima seduta fissa solo lo stato iniziale: si entra a un incrocio vero
+            if (i >= slow) {
+                if (above && !wasAbove && qty == 0) {
+                    qty = affordable(cash, closes[i]);
+                    cost = Money.mul(qty, closes[i]);
+                    cash -= cost;
+                    entryDay = days[i];
+                } else if (!above && wasAbove && qty > 0) {
+                    long proceeds = Money.mul(qty, closes[i]);
+                    stats.recordSell(series.symbol(), proceeds - cost, days[i] - entryDay);
+                    cash += proceeds;
+                    qty = 0;
+                }
+            }
+            wasAbove = above;
+        }
+        if (qty > 0) {
+            long proceeds = Money.mul(qty, closes[n - 1]);
+            stats.recordSell(series.symbol(), proceeds - cost, days[n - 1] - entryDay);
+        }
+        return new BacktestResult(series.symbol(), params, days[slow - 1], days[n - 1], capital, stats);
+    }
+
+    // Portafoglio a pesi uguali sulle sole sedute comuni a tutti i simboli; ogni periodDays
+    // sedute si vende l'eccesso (P/L realizzato sul costo medio, come /vendi) e si compra il mancante.
+    // null se i simboli hanno meno di due sedute in comune
+    static BacktestResult rebalance(List<DailySeries> all, Strategy.Rebalance params, long capital) {
+        int count = all.size();
+        int[][] rows = alignedRows(all.stream().map(DailySeries::days).toList());
+        int sessions = rows[0].length;
+        if (sessions < 2) {
+            return null;
+        }
+        String label = String.join(" ", all.stream().map(DailySeries::symbol).toList());
+
+        TradeStats stats = new TradeStats();
+        long cash = capital;
+        long[] qty = new long[count];
+        long[] invested = new long[count];
+        double[] openedDay = new double[count];
+        long[] prices = new long[count];
+        int lastSession = sessions - 1;
+        for (int t = 0; t < sessions; t++) {
+            int day = all.get(0).days()[rows[0][t]];
+            for (int s = 0; s < count; s++) {
+                prices[s] = all.get(s).closes()[rows[s][t]];
+            }
+            boolean liquidate = t == lastSession;
+            if (t % params.periodDays() != 0 && !liquidate) {
+                continue;
+            }
+            long equity = cash;
+            for (int s = 0; s < count; s++) {
+                equity += Money.mul(qty[s], prices[s]);
+            }
+            long target = liquidate ? 0 : equity / count;
+            // Prima le vendite, così la liquidità è disponibile per gli acquisti
+            for (int s = 0; s < count; s++) {
+                long excess = Money.mul(qty[s], prices[s]) - target;
+                if (excess <= 0 || qty[s] == 0) {
+                    continue;
+                }
+                long sellQty = liquidate ? qty[s] : Math.min(qty[s], Money.div(excess, prices[s]));
+                if (sellQty == 0) {
+                    continue;
+                }
+                long costBasis = sellQty == qty[s] ? invested[s] : Money.mul(sellQty, Money.div(invested[s], qty[s]));
+                long proceeds = Money.mul(sellQty, prices[s]);
+                stats.recordSell(all.get(s).symbol(), proceeds - costBasis, (int) Math.round(day - openedDay[s]));
+                cash += proceeds;
+                qty[s] -= sellQty;
+                invested[s] -= costBasis;
+            }
+            if (liquidate) {
+                break;
+            }
+            for (int s = 0; s < count; s++) {
+                long shortfall = target - Money.mul(qty[s], prices[s]);
+                long buyQty = affordable(Math.min(shortfall, cash), prices[s]);
+                if (buyQty <= 0) {
+                    continue;
+                }
+                long cost = Money.mul(buyQty, prices[s]);
+                // Data di apertura media pesata sulle quantità, come il proiettore del journal
+                openedDay[s] = qty[s] == 0 ? day : openedDay[s] + (day - openedDay[s]) * buyQty / (double) (qty[s] + buyQty);
+                cash -= cost;
+                qty[s] += buyQty;
+                invested[s] += cost;
+            }
+        }
+        int first = all.get(0).days()[rows[0][0]];
+        int last = all.get(0).days()[rows[0][lastSession]];
+        return new BacktestResult(label, params, first, last, capital, stats);
+    }
+
+    // Per ogni sequenza di giorni (crescenti) gli indici dei giorni presenti in tutte, in ordine
+    static int[][] alignedRows(List<int[]> days) {
+        int count = days.size();
+        int[] cursor = new int[count];
+        int max = days.stream().mapToInt(d -> d.length).min().orElse(0);
+        int[][] rows = new int[count][max];
+        int found = 0;
+        outer:
+        while (true) {
+            int day = Integer.MIN_VALUE;
+            for (int s = 0; s < count; s++) {
+                if (cursor[s] >= days.get(s).length) {
+                    break outer;
+                }
+                day = Math.max(day, days.get(s)[cursor[s]]);
+            }
+            boolean aligned = true;
+            for (int s = 0; s < count; s++) {
+                int[] own = days.get(s);
+                while (cursor[s] < own.length && own[cursor[s]] < day) {
+                    cursor[s]++;
+                }
+                if (cursor[s] >= own.length) {
+                    break outer;
+                }
+                aligned &= own[cursor[s]] == day;
+            }
+            if (aligned) {
+                for (int s = 0; s < count; s++) {
+                    rows[s][found] = cursor[s]++;
+                }
+                found++;
+            }
+        }
+        for (int s = 0; s < count; s++) {
+            rows[s] = Arrays.copyOf(rows[s], found);
+        }
+        return rows;
+    }
+
+    // Quantità (frazionaria, in micro-unità) acquistabile con l'importo dato senza superarlo
+    private static long affordable(long amount, long price) {
+        if (amount <= 0) {
+            return 0;
+        }
+        long qty = Money.div(amount, price);
+        return Money.mul(qty, price) > amount ? qty - 1 : qty;
+    }
+}
@@ -0,0 +1,27 @@
+package com.tradingbot.backtest;
+
+// Strategie supportate da /backtest
+public sealed interface Strategy {
+    String label();
+
+    // Compra alla prima chiusura e vende all'ultima
+    record BuyAndHold() implements Strategy {
+        public String label() {
+            return "Buy & hold";
+        }
+    }
+
+    // Tutto investito quando la media mobile veloce incrocia al rialzo la lenta, tutto liquido all'incrocio opposto
+    record SmaCrossover(int fast, int slow) implements Strategy {
+        public String label() {
+            return "SMA " + fast + "/" + slow;
+        }
+    }
+
+    // Pesi uguali tra i simboli, ripristinati ogni periodDays sedute
+    record Rebalance(int periodDays) implements Strategy {
+        public String label() {
+            return "Ribilanciamento ogni " + periodDays + " sedute";
+        }
+    }
+}
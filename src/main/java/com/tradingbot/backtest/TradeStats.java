@@ -0,0 +1,78 @@
+package com.tradingbot.backtest;
+
+import com.tradingbot.money.Money;
+
+// Le stesse metriche di /stats (vedi user_performance) calcolate sulle vendite simulate
+public class TradeStats {
+    private int closedTrades;
+    private int winningTrades;
+    private long realizedPl;
+    private long grossProfit;
+    private long grossLoss;
+    private long bestTrade;
+    private String bestSymbol;
+    private long worstTrade;
+    private String worstSymbol;
+    private long holdingDays;
+    private long peakRealizedPl;
+    private long maxDrawdown;
+
+    void recordSell(String symbol, long profitLoss, int heldDays) {
+        if (closedTrades == 0 || profitLoss > bestTrade) {
+            bestTrade = profitLoss;
+            bestSymbol = symbol;
+        }
+        if (closedTrades == 0 || profitLoss < worstTrade) {
+            worstTrade = profitLoss;
+            worstSymbol = symbol;
+        }
+        closedTrades++;
+        if (profitLoss > 0) {
+            winningTrades++;
+            grossProfit += profitLoss;
+        } else {
+            grossLoss -= profitLoss;
+        }
+        holdingDays += heldDays;
+        realizedPl += profitLoss;
+        peakRealizedPl = Math.max(peakRealizedPl, realizedPl);
+        maxDrawdown = Math.max(maxDrawdown, peakRealizedPl - realizedPl);
+    }
+
+    public int closedTrades() {
+        return closedTrades;
+    }
+
+    public long realizedPl() {
+        return realizedPl;
+    }
+
+    public double winRate() {
+        return closedTrades > 0 ? winningTrades * 100.0 / closedTrades : 0;
+    }
+
+    public String profitFactor() {
+        return grossLoss > 0 ? String.format("%.2f", (double) grossProfit / grossLoss) : "∞";
+    }
+
+    // Blocco con le stesse voci di /stats
+    public String format() {
+        if (closedTrades == 0) {
+            return "🔒 Nessuna operazione chiusa nel periodo\n";
+        }
+        return String.format("""
+                🔒 Operazioni chiuse: %d
+                ✅ In profitto: %d
+                📊 Win Rate: %.1f%%
+                %s P/L realizzato: $%.2f
+                🏆 Miglior trade: $%.2f (%s)
+                💥 Peggior trade: $%.2f (%s)
+                ⚖️ Profit factor: %s
+                ⏱️ Possesso medio: %dg
+                📉 Max drawdown realizzato: $%.2f
+                """, closedTrades, winningTrades, winRate(),
+                realizedPl >= 0 ? "🟢" : "🔴", Money.toDouble(realizedPl),
+                Money.toDouble(bestTrade), bestSymbol, Money.toDouble(worstTrade), worstSymbol,
+                profitFactor(), holdingDays / closedTrades, Money.toDouble(maxDrawdown));
+    }
+}
@@ -0,0 +1,121 @@
+package com.tradingbot.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Fase di avvio: i sottosistemi indipendenti partono in parallelo, quelli non
+// necessari per rispondere ai primi messaggi vengono rimandati a dopo la
+// registrazione del bot. Ogni passo viene cronometrato per il riepilogo finale.
+public class Bootstrap {
+    private record Step(String name, String thread, long startNanos, long endNanos) {
+    }
+
+    private final long origin = System.nanoTime();
+    private final List<Step> steps = new ArrayList<>();
+    private final List<CompletableFuture<Void>> deferred = new ArrayList<>();
+    private final AtomicInteger threads = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "bootstrap-" + threads.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Passo che può lanciare eccezioni controllate (es. TelegramApiException)
+    @FunctionalInterface
+    public interface Task<T, E extends Exception> {
+        T get() throws E;
+    }
+
+    @FunctionalInterface
+    public interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    // Passo eseguito sul thread corrente
+    public <T, E extends Exception> T call(String name, Task<T, E> task) throws E {
+        long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            record(name, start);
+        }
+    }
+
+    public <E extends Exception> void run(String name, Action<E> action) throws E {
+        call(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Passo eseguito in parallelo: il risultato va raccolto con join()
+    public <T> CompletableFuture<T> async(String name, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> call(name, task::get), executor);
+    }
+
+    // Passo non critico: parte subito in background e non blocca l'avvio
+    public void defer(String name, Runnable task) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> run(name, task::run), executor)
+                .exceptionally(e -> {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Errore avvio differito (" + name + "): " + cause.getMessage());
+                    return null;
+                });
+        synchronized (deferred) {
+            deferred.add(future);
+        }
+    }
+
+    // Attende un passo parallelo riportando l'errore originale invece del wrapper
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Stampa il riepilogo quando anche i passi differiti sono terminati, senza bloccare il chiamante
+    public CompletableFuture<Void> finish() {
+        CompletableFuture<?>[] pending;
+        synchronized (deferred) {
+            pending = deferred.toArray(new CompletableFuture<?>[0]);
+        }
+        executor.shutdown();
+        return CompletableFuture.allOf(pending).thenRun(this::printReport);
+    }
+
+    public long elapsedMillis() {
+        return (System.nanoTime() - origin) / 1_000_000;
+    }
+
+    public void printReport() {
+        List<Step> snapshot;
+        synchronized (steps) {
+            snapshot = new ArrayList<>(steps);
+        }
+        StringBuilder report = new StringBuilder("⏱️ Tempi di avvio (" + elapsedMillis() + " ms dall'inizio del bootstrap):\n");
+        for (Step step : snapshot) {
+            report.append(String.format("   %-28s %6d → %6d ms  (%d ms, %s)%n", step.name(),
+                    (step.startNanos() - origin) / 1_000_000, (step.endNanos() - origin) / 1_000_000,
+                    (step.endNanos() - step.startNanos()) / 1_000_000, step.thread()));
+        }
+        System.out.print(report);
+    }
+
+    private void record(String name, long start) {
+        Step step = new Step(name, Thread.currentThread().getName(), start, System.nanoTime());
+        synchronized (steps) {
+            steps.add(step);
+        }
+    }
+}
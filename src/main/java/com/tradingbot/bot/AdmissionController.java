@@ -0,0 +1,164 @@
+package com.tradingbot.bot;
+
+import com.tradingbot.config.RuntimeSettings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Controllo di ammissione davanti ai comandi. I trade hanno corsie proprie, una per
+// gruppo di utenti (un thread, stesso ordine di arrivo per utente): una quotazione lenta
+// ferma solo il suo gruppo, e oltre la dimensione della coda si risponde "occupato".
+// Gli altri comandi passano da una coda a priorità limitata, dove i comandi pesanti stanno in fondo.
+// Il livello di pressione si stima dalla coda: profondità x tempo medio di servizio / thread.
+class AdmissionController {
+    enum Cost { LIGHT, QUOTE, HEAVY }
+
+    enum Pressure { NORMAL, DEGRADED, OVERLOADED }
+
+    // Peso della nuova misura nella media mobile esponenziale del tempo di servizio
+    private static final double EWMA_ALPHA = 0.2;
+
+    private static final int TRADE_LANES = 4;
+
+    private final ExecutorService[] tradeLanes = new ExecutorService[TRADE_LANES];
+    private final AtomicInteger tradesQueued = new AtomicInteger();
+
+    private final AtomicInteger queryThreadCount = new AtomicInteger();
+    private final ThreadPoolExecutor queryPool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "query-" + queryThreadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger shed = new AtomicInteger();
+    private final AtomicInteger expired = new AtomicInteger();
+    private volatile double serviceMillis;
+    private volatile Pressure lastPressure = Pressure.NORMAL;
+
+    private volatile int queueSize;
+    private volatile long degradeMillis;
+    private volatile long shedMillis;
+    private volatile long maxWaitMillis;
+
+    // Richiesta in coda: esce prima chi costa meno, a parità di costo chi è arrivato prima
+    private final class Job implements Runnable, Comparable<Job> {
+        final Cost cost;
+        final long seq = sequence.incrementAndGet();
+        final long enqueuedAt = System.nanoTime();
+        final Runnable work;
+        final Runnable onExpired;
+
+        Job(Cost cost, Runnable work, Runnable onExpired) {
+            this.cost = cost;
+            this.work = work;
+            this.onExpired = onExpired;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            long start = System.nanoTime();
+            // Chi aspetta da troppo ha già rinunciato: meglio liberare la coda
+            if ((start - enqueuedAt) / 1_000_000 > maxWaitMillis) {
+                expired.incrementAndGet();
+                onExpired.run();
+                return;
+            }
+            try {
+                work.run();
+            } finally {
+                // Aggiornamenti concorrenti possono perdere una misura: è comunque una stima
+                double elapsed = (System.nanoTime() - start) / 1_000_000.0;
+                serviceMillis = serviceMillis == 0 ? elapsed
+                        : serviceMillis + EWMA_ALPHA * (elapsed - serviceMillis);
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byCost = cost.compareTo(other.cost);
+            return byCost != 0 ? byCost : Long.compare(seq, other.seq);
+        }
+    }
+
+    AdmissionController() {
+        for (int i = 0; i < TRADE_LANES; i++) {
+            String name = "trade-lane-" + (i + 1);
+            tradeLanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        queryPool.allowCoreThreadTimeOut(true);
+    }
+
+    void apply(RuntimeSettings settings) {
+        int threads = settings.queryThreads();
+        if (threads > queryPool.getMaximumPoolSize()) {
+            queryPool.setMaximumPoolSize(threads);
+            queryPool.setCorePoolSize(threads);
+        } else {
+            queryPool.setCorePoolSize(threads);
+            queryPool.setMaximumPoolSize(threads);
+        }
+        queueSize = settings.admissionQueueSize();
+        degradeMillis = settings.degradeMillis();
+        shedMillis = settings.shedMillis();
+        maxWaitMillis = settings.maxWaitMillis();
+    }
+
+    // Attesa stimata per una richiesta che entra ora in coda
+    long estimatedWaitMillis() {
+        return (long) (queued.get() * serviceMillis / queryPool.getMaximumPoolSize());
+    }
+
+    Pressure pressure() {
+        long wait = estimatedWaitMillis();
+        Pressure current = queued.get() >= queueSize || wait > shedMillis ? Pressure.OVERLOADED
+                : wait > degradeMillis ? Pressure.DEGRADED : Pressure.NORMAL;
+        if (current != lastPressure) {
+            lastPressure = current;
+            System.out.println("🚦 Carico " + current + ": " + queued.get() + " richieste in coda, attesa stimata "
+                    + wait + " ms, " + shed.get() + " rifiutate e " + expired.get() + " scadute finora");
+        }
+        return current;
+    }
+
+    // false se le corsie dei trade hanno già queueSize trade in attesa
+    boolean submitTrade(long userId, Runnable work) {
+        if (tradesQueued.incrementAndGet() > queueSize) {
+            tradesQueued.decrementAndGet();
+            shed.incrementAndGet();
+            return false;
+        }
+        tradeLanes[Math.floorMod(userId, TRADE_LANES)].execute(() -> {
+            tradesQueued.decrementAndGet();
+            work.run();
+        });
+        return true;
+    }
+
+    // false se la coda è piena: il chiamante risponde subito "occupato"
+    boolean submitQuery(Cost cost, Runnable work, Runnable onExpired) {
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            shed.incrementAndGet();
+            return false;
+        }
+        queryPool.execute(new Job(cost, work, onExpired));
+        return true;
+    }
+
+    void recordShed() {
+        shed.incrementAndGet();
+    }
+}
@@ -0,0 +1,119 @@
+package com.tradingbot.bot;
+
+import com.tradingbot.symbols.SymbolTable;
+
+import java.util.Arrays;
+
+// Messaggio diviso in parole con una sola passata, senza creare stringhe: si salvano
+// solo gli offset di inizio e fine di ogni parola. Le sottostringhe si creano quando un
+// comando legge davvero un argomento. "/prezzo@NomeBot" (comandi nei gruppi) separa
+// il nome del comando dal bot destinatario.
+final class CommandLine {
+    private static final int INITIAL_TOKENS = 8;
+    private static final SymbolTable SYMBOLS = SymbolTable.getInstance();
+
+    private final String text;
+    // Coppie [inizio, fine) delle parole; la prima è il comando senza la menzione del bot
+    private int[] bounds = new int[INITIAL_TOKENS * 2];
+    private int tokens;
+    private int mentionStart = -1;
+    private int mentionEnd = -1;
+
+    private CommandLine(String text) {
+        this.text = text;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int end = i;
+            if (tokens == 0 && text.charAt(start) == '/') {
+                int at = text.indexOf('@', start);
+                if (at >= 0 && at < end) {
+                    mentionStart = at + 1;
+                    mentionEnd = end;
+                    end = at;
+                }
+            }
+            if (tokens * 2 == bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[tokens * 2] = start;
+            bounds[tokens * 2 + 1] = end;
+            tokens++;
+        }
+    }
+
+    static CommandLine parse(String text) {
+        return new CommandLine(text);
+    }
+
+    String text() {
+        return text;
+    }
+
+    boolean isCommand() {
+        return tokens > 0 && text.charAt(bounds[0]) == '/';
+    }
+
+    // Vero se il comando non nomina un bot o nomina questo (i nomi Telegram non distinguono maiuscole)
+    boolean addressedTo(String botUsername) {
+        if (mentionStart < 0) {
+            return true;
+        }
+        int length = mentionEnd - mentionStart;
+        return botUsername != null && botUsername.length() == length
+                && botUsername.regionMatches(true, 0, text, mentionStart, length);
+    }
+
+    // Hash del nome del comando senza distinguere maiuscole, calcolato sul testo originale
+    int commandHash() {
+        int hash = 0;
+        for (int i = bounds[0]; i < bounds[1]; i++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        }
+        return hash;
+    }
+
+    boolean commandIs(String name) {
+        int length = bounds[1] - bounds[0];
+        return name.length() == length && name.regionMatches(true, 0, text, bounds[0], length);
+    }
+
+    // Argomenti dopo il comando
+    int argCount() {
+        return Math.max(0, tokens - 1);
+    }
+
+    String arg(int index) {
+        return text.substring(bounds[(index + 1) * 2], bounds[(index + 1) * 2 + 1]);
+    }
+
+    // Un simbolo già noto restituisce il nome canonico della SymbolTable senza creare stringhe;
+    // uno sconosciuto non viene internato (potrebbe non esistere)
+    String symbol(int index) {
+        int start = bounds[(index + 1) * 2];
+        int end = bounds[(index + 1) * 2 + 1];
+        int id = SYMBOLS.find(text, start, end);
+        return id >= 0 ? SYMBOLS.name(id) : text.substring(start, end).toUpperCase();
+    }
+
+    boolean argIs(int index, String value) {
+        int start = bounds[(index + 1) * 2];
+        int length = bounds[(index + 1) * 2 + 1] - start;
+        return value.length() == length && value.regionMatches(true, 0, text, start, length);
+    }
+
+    // Dall'argomento indicato alla fine del messaggio, spazi interni compresi (es. /cerca Bank of America)
+    String rest(int index) {
+        return text.substring(bounds[(index + 1) * 2], bounds[tokens * 2 - 1]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.tradingbot.bot;
+
+// Tabella dei comandi del bot. Ogni comando dichiara come va eseguito, la sua priorità
+// e gli argomenti minimi (con il messaggio d'uso se mancano). La ricerca confronta il nome
+// direttamente sul testo del messaggio (indirizzamento aperto, hash senza maiuscole):
+// nessuna stringa creata per instradare un comando.
+final class CommandRegistry {
+    // INLINE: solo calcolo in memoria, risposto dal thread che riceve gli update.
+    // SERIAL: corsia dei trade, un comando alla volta nell'ordine di arrivo.
+    // POOLED: coda a priorità dei comandi che aspettano rete o database.
+    enum Execution { INLINE, SERIAL, POOLED }
+
+    @FunctionalInterface
+    interface Handler {
+        String handle(CommandLine line, long userId, long chatId);
+    }
+
+    record Command(String name, Execution execution, AdmissionController.Cost cost,
+                   int minArgs, String usage, Handler handler) {
+    }
+
+    private Command[] slots = new Command[64];
+    private int size;
+
+    void register(String name, Execution execution, AdmissionController.Cost cost, Handler handler) {
+        register(name, execution, cost, 0, null, handler);
+    }
+
+    void register(String name, Execution execution, AdmissionController.Cost cost,
+                  int minArgs, String usage, Handler handler) {
+        if ((size + 1) * 2 > slots.length) {
+            Command[] old = slots;
+            slots = new Command[old.length * 2];
+            for (Command command : old) {
+                if (command != null) {
+                    insert(command);
+                }
+            }
+        }
+        insert(new Command(name, execution, cost, minArgs, usage, handler));
+        size++;
+    }
+
+    // null se il messaggio non è un comando registrato
+    Command lookup(CommandLine line) {
+        if (!line.isCommand()) {
+            return null;
+        }
+        int mask = slots.length - 1;
+        for (int i = spread(line.commandHash()) & mask; slots[i] != null; i = (i + 1) & mask) {
+            if (line.commandIs(slots[i].name())) {
+                return slots[i];
+            }
+        }
+        return null;
+    }
+
+    private void insert(Command command) {
+        int hash = 0;
+        for (int c = 0; c < command.name().length(); c++) {
+            hash = 31 * hash + Character.toLowerCase(command.name().charAt(c));
+        }
+        int mask = slots.length - 1;
+        int i = spread(hash) & mask;
+        while (slots[i] != null) {
+            if (slots[i].name().equalsIgnoreCase(command.name())) {
+                throw new IllegalStateException("Comando registrato due volte: " + command.name());
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = command;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,225 @@
+package com.tradingbot.bot;
+
+import com.google.gson.stream.JsonWriter;
+import com.tradingbot.database.DatabaseManager;
+import com.tradingbot.database.TransactionRecord;
+import com.tradingbot.money.Money;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Esportazione dello storico completo di un utente (posizioni e transazioni).
+// Le righe passano dal cursore del database al formato scelto e da lì in una pipe
+// letta direttamente dall'upload del documento: nessun file temporaneo e memoria
+// costante qualunque sia la lunghezza dello storico.
+class HistoryExporter {
+    enum Format { CSV, JSON }
+
+    private static final int PIPE_BUFFER = 64 * 1024;
+
+    private final DatabaseManager db;
+
+    // Un thread per ogni esportazione in corso scrive nella pipe mentre l'upload la legge
+    private final ExecutorService writers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "export-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Pipe con l'esito della scrittura: dopo l'ultimo byte una scrittura fallita diventa
+    // un errore di lettura, non una fine del file. Senza, la lettura resterebbe in attesa
+    // finché il thread di scrittura (riusato dal pool) non termina.
+    private static class ExportPipe extends PipedInputStream {
+        private volatile Exception failure;
+
+        ExportPipe() {
+            super(PIPE_BUFFER);
+        }
+
+        void fail(Exception e) {
+            failure = e;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                checkFailure();
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                checkFailure();
+            }
+            return n;
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Esportazione interrotta: " + failure.getMessage(), failure);
+            }
+        }
+    }
+
+    HistoryExporter(DatabaseManager db) {
+        this.db = db;
+    }
+
+    // Restituisce il lato in lettura: se la scrittura fallisce la lettura fallisce subito
+    // a sua volta, così non viene mai caricato un file troncato
+    InputStream open(long userId, Format format) throws IOException {
+        ExportPipe in = new ExportPipe();
+        PipedOutputStream out = new PipedOutputStream(in);
+        writers.execute(() -> {
+            try {
+                if (format == Format.CSV) {
+                    writeCsv(userId, out);
+                } else {
+                    writeJson(userId, out);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Errore esportazione storico di " + userId + ": " + e.getMessage());
+                in.fail(e);
+            } finally {
+                // Sveglia subito la lettura: fine del file o, dopo fail, errore
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // Già chiuso dall'upload
+                }
+            }
+        });
+        return in;
+    }
+
+    static String fileName(long userId, Format format) {
+        return "storico_" + userId + "_" + LocalDateTime.now().toLocalDate() + (format == Format.CSV ? ".csv" : ".json");
+    }
+
+    // Due sezioni con la propria intestazione, come negli estratti conto dei broker
+    private void writeCsv(long userId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // BOM: senza, Excel apre il file con la codifica sbagliata
+        writer.write('\uFEFF');
+        writer.write("portfolio\nsymbol,quantity,avg_buy_price,total_invested,purchase_date\n");
+        // Le transazioni arrivano dopo le posizioni: la prima scrive l'intestazione della sua sezione
+        var transactions = new DatabaseManager.RowSink<TransactionRecord>() {
+            boolean started;
+
+            @Override
+            public void accept(TransactionRecord record) throws IOException {
+                start();
+                writer.write(record.symbol());
+                writer.write(',');
+                writer.write(record.type());
+                writer.write(',');
+                writer.write(Money.toPlainString(record.quantity()));
+                writer.write(',');
+                writer.write(Money.toPlainString(record.price()));
+                writer.write(',');
+                writer.write(Money.toPlainString(record.totalAmount()));
+                writer.write(',');
+                if (record.profitLoss() != null) {
+                    writer.write(Money.toPlainString(record.profitLoss()));
+                }
+                writer.write(',');
+                writer.write(record.timestamp());
+                writer.write('\n');
+            }
+
+            void start() throws IOException {
+                if (!started) {
+                    started = true;
+                    writer.write("\ntransactions\nsymbol,type,quantity,price,total_amount,profit_loss,timestamp\n");
+                }
+            }
+        };
+        db.exportHistory(userId,
+                position -> {
+                    writer.write(position.symbol());
+                    writer.write(',');
+                    writer.write(Money.toPlainString(position.quantity()));
+                    writer.write(',');
+                    writer.write(Money.toPlainString(position.avgBuyPrice()));
+                    writer.write(',');
+                    writer.write(Money.toPlainString(position.totalInvested()));
+                    writer.write(',');
+                    writer.write(position.purchaseDate());
+                    writer.write('\n');
+                },
+                transactions);
+        transactions.start();
+        writer.flush();
+    }
+
+    private void writeJson(long userId, OutputStream out) throws IOException {
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        json.beginObject();
+        json.name("user_id").value(userId);
+        json.name("exported_at").value(LocalDateTime.now().toString());
+        json.name("portfolio").beginArray();
+        // Le transazioni arrivano dopo le posizioni: la prima chiude l'array del portfolio
+        var transactions = new DatabaseManager.RowSink<TransactionRecord>() {
+            boolean started;
+
+            @Override
+            public void accept(TransactionRecord record) throws IOException {
+                start();
+                json.beginObject();
+                json.name("symbol").value(record.symbol());
+                json.name("type").value(record.type());
+                json.name("quantity").value(decimal(record.quantity()));
+                json.name("price").value(decimal(record.price()));
+                json.name("total_amount").value(decimal(record.totalAmount()));
+                if (record.profitLoss() != null) {
+                    json.name("profit_loss").value(decimal(record.profitLoss()));
+                }
+                json.name("timestamp").value(record.timestamp());
+                json.endObject();
+            }
+
+            void start() throws IOException {
+                if (!started) {
+                    started = true;
+                    json.endArray();
+                    json.name("transactions").beginArray();
+                }
+            }
+        };
+        db.exportHistory(userId,
+                position -> {
+                    json.beginObject();
+                    json.name("symbol").value(position.symbol());
+                    json.name("quantity").value(decimal(position.quantity()));
+                    json.name("avg_buy_price").value(decimal(position.avgBuyPrice()));
+                    json.name("total_invested").value(decimal(position.totalInvested()));
+                    json.name("purchase_date").value(position.purchaseDate());
+                    json.endObject();
+                },
+                transactions);
+        transactions.start();
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    // Valore esatto nel JSON, senza passare da double
+    private static BigDecimal decimal(long micros) {
+        return new BigDecimal(Money.toPlainString(micros));
+    }
+}
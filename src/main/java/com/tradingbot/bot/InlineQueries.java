@@ -0,0 +1,163 @@
+package com.tradingbot.bot;
+
+import com.tradingbot.api.AlphaVantageClient;
+import com.tradingbot.api.SymbolIndex;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.money.Money;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResult;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Modalità inline (@bot AAPL in qualsiasi chat): una query arriva a ogni tasto premuto,
+// quindi la risposta si costruisce solo dall'indice dei simboli e dalla cache quotazioni,
+// senza database né rete. Quello che manca viene chiesto ad Alpha Vantage in background,
+// una volta per chiave e con una quota al minuto: lo trova pronto la query successiva.
+class InlineQueries {
+    private static final int MAX_QUERY_LENGTH = 32;
+    // Una chiave già chiesta non si richiede prima di questo intervallo
+    private static final long RETRY_MILLIS = 10 * 60_000L;
+    private static final int PREFETCH_QUEUE = 64;
+
+    private final AlphaVantageClient api;
+    private final SymbolIndex index;
+    private final int maxResults;
+    private final long budgetNanos;
+    private final int prefetchPerMinute;
+
+    // Ultima richiesta in background per chiave ("Q:" quotazione, "S:" ricerca)
+    private final Map<String, Long> requested = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor prefetcher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(PREFETCH_QUEUE), r -> {
+        Thread t = new Thread(r, "inline-prefetch");
+        t.setDaemon(true);
+        return t;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+    private long budgetWindowStart;
+    private int callsInWindow;
+
+    InlineQueries(AlphaVantageClient api, ConfigManager config) {
+        this.api = api;
+        this.index = SymbolIndex.getInstance();
+        this.maxResults = config.getInlineMaxResults();
+        this.budgetNanos = config.getInlineBudgetMicros() * 1000L;
+        this.prefetchPerMinute = config.getInlinePrefetchPerMinute();
+        prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    // Risposta pronta da inviare; il primo risultato c'è sempre, gli altri finché resta budget
+    AnswerInlineQuery answer(InlineQuery query) {
+        long start = System.nanoTime();
+        String text = query.getQuery() != null ? query.getQuery().strip() : "";
+        if (text.length() > MAX_QUERY_LENGTH) {
+            text = text.substring(0, MAX_QUERY_LENGTH);
+        }
+
+        List<SymbolIndex.Match> matches = text.isEmpty() ? index.popular() : index.lookup(text, maxResults);
+        List<InlineQueryResult> results = new ArrayList<>(matches.size());
+        boolean missing = false;
+        for (SymbolIndex.Match match : matches) {
+            if (!results.isEmpty() && System.nanoTime() - start > budgetNanos) {
+                break;
+            }
+            AlphaVantageClient.CachedQuote quote = api.getCachedQuote(match.symbol());
+            if (quote == null) {
+                missing = true;
+                // Solo il candidato migliore: ogni tasto premuto non deve costare una chiamata per risultato
+                if (results.isEmpty()) {
+                    prefetch("Q:" + match.symbol(), () -> api.getQuote(match.symbol()));
+                }
+            }
+            results.add(article(match, quote));
+        }
+        if (matches.isEmpty() && text.length() >= 2) {
+            missing = true;
+            String keywords = text.toLowerCase(Locale.ROOT);
+            prefetch("S:" + keywords, () -> api.searchSymbol(keywords));
+        }
+
+        return AnswerInlineQuery.builder()
+                .inlineQueryId(query.getId())
+                .results(results)
+                // Con dati mancanti Telegram non deve tenere la risposta: la prossima avrà il prezzo
+                .cacheTime(missing ? 0 : 10)
+                .isPersonal(false)
+                .build();
+    }
+
+    private static InlineQueryResultArticle article(SymbolIndex.Match match, AlphaVantageClient.CachedQuote quote) {
+        String title = match.name() != null ? match.symbol() + " - " + match.name() : match.symbol();
+        String description;
+        String message;
+        if (quote != null) {
+            String price = String.format("$%.2f", Money.toDouble(quote.price()));
+            description = "💵 " + price + " · aggiornato " + TradingBot.formatAge(quote.ageMillis()) + " fa";
+            message = "📊 " + title + "\n💵 Prezzo: " + price
+                    + "\n🕐 Aggiornato " + TradingBot.formatAge(quote.ageMillis()) + " fa";
+        } else {
+            description = "⏳ Prezzo in arrivo: riprova tra qualche secondo";
+            message = "📊 " + title + "\n💡 Usa /prezzo " + match.symbol() + " per la quotazione";
+        }
+        return InlineQueryResultArticle.builder()
+                .id(match.symbol())
+                .title(title)
+                .description(description)
+                .inputMessageContent(InputTextMessageContent.builder().messageText(message).build())
+                .build();
+    }
+
+    private interface Fetch {
+        void run() throws IOException;
+    }
+
+    // Non blocca mai: chiave già chiesta di recente, quota esaurita o coda piena -> niente
+    private void prefetch(String key, Fetch fetch) {
+        long now = System.currentTimeMillis();
+        Long last = requested.get(key);
+        if (last != null && now - last < RETRY_MILLIS) {
+            return;
+        }
+        // Tra due query concorrenti sulla stessa chiave ne parte una sola
+        boolean claimed = last == null ? requested.putIfAbsent(key, now) == null : requested.replace(key, last, now);
+        if (!claimed) {
+            return;
+        }
+        if (!acquireBudget(now)) {
+            requested.remove(key, now);
+            return;
+        }
+        prefetcher.execute(() -> {
+            try {
+                fetch.run();
+            } catch (IOException e) {
+                System.err.println("Errore prefetch inline " + key + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private synchronized boolean acquireBudget(long now) {
+        if (now - budgetWindowStart >= 60_000) {
+            budgetWindowStart = now;
+            callsInWindow = 0;
+            // Le chiavi scadute non servono più
+            requested.values().removeIf(at -> now - at >= RETRY_MILLIS);
+        }
+        if (callsInWindow >= prefetchPerMinute) {
+            return false;
+        }
+        callsInWindow++;
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package com.tradingbot.bot;
+
+// Token bucket per i messaggi in uscita: Telegram risponde con 429 oltre circa
+// 30 messaggi al secondo. Chi supera la quota aspetta il proprio turno invece di
+// fallire. Con rate 0 il limite è disattivato.
+class RateLimiter {
+    private double permitsPerSecond;
+    private double available;
+    private long lastRefill = System.nanoTime();
+
+    synchronized void setRate(double permitsPerSecond) {
+        refill();
+        // Alla prima impostazione (o se il limite era disattivato) il bucket parte pieno
+        available = this.permitsPerSecond <= 0 ? permitsPerSecond : Math.min(available, permitsPerSecond);
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    void acquire() {
+        long waitNanos;
+        synchronized (this) {
+            if (permitsPerSecond <= 0) {
+                return;
+            }
+            refill();
+            // Il permesso viene prenotato subito: chi arriva dopo aspetta oltre
+            available -= 1;
+            waitNanos = available >= 0 ? 0 : (long) (-available / permitsPerSecond * 1_000_000_000L);
+        }
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (permitsPerSecond > 0) {
+            available = Math.min(permitsPerSecond, available + (now - lastRefill) * permitsPerSecond / 1_000_000_000L);
+        }
+        lastRefill = now;
+    }
+}
@@ -1,29 +1,192 @@
 package com.tradingbot.bot;
 
 import com.tradingbot.api.AlphaVantageClient;
+import com.tradingbot.api.CircuitOpenException;
+import com.tradingbot.backtest.BacktestEngine;
+import com.tradingbot.backtest.BacktestResult;
+import com.tradingbot.backtest.DailySeries;
+import com.tradingbot.backtest.MonteCarloRisk;
+import com.tradingbot.backtest.RiskReport;
+import com.tradingbot.backtest.Strategy;
+import com.tradingbot.cluster.Placement;
 import com.tradingbot.config.ConfigManager;
+import com.tradingbot.config.RuntimeSettings;
 import com.tradingbot.database.DatabaseManager;
+import com.tradingbot.database.TradeJournal;
+import com.tradingbot.fx.DisplayCurrency;
+import com.tradingbot.fx.FxRates;
+import com.tradingbot.leaderboard.Leaderboard;
+import com.tradingbot.money.Money;
+import com.tradingbot.orders.Order;
+import com.tradingbot.orders.OrderEngine;
+import com.tradingbot.symbols.IntLongMap;
+import com.tradingbot.symbols.SymbolTable;
+import com.tradingbot.ticks.TickSnapshot;
+import com.tradingbot.ticks.TickStore;
+import com.tradingbot.tracing.CommandEvent;
+import com.tradingbot.tracing.InlineQueryEvent;
+import com.tradingbot.tracing.RequestContext;
+import com.tradingbot.tracing.SendMessageEvent;
+import com.tradingbot.tracing.UpdateEvent;
+import com.tradingbot.updates.UpdateLog;
+import com.tradingbot.watchlist.WatchlistDigest;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.io.IOException;
-import java.sql.SQLException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TradingBot extends TelegramLongPollingBot {
+    private static final long INTRADAY_WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int SPARKLINE_WIDTH = 20;
+    private static final int MAX_BATCH_LEGS = 10;
+    private static final String BUSY_REPLY = "⏳ Il bot è molto occupato in questo momento. Riprova tra qualche secondo.";
+    private static final String MOVED_REPLY = "⏳ Il tuo account si sta riavviando: riprova a operare tra qualche secondo.";
+    private static final String UNKNOWN_REPLY = "❓ Comando non riconosciuto. Usa /help per vedere tutti i comandi.";
+
+    private record BatchLeg(String symbol, TradeJournal.Side side, long quantity) {
+    }
+
     private final ConfigManager config;
     private final DatabaseManager db;
     private final AlphaVantageClient api;
+    private final Leaderboard leaderboard;
+    private final TickStore tickStore;
+    private final SymbolTable ids = SymbolTable.getInstance();
+    // Caricato in modo pigro: legge gli ordini aperti dal database e non serve per i primi comandi
+    private OrderEngine orderEngine;
+    private WatchlistDigest watchlistDigest;
+    // Solo quando questo processo fa polling su Telegram (non nei worker del cluster)
+    private volatile UpdateLog updateLog;
+
+    // Limite globale sui messaggi inviati e pool per le notifiche asincrone (ordini eseguiti, ...)
+    private final RateLimiter sendLimiter = new RateLimiter();
+    private final AtomicInteger notifyThreadCount = new AtomicInteger();
+    private final ThreadPoolExecutor notifyExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "notify-" + notifyThreadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Corsia dei trade e coda limitata per gli altri comandi
+    private final AdmissionController admission = new AdmissionController();
+    private final CommandRegistry commands = new CommandRegistry();
+
+    // Esportazioni dello storico: al massimo due upload alla volta, fuori dalle code dei comandi
+    private final HistoryExporter exporter;
+    private final InlineQueries inlineQueries;
+    private final ExecutorService exportExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "export-upload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Richieste di prezzo in parallelo per gli ordini multipli: al massimo una per gamba,
+    // gli ordini delle altre corsie dei trade aspettano in coda
+    private final ThreadPoolExecutor quoteFanout = new ThreadPoolExecutor(MAX_BATCH_LEGS, MAX_BATCH_LEGS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "quote-fanout");
+        t.setDaemon(true);
+        return t;
+    });
 
     public TradingBot() {
+        super(ConfigManager.getInstance().getBotToken());
         this.config = ConfigManager.getInstance();
         this.db = DatabaseManager.getInstance();
         this.api = AlphaVantageClient.getInstance();
+        this.leaderboard = Leaderboard.getInstance();
+        this.tickStore = TickStore.getInstance();
+        this.exporter = new HistoryExporter(db);
+        this.inlineQueries = new InlineQueries(api, config);
+        api.addPriceListener(leaderboard);
+        notifyExecutor.allowCoreThreadTimeOut(true);
+        quoteFanout.allowCoreThreadTimeOut(true);
+        config.subscribe(this::applySettings);
+        config.subscribe(admission::apply);
+        registerCommands();
+    }
+
+    private void applySettings(RuntimeSettings settings) {
+        sendLimiter.setRate(settings.sendRatePerSecond());
+        int threads = settings.notifyThreads();
+        // Core e massimo vanno cambiati in un ordine che mantenga core <= massimo
+        if (threads > notifyExecutor.getMaximumPoolSize()) {
+            notifyExecutor.setMaximumPoolSize(threads);
+            notifyExecutor.setCorePoolSize(threads);
+        } else {
+            notifyExecutor.setCorePoolSize(threads);
+            notifyExecutor.setMaximumPoolSize(threads);
+        }
+    }
+
+    // Avvio differito dei componenti non critici; li crea il primo comando che li usa se arriva prima
+    public void warmUp() {
+        orders();
+    }
+
+    private synchronized OrderEngine orders() {
+        if (orderEngine == null) {
+            orderEngine = OrderEngine.getInstance();
+            orderEngine.setNotifier((chatId, text) -> notifyExecutor.execute(() -> sendMessage(chatId, text)));
+            api.addPriceListener(orderEngine);
+        }
+        return orderEngine;
+    }
+
+    private synchronized WatchlistDigest digests() {
+        if (watchlistDigest == null) {
+            watchlistDigest = WatchlistDigest.getInstance();
+            watchlistDigest.setNotifier((chatId, text) -> notifyExecutor.execute(() -> sendMessage(chatId, text)));
+        }
+        return watchlistDigest;
+    }
+
+    // Nel processo singolo
+    public void startDigests() {
+        digests().start();
+    }
+
+    // Nel cluster solo sul primo worker: i worker condividono il database e
+    // manderebbero ognuno lo stesso riepilogo
+    public void startSharedDigests() {
+        digests().startShared();
+    }
+
+    // Da chiamare prima di registrare il bot: riprende dall'ultimo update elaborato
+    public void resumeUpdates() {
+        updateLog = UpdateLog.open();
+        if (updateLog != null) {
+            updateLog.confirm(this);
+        }
     }
 
     @Override
@@ -32,61 +195,293 @@ public class TradingBot extends TelegramLongPollingBot {
     }
 
     @Override
-    public String getBotToken() {
-        return config.getBotToken();
+    public void onUpdatesReceived(List<Update> updates) {
+        UpdateLog log = updateLog;
+        for (Update update : log != null ? log.admit(updates) : updates) {
+            onUpdateReceived(update);
+        }
     }
 
+    // L'update_id fa da id della richiesta per tutti gli eventi JFR che ne derivano
     @Override
     public void onUpdateReceived(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
-            long chatId = update.getMessage().getChatId();
-            String messageText = update.getMessage().getText();
-            long userId = update.getMessage().getFrom().getId();
-            String username = update.getMessage().getFrom().getUserName();
-            String firstName = update.getMessage().getFrom().getFirstName();
-            String lastName = update.getMessage().getFrom().getLastName();
+            long previous = RequestContext.enter(update.getUpdateId());
+            UpdateEvent event = new UpdateEvent();
+            event.begin();
+            CommandRegistry.Command command = null;
+            String route = null;
+            try {
+                CommandLine line = CommandLine.parse(update.getMessage().getText());
+                command = commands.lookup(line);
+                route = route(update, line, command);
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.requestId = update.getUpdateId();
+                    event.command = command != null ? command.name() : null;
+                    event.userId = update.getMessage().getFrom().getId();
+                    event.route = route;
+                    event.commit();
+                }
+                RequestContext.restore(previous);
+            }
+        } else if (update.hasInlineQuery()) {
+            answerInline(update);
+        }
+    }
 
-            db.addOrUpdateUser(userId, username, firstName, lastName);
+    // Costruita sul thread degli update (solo indice e cache, nessuna attesa); l'invio è asincrono
+    private void answerInline(Update update) {
+        InlineQuery query = update.getInlineQuery();
+        long previous = RequestContext.enter(update.getUpdateId());
+        InlineQueryEvent event = new InlineQueryEvent();
+        event.begin();
+        AnswerInlineQuery answer = null;
+        try {
+            answer = inlineQueries.answer(query);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.requestId = update.getUpdateId();
+                event.userId = query.getFrom().getId();
+                event.query = query.getQuery();
+                event.results = answer != null ? answer.getResults().size() : 0;
+                event.commit();
+            }
+            RequestContext.restore(previous);
+        }
+        try {
+            executeAsync(answer).exceptionally(e -> {
+                System.err.println("Errore risposta inline: " + e.getMessage());
+                return null;
+            });
+        } catch (TelegramApiException e) {
+            System.err.println("Errore risposta inline: " + e.getMessage());
+        }
+    }
+
+    // Restituisce dove è finito il comando (per la traccia JFR), null se ignorato
+    private String route(Update update, CommandLine line, CommandRegistry.Command command) {
+        long chatId = update.getMessage().getChatId();
+        long userId = update.getMessage().getFrom().getId();
+
+        // Nei gruppi i comandi rivolti ad altri bot non ci riguardano
+        if (!line.addressedTo(getBotUsername())) {
+            return null;
+        }
+        if (command == null) {
+            reply(chatId, UNKNOWN_REPLY);
+            return "UNKNOWN";
+        }
+        if (line.argCount() < command.minArgs()) {
+            reply(chatId, command.usage());
+            return "USAGE";
+        }
+        if (command.execution() == CommandRegistry.Execution.INLINE) {
+            reply(chatId, command.handler().handle(line, userId, chatId));
+            return command.execution().name();
+        }
 
-            String response = handleCommand(messageText, userId);
+        String username = update.getMessage().getFrom().getUserName();
+        String firstName = update.getMessage().getFrom().getFirstName();
+        String lastName = update.getMessage().getFrom().getLastName();
+        long enqueuedAt = System.nanoTime();
+        Runnable work = RequestContext.bind(() -> {
+            long startedAt = System.nanoTime();
+            CommandEvent event = new CommandEvent();
+            event.begin();
+            db.addOrUpdateUser(userId, username, firstName, lastName);
+            String response;
+            try {
+                response = command.handler().handle(line, userId, chatId);
+            } catch (NumberFormatException e) {
+                response = command.usage() != null ? command.usage() : "❌ Valore numerico non valido.";
+            } catch (ArithmeticException e) {
+                // Quantità per prezzo oltre il massimo rappresentabile (vedi Money.mul)
+                response = "❌ Importo troppo grande.";
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.requestId = RequestContext.current();
+                    event.command = command.name();
+                    event.queued = startedAt - enqueuedAt;
+                    event.commit();
+                }
+            }
             sendMessage(chatId, response);
+        });
+        return admit(command, line, userId, chatId, work);
+    }
+
+    // Questo thread riceve gli update da Telegram: qui si decide solo dove mandare il comando
+    private String admit(CommandRegistry.Command command, CommandLine line, long userId, long chatId, Runnable work) {
+        if (command.execution() == CommandRegistry.Execution.SERIAL) {
+            // I conti in memoria valgono solo se i trade di un utente passano da un solo worker:
+            // qui arriva solo se il suo worker è caduto, e torna appena il front lo riavvia
+            if (!ownsUser(userId)) {
+                reply(chatId, MOVED_REPLY);
+                return "MOVED";
+            }
+            if (!admission.submitTrade(userId, work)) {
+                reply(chatId, BUSY_REPLY);
+                return "BUSY";
+            }
+            return command.execution().name();
+        }
+
+        AdmissionController.Cost cost = command.cost();
+        AdmissionController.Pressure pressure = admission.pressure();
+        if (pressure != AdmissionController.Pressure.NORMAL && cost == AdmissionController.Cost.QUOTE) {
+            // Sotto carico quotazioni e portfolio arrivano dalla cache, con l'età indicata
+            String cached = cachedReply(line, userId);
+            if (cached != null) {
+                reply(chatId, cached);
+                return "CACHED";
+            }
+        }
+        if (pressure == AdmissionController.Pressure.OVERLOADED && cost != AdmissionController.Cost.LIGHT) {
+            admission.recordShed();
+            reply(chatId, BUSY_REPLY);
+            return "BUSY";
         }
+        if (!admission.submitQuery(cost, work, RequestContext.bind(() -> sendMessage(chatId, BUSY_REPLY)))) {
+            reply(chatId, BUSY_REPLY);
+            return "BUSY";
+        }
+        return command.execution().name();
+    }
+
+    private boolean ownsUser(long userId) {
+        int workerIndex = config.getClusterWorkerIndex();
+        return workerIndex < 0 || Placement.owner(userId, config.getClusterWorkers()) == workerIndex;
     }
 
-    private String handleCommand(String command, long userId) {
-        String[] parts = command.split(" ");
-        String cmd = parts[0].toLowerCase();
-
-        return switch (cmd) {
-            case "/start" -> getWelcomeMessage();
-            case "/help" -> getHelpMessage();
-            case "/prezzo" -> parts.length < 2 ?
-                    "❌ Specifica il simbolo: /prezzo AAPL" :
-                    getStockPrice(parts[1].toUpperCase());
-            case "/info" -> parts.length < 2 ?
-                    "❌ Specifica il simbolo: /info AAPL" :
-                    getCompanyInfo(parts[1].toUpperCase());
-            case "/compra" -> parts.length < 3 ?
-                    "❌ Usa: /compra SIMBOLO QUANTITA\nEsempio: /compra AAPL 10" :
-                    buyStock(userId, parts[1].toUpperCase(), parts[2]);
-            case "/vendi" -> parts.length < 3 ?
-                    "❌ Usa: /vendi SIMBOLO QUANTITA\nEsempio: /vendi AAPL 5" :
-                    sellStock(userId, parts[1].toUpperCase(), parts[2]);
-            case "/portfolio" -> getPortfolio(userId);
-            case "/balance" -> getBalance(userId);
-            case "/storico" -> getHistory(userId);
-            case "/watch" -> parts.length < 2 ?
-                    "❌ Usa: /watch SIMBOLO\nEsempio: /watch TSLA" :
-                    addToWatchlist(userId, parts[1].toUpperCase());
-            case "/watchlist" -> getWatchlist(userId);
-            case "/stats" -> db.getUserStats(userId);
-            case "/cerca" -> parts.length < 2 ?
-                    "❌ Usa: /cerca PAROLA_CHIAVE\nEsempio: /cerca Apple" :
-                    searchSymbol(String.join(" ", java.util.Arrays.copyOfRange(parts, 1, parts.length)));
-            case "/top" -> getTopStocks();
-            case "/reset" -> resetAccount(userId);
-            default -> "❓ Comando non riconosciuto. Usa /help per vedere tutti i comandi.";
-        };
+    // Risposta costruita solo con i prezzi in cache; null se mancano
+    private String cachedReply(CommandLine line, long userId) {
+        if (line.commandIs("/prezzo") && line.argCount() >= 1) {
+            String symbol = line.symbol(0);
+            AlphaVantageClient.CachedQuote quote = api.getCachedQuote(symbol);
+            if (quote == null) {
+                return null;
+            }
+            return String.format("""
+                    📊 %s
+                    💵 Prezzo: $%.2f
+
+                    ⏳ Prezzo di %s fa: il bot è molto carico, riprova più tardi per il dato aggiornato
+                    """, symbol, Money.toDouble(quote.price()), formatAge(quote.ageMillis()));
+        }
+        if (line.commandIs("/portfolio")) {
+            // Solo memoria: cash e posizioni dalla classifica, prezzi dalla cache
+            Leaderboard.Holdings holdings = leaderboard.getHoldings(userId);
+            if (holdings == null) {
+                return null;
+            }
+            StringBuilder result = new StringBuilder("💼 IL TUO PORTFOLIO\n\n");
+            long value = 0;
+            long oldest = 0;
+            int unpriced = 0;
+            for (Map.Entry<String, Long> position : holdings.positions().entrySet()) {
+                AlphaVantageClient.CachedQuote quote = api.getCachedQuote(position.getKey());
+                if (quote == null) {
+                    unpriced++;
+                    result.append(String.format("📊 %s: %.2f azioni · ⚠️ prezzo non disponibile\n",
+                            position.getKey(), Money.toDouble(position.getValue())));
+                    continue;
+                }
+                long positionValue = Money.mul(position.getValue(), quote.price());
+                value += positionValue;
+                oldest = Math.max(oldest, quote.ageMillis());
+                result.append(String.format("📊 %s: %.2f azioni × $%.2f = $%.2f\n", position.getKey(),
+                        Money.toDouble(position.getValue()), Money.toDouble(quote.price()),
+                        Money.toDouble(positionValue)));
+            }
+            result.append(String.format("\n💳 Cash disponibile: $%.2f\n💰 Valore totale: $%.2f",
+                    Money.toDouble(holdings.cash()), Money.toDouble(holdings.cash() + value)));
+            if (unpriced > 0) {
+                result.append(" (esclusi ").append(unpriced).append(" titoli senza prezzo)");
+            }
+            return result.append("\n\n⏳ Il bot è molto carico: valori con prezzi in cache (fino a ")
+                    .append(formatAge(oldest)).append(" fa), in USD e senza P/L").toString();
+        }
+        return null;
+    }
+
+    // Nota per le risposte servite dall'ultima copia valida mentre Alpha Vantage non risponde
+    private static String staleNote(JsonObject json) {
+        return json.has("staleMillis")
+                ? "\n⏳ Dati di " + formatAge(json.get("staleMillis").getAsLong()) + " fa: Alpha Vantage al momento non risponde"
+                : "";
+    }
+
+    static String formatAge(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) {
+            return seconds + " s";
+        }
+        return seconds < 3600 ? seconds / 60 + " min" : seconds / 3600 + " h";
+    }
+
+    // Risposta immediata senza bloccare il thread che riceve gli update
+    private void reply(long chatId, String text) {
+        notifyExecutor.execute(RequestContext.bind(() -> sendMessage(chatId, text)));
+    }
+
+    // Per aggiungere un comando basta registrarlo qui con il suo profilo di costo
+    private void registerCommands() {
+        CommandRegistry.Execution inline = CommandRegistry.Execution.INLINE;
+        CommandRegistry.Execution serial = CommandRegistry.Execution.SERIAL;
+        CommandRegistry.Execution pooled = CommandRegistry.Execution.POOLED;
+        AdmissionController.Cost light = AdmissionController.Cost.LIGHT;
+        AdmissionController.Cost quote = AdmissionController.Cost.QUOTE;
+        AdmissionController.Cost heavy = AdmissionController.Cost.HEAVY;
+
+        // /start resta in coda: registra l'utente nel database
+        commands.register("/start", pooled, light, (line, userId, chatId) -> getWelcomeMessage());
+        commands.register("/help", inline, light, (line, userId, chatId) -> getHelpMessage());
+
+        commands.register("/prezzo", pooled, quote, 1, "❌ Specifica il simbolo: /prezzo AAPL",
+                (line, userId, chatId) -> getStockPrice(line.symbol(0)));
+        commands.register("/intraday", pooled, light, 1, "❌ Specifica il simbolo: /intraday AAPL",
+                (line, userId, chatId) -> getIntradayStats(line.symbol(0)));
+        commands.register("/info", pooled, heavy, 1, "❌ Specifica il simbolo: /info AAPL",
+                (line, userId, chatId) -> getCompanyInfo(line.symbol(0)));
+        commands.register("/cerca", pooled, heavy, 1, "❌ Usa: /cerca PAROLA_CHIAVE\nEsempio: /cerca Apple",
+                (line, userId, chatId) -> searchSymbol(line.rest(0)));
+        commands.register("/top", pooled, light, (line, userId, chatId) -> getTopStocks());
+
+        commands.register("/compra", serial, light, 2, "❌ Usa: /compra SIMBOLO QUANTITA\nEsempio: /compra AAPL 10",
+                (line, userId, chatId) -> buyStock(userId, line.symbol(0), line.arg(1)));
+        commands.register("/vendi", serial, light, 2, "❌ Usa: /vendi SIMBOLO QUANTITA\nEsempio: /vendi AAPL 5",
+                (line, userId, chatId) -> sellStock(userId, line.symbol(0), line.arg(1)));
+        commands.register("/ordine", serial, light, (line, userId, chatId) -> batchOrder(userId, line));
+        commands.register("/limite", serial, light, 4,
+                "❌ Usa: /limite compra|vendi SIMBOLO QUANTITA PREZZO\nEsempio: /limite compra AAPL 10 150",
+                (line, userId, chatId) -> placeOrder(userId, chatId, Order.Type.LIMIT, line));
+        commands.register("/stop", serial, light, 4,
+                "❌ Usa: /stop compra|vendi SIMBOLO QUANTITA PREZZO\nEsempio: /stop vendi AAPL 10 140",
+                (line, userId, chatId) -> placeOrder(userId, chatId, Order.Type.STOP, line));
+        commands.register("/ordini", pooled, light, (line, userId, chatId) -> getOpenOrders(userId));
+        commands.register("/annulla", serial, light, 1, "❌ Usa: /annulla ID_ORDINE\nEsempio: /annulla 12",
+                (line, userId, chatId) -> cancelOrder(userId, line.arg(0)));
+        commands.register("/reset", serial, light, (line, userId, chatId) -> resetAccount(userId));
+
+        commands.register("/portfolio", pooled, quote, (line, userId, chatId) -> getPortfolio(userId));
+        commands.register("/balance", pooled, light, (line, userId, chatId) -> getBalance(userId));
+        commands.register("/storico", pooled, light, (line, userId, chatId) -> getHistory(userId));
+        commands.register("/esporta", pooled, light, (line, userId, chatId) -> exportHistory(userId, chatId, line));
+        commands.register("/stats", pooled, light, (line, userId, chatId) -> db.getUserStats(userId, currencyOf(userId)));
+        commands.register("/valuta", pooled, light, (line, userId, chatId) -> changeCurrency(userId, line));
+        commands.register("/classifica", pooled, light, (line, userId, chatId) -> getLeaderboard(userId));
+        commands.register("/backtest", pooled, heavy, 2, BACKTEST_USAGE, (line, userId, chatId) -> runBacktest(line));
+        commands.register("/rischio", pooled, heavy, (line, userId, chatId) -> estimateRisk(userId, line));
+
+        commands.register("/watch", pooled, quote, 1, "❌ Usa: /watch SIMBOLO\nEsempio: /watch TSLA",
+                (line, userId, chatId) -> addToWatchlist(userId, line.symbol(0)));
+        commands.register("/watchlist", pooled, light, (line, userId, chatId) -> getWatchlist(userId));
+        commands.register("/digest", pooled, light, (line, userId, chatId) -> toggleDigest(userId, chatId));
+        commands.register("/cache", pooled, light, (line, userId, chatId) -> getCacheStats());
     }
 
     private String getWelcomeMessage() {
@@ -104,7 +499,7 @@ public class TradingBot extends TelegramLongPollingBot {
                 💡 Suggerimento: Inizia con /prezzo AAPL per vedere il prezzo Apple!
                 
                 Usa /help per tutti i comandi disponibili.
-                """, config.getInitialVirtualBalance());
+                """, Money.toDouble(config.getInitialVirtualBalance()));
     }
 
     private String getHelpMessage() {
@@ -113,6 +508,7 @@ public class TradingBot extends TelegramLongPollingBot {
                 
                 📊 QUOTAZIONI:
                 /prezzo [SIMBOLO] - Prezzo attuale di un'azione
+                /intraday [SIMBOLO] - Minimo, massimo, VWAP e grafico delle ultime 24 ore
                 /info [SIMBOLO] - Informazioni dettagliate azienda
                 /cerca [NOME] - Cerca simbolo per nome azienda
                 /top - Top azioni popolari
@@ -120,32 +516,59 @@ public class TradingBot extends TelegramLongPollingBot {
                 💰 TRADING:
                 /compra [SIMBOLO] [QTÀ] - Compra azioni
                 /vendi [SIMBOLO] [QTÀ] - Vendi azioni
+                /ordine [SIMBOLO] [±QTÀ] ... - Più acquisti/vendite in un colpo solo
                 /balance - Mostra il tuo saldo disponibile
                 
+                📋 ORDINI:
+                /limite [compra|vendi] [SIMBOLO] [QTÀ] [PREZZO] - Ordine limite
+                /stop [compra|vendi] [SIMBOLO] [QTÀ] [PREZZO] - Ordine stop
+                /ordini - Ordini aperti
+                /annulla [ID] - Annulla un ordine
+                
                 📈 PORTFOLIO:
                 /portfolio - Vedi il tuo portfolio completo
                 /storico - Storico delle transazioni
+                /esporta [csv|json] - Scarica lo storico completo
                 /stats - Le tue statistiche di trading
+                /classifica - Classifica degli utenti per patrimonio
+                /valuta [CODICE] - Valuta in cui vedere saldo, portfolio e P/L
+                /backtest [hold|sma|ribilancia] [SIMBOLI] - Prova una strategia sullo storico
+                /rischio [GIORNI] - Rischio stimato del portfolio (VaR Monte Carlo)
                 
                 ⭐ WATCHLIST:
                 /watch [SIMBOLO] - Aggiungi alla watchlist
                 /watchlist - Mostra la tua watchlist
+                /digest - Attiva/disattiva il riepilogo periodico dei prezzi
                 
                 🔄 ALTRO:
                 /reset - Resetta il tuo account (riparti da capo)
+                /cache - Statistiche della cache delle quotazioni
                 /help - Mostra questo messaggio
                 
+                🔎 INLINE:
+                Scrivi @%s AAPL in qualsiasi chat per condividere una quotazione
+                
                 💡 Esempi:
                 /prezzo AAPL
                 /compra TSLA 5
                 /vendi MSFT 2
-                """;
+                /ordine AAPL +10 MSFT -5
+                """.formatted(getBotUsername());
     }
 
     private String getStockPrice(String symbol) {
         try {
             JsonObject quote = api.getQuote(symbol);
 
+            if (quote.has("staleMillis")) {
+                return String.format("""
+                        📊 %s
+                        💵 Prezzo: $%.2f
+
+                        ⏳ Ultimo prezzo noto, di %s fa: Alpha Vantage al momento non risponde
+                        """, symbol, quote.get("price").getAsDouble(), formatAge(quote.get("staleMillis").getAsLong()));
+            }
+
             if (quote.has("cached")) {
                 double price = quote.get("price").getAsDouble();
                 return String.format("""
@@ -174,6 +597,8 @@ public class TradingBot extends TelegramLongPollingBot {
                     """, symbol, price, changeEmoji, changeColor, Math.abs(change),
                     changePercent, volume, symbol);
 
+        } catch (CircuitOpenException e) {
+            return "⚠️ " + e.getMessage() + ".";
         } catch (IOException e) {
             if (e.getMessage().contains("API limit")) {
                 return "⚠️ Limite API raggiunto. Riprova tra qualche minuto.\n" +
@@ -183,6 +608,37 @@ public class TradingBot extends TelegramLongPollingBot {
         }
     }
 
+    // Statistiche sulle quotazioni già osservate dal bot: nessuna chiamata API
+    private String getIntradayStats(String symbol) {
+        long since = System.currentTimeMillis() - INTRADAY_WINDOW_MILLIS;
+        TickSnapshot ticks = tickStore.snapshot(symbol, since);
+        if (ticks.isEmpty()) {
+            return "📭 Nessuna quotazione recente per " + symbol +
+                    ".\n💡 Usa /prezzo " + symbol + " per iniziare a raccoglierle.";
+        }
+
+        long vwap = ticks.vwap();
+        double change = ticks.changePercent();
+        String time = Instant.ofEpochMilli(ticks.firstTimestamp()).atZone(ZoneId.systemDefault())
+                .toLocalTime().format(DateTimeFormatter.ofPattern("HH:mm"));
+
+        return String.format("""
+                📊 %s - ULTIME 24 ORE
+
+                %s
+
+                💵 Ultimo: $%.2f (%s%.2f%%)
+                ⬇️ Minimo: $%.2f
+                ⬆️ Massimo: $%.2f
+                ⚖️ VWAP: %s
+                🔢 Quotazioni osservate: %d (dalle %s)
+                """, symbol, ticks.sparkline(SPARKLINE_WIDTH),
+                Money.toDouble(ticks.lastPrice()), change >= 0 ? "+" : "", change,
+                Money.toDouble(ticks.minPrice()), Money.toDouble(ticks.maxPrice()),
+                vwap >= 0 ? String.format("$%.2f", Money.toDouble(vwap)) : "n/d",
+                ticks.size(), time);
+    }
+
     private String getCompanyInfo(String symbol) {
         try {
             JsonObject overview = api.getCompanyOverview(symbol);
@@ -214,8 +670,11 @@ public class TradingBot extends TelegramLongPollingBot {
                     %s
                     
                     💡 Usa /prezzo %s per vedere il prezzo attuale
-                    """, name, symbol, sector, industry, marketCap, peRatio, description, symbol);
+                    """, name, symbol, sector, industry, marketCap, peRatio, description, symbol)
+                    + staleNote(overview);
 
+        } catch (CircuitOpenException e) {
+            return "⚠️ " + e.getMessage() + ".";
         } catch (IOException e) {
             if (e.getMessage().contains("API limit")) {
                 return "⚠️ Limite API raggiunto. Riprova tra qualche minuto.";
@@ -226,27 +685,30 @@ public class TradingBot extends TelegramLongPollingBot {
 
     private String buyStock(long userId, String symbol, String quantityStr) {
         try {
-            double quantity = Double.parseDouble(quantityStr);
+            long quantity = Money.parseInput(quantityStr);
 
             if (quantity <= 0) {
                 return "❌ La quantità deve essere maggiore di 0.";
             }
 
-            double currentPrice = api.getCurrentPrice(symbol);
-            double totalCost = currentPrice * quantity;
-            double userBalance = db.getUserBalance(userId);
+            long currentPrice = api.getCurrentPrice(symbol);
+            long totalCost = Money.mul(quantity, currentPrice);
+            DatabaseManager.TradeResult trade = db.buyStock(userId, symbol, quantity, currentPrice);
 
-            if (totalCost > userBalance) {
+            if (trade.status() == DatabaseManager.TradeStatus.REJECTED) {
                 return String.format("""
                         ❌ Fondi insufficienti!
                         
                         💵 Costo totale: $%.2f
                         💳 Saldo disponibile: $%.2f
                         💰 Mancano: $%.2f
-                        """, totalCost, userBalance, totalCost - userBalance);
+                        """, Money.toDouble(totalCost), Money.toDouble(trade.cash()),
+                        Money.toDouble(totalCost - trade.cash()));
             }
 
-            db.buyStock(userId, symbol, quantity, currentPrice);
+            if (trade.status() == DatabaseManager.TradeStatus.FAILED) {
+                return "❌ Errore durante la registrazione dell'acquisto. Riprova.";
+            }
 
             return String.format("""
                     ✅ ACQUISTO COMPLETATO!
@@ -258,8 +720,8 @@ public class TradingBot extends TelegramLongPollingBot {
                     💳 Nuovo saldo: $%.2f
                     
                     💡 Usa /portfolio per vedere il tuo portfolio
-                    """, symbol, quantity, currentPrice, totalCost,
-                    userBalance - totalCost);
+                    """, symbol, Money.toDouble(quantity), Money.toDouble(currentPrice),
+                    Money.toDouble(totalCost), Money.toDouble(trade.cash()));
 
         } catch (NumberFormatException e) {
             return "❌ Quantità non valida. Usa un numero (es. 10 o 5.5)";
@@ -273,17 +735,17 @@ public class TradingBot extends TelegramLongPollingBot {
 
     private String sellStock(long userId, String symbol, String quantityStr) {
         try {
-            double quantity = Double.parseDouble(quantityStr);
+            long quantity = Money.parseInput(quantityStr);
 
             if (quantity <= 0) {
                 return "❌ La quantità deve essere maggiore di 0.";
             }
 
-            double currentPrice = api.getCurrentPrice(symbol);
+            long currentPrice = api.getCurrentPrice(symbol);
 
-            boolean success = db.sellStock(userId, symbol, quantity, currentPrice);
+            DatabaseManager.TradeResult trade = db.sellStock(userId, symbol, quantity, currentPrice);
 
-            if (!success) {
+            if (trade.status() == DatabaseManager.TradeStatus.REJECTED) {
                 return String.format("""
                         ❌ VENDITA FALLITA!
                         
@@ -292,8 +754,12 @@ public class TradingBot extends TelegramLongPollingBot {
                         """, symbol);
             }
 
-            double totalRevenue = currentPrice * quantity;
-            double newBalance = db.getUserBalance(userId);
+            if (trade.status() == DatabaseManager.TradeStatus.FAILED) {
+                return "❌ Errore durante la registrazione della vendita. Riprova.";
+            }
+
+            long totalRevenue = Money.mul(quantity, currentPrice);
+            long newBalance = trade.cash();
 
             return String.format("""
                     ✅ VENDITA COMPLETATA!
@@ -305,7 +771,8 @@ public class TradingBot extends TelegramLongPollingBot {
                     💳 Nuovo saldo: $%.2f
                     
                     💡 Usa /storico per vedere tutte le transazioni
-                    """, symbol, quantity, currentPrice, totalRevenue, newBalance);
+                    """, symbol, Money.toDouble(quantity), Money.toDouble(currentPrice),
+                    Money.toDouble(totalRevenue), Money.toDouble(newBalance));
 
         } catch (NumberFormatException e) {
             return "❌ Quantità non valida. Usa un numero (es. 10 o 5.5)";
@@ -317,119 +784,558 @@ public class TradingBot extends TelegramLongPollingBot {
         }
     }
 
-    private String getPortfolio(long userId) {
+    // Ordine multiplo: /ordine AAPL +10 MSFT -5 ... Le quotazioni sono richieste tutte
+    // insieme e le gambe vengono registrate con un'unica append sul journal, quindi
+    // proiettate in una sola transazione SQLite: o passano tutte o nessuna.
+    private String batchOrder(long userId, CommandLine line) {
+        int args = line.argCount();
+        if (args < 2 || args % 2 != 0) {
+            return "❌ Usa: /ordine SIMBOLO ±QUANTITA [SIMBOLO ±QUANTITA ...]\nEsempio: /ordine AAPL +10 MSFT -5";
+        }
+        if (args / 2 > MAX_BATCH_LEGS) {
+            return "❌ Massimo " + MAX_BATCH_LEGS + " titoli per ordine.";
+        }
+
+        List<BatchLeg> legs = new ArrayList<>();
+        Set<String> symbols = new HashSet<>();
         try {
-            // Prima ottieni i simboli nel portfolio
-            Map<String, Double> currentPrices = new HashMap<>();
-
-            // Query per ottenere tutti i simboli nel portfolio
-            String symbolQuery = "SELECT DISTINCT symbol FROM portfolio WHERE user_id = ?";
-            try (var conn = db.getConnection();
-                 var pstmt = conn.prepareStatement(symbolQuery)) {
-                pstmt.setLong(1, userId);
-                var rs = pstmt.executeQuery();
-
-                while (rs.next()) {
-                    String symbol = rs.getString("symbol");
-                    try {
-                        double price = api.getCurrentPrice(symbol);
-                        currentPrices.put(symbol, price);
-                    } catch (IOException e) {
-                        System.err.println("Errore recupero prezzo per " + symbol + ": " + e.getMessage());
-                        // Continua con gli altri simboli
-                    }
+            for (int i = 0; i < args; i += 2) {
+                String symbol = line.symbol(i);
+                long quantity = Money.parseInput(line.arg(i + 1));
+                if (quantity == 0) {
+                    return "❌ Quantità nulla per " + symbol + ".";
                 }
-            } catch (Exception e) {
-                System.err.println("Errore query simboli: " + e.getMessage());
+                if (!symbols.add(symbol)) {
+                    return "❌ " + symbol + " compare più volte nell'ordine.";
+                }
+                legs.add(new BatchLeg(symbol, quantity > 0 ? TradeJournal.Side.BUY : TradeJournal.Side.SELL,
+                        Math.abs(quantity)));
             }
+        } catch (NumberFormatException e) {
+            return "❌ Quantità non valida. Usa + per comprare e - per vendere (es. +10 o -5.5)";
+        }
+        // Prima le vendite: il ricavato è disponibile per gli acquisti dello stesso ordine
+        legs.sort(Comparator.comparing(leg -> leg.side() == TradeJournal.Side.BUY));
+
+        Map<String, CompletableFuture<Long>> quotes = new HashMap<>();
+        for (BatchLeg leg : legs) {
+            quotes.put(leg.symbol(), CompletableFuture.supplyAsync(() -> {
+                try {
+                    return api.getCurrentPrice(leg.symbol());
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, quoteFanout));
+        }
 
-            // Se non abbiamo prezzi, usa un portfolio semplificato
-            if (currentPrices.isEmpty()) {
-                // Verifica se il portfolio è veramente vuoto
-                String checkQuery = "SELECT COUNT(*) as count FROM portfolio WHERE user_id = ?";
-                try (var conn = db.getConnection();
-                     var pstmt = conn.prepareStatement(checkQuery)) {
-                    pstmt.setLong(1, userId);
-                    var rs = pstmt.executeQuery();
-                    if (rs.next() && rs.getInt("count") == 0) {
-                        return "📊 Portfolio vuoto. Inizia a investire con /compra!";
-                    }
+        long now = System.currentTimeMillis();
+        List<TradeJournal.Fill> fills = new ArrayList<>(legs.size());
+        for (BatchLeg leg : legs) {
+            try {
+                fills.add(new TradeJournal.Fill(userId, leg.symbol(), leg.side(), leg.quantity(),
+                        quotes.get(leg.symbol()).join(), now));
+            } catch (CompletionException e) {
+                return "❌ Prezzo non disponibile per " + leg.symbol() + ": " + e.getCause().getMessage()
+                        + "\nNessuna operazione eseguita.";
+            }
+        }
+
+        // Verifica in memoria per spiegare quale gamba non è eseguibile
+        long cash = db.getAvailableCash(userId);
+        for (TradeJournal.Fill fill : fills) {
+            long amount = Money.mul(fill.quantity(), fill.price());
+            if (fill.side() == TradeJournal.Side.BUY) {
+                if (amount > cash) {
+                    return String.format("""
+                            ❌ ORDINE RIFIUTATO: fondi insufficienti per %s
+
+                            💵 Costo: $%.2f
+                            💳 Disponibile a quel punto: $%.2f
+
+                            Nessuna operazione eseguita.
+                            """, fill.symbol(), Money.toDouble(amount), Money.toDouble(cash));
                 }
+                cash -= amount;
+            } else {
+                long owned = db.getAvailableQuantity(userId, fill.symbol());
+                if (owned < fill.quantity()) {
+                    return String.format("""
+                            ❌ ORDINE RIFIUTATO: possiedi solo %.2f azioni di %s
 
-                return getPortfolioWithoutPrices(userId);
+                            Nessuna operazione eseguita.
+                            """, Money.toDouble(owned), fill.symbol());
+                }
+                cash += amount;
             }
+        }
 
-            return db.getPortfolio(userId, currentPrices);
+        boolean[] accepted = db.executeFills(fills, true);
+        if (fills.isEmpty() || !accepted[0]) {
+            return "❌ Ordine non eseguito: saldo o posizioni sono cambiati nel frattempo. Nessuna operazione eseguita.";
+        }
 
-        } catch (Exception e) {
-            return "❌ Errore nel recupero del portfolio: " + e.getMessage();
+        StringBuilder result = new StringBuilder("✅ ORDINE MULTIPLO ESEGUITO!\n\n");
+        long bought = 0;
+        long sold = 0;
+        for (TradeJournal.Fill fill : fills) {
+            long amount = Money.mul(fill.quantity(), fill.price());
+            boolean buy = fill.side() == TradeJournal.Side.BUY;
+            if (buy) {
+                bought += amount;
+            } else {
+                sold += amount;
+            }
+            result.append(String.format("%s %s %s %.2f @ $%.2f = $%.2f\n", buy ? "🟢" : "🔴",
+                    buy ? "Compra" : "Vendi", fill.symbol(), Money.toDouble(fill.quantity()),
+                    Money.toDouble(fill.price()), Money.toDouble(amount)));
         }
+        result.append(String.format("""
+
+                💸 Totale acquisti: $%.2f
+                💰 Totale vendite: $%.2f
+                💳 Nuovo saldo: $%.2f
+                """, Money.toDouble(bought), Money.toDouble(sold), Money.toDouble(cash)));
+        return result.toString();
     }
 
-    private String getPortfolioWithoutPrices(long userId) {
-        String sql = "SELECT symbol, quantity, avg_buy_price, total_invested FROM portfolio WHERE user_id = ?";
-        StringBuilder result = new StringBuilder("📊 IL TUO PORTFOLIO:\n\n");
-        double totalInvested = 0;
+    private String placeOrder(long userId, long chatId, Order.Type type, CommandLine line) {
+        TradeJournal.Side side = line.argIs(0, "compra") ? TradeJournal.Side.BUY
+                : line.argIs(0, "vendi") ? TradeJournal.Side.SELL : null;
+        if (side == null) {
+            return "❌ Specifica compra o vendi. Esempio: /limite compra AAPL 10 150";
+        }
 
-        try (var conn = db.getConnection();
-             var pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, userId);
-            var rs = pstmt.executeQuery();
+        try {
+            String symbol = line.symbol(1);
+            long quantity = Money.parseInput(line.arg(2));
+            long triggerPrice = Money.parseInput(line.arg(3));
 
-            boolean hasStocks = false;
-            while (rs.next()) {
-                hasStocks = true;
-                String symbol = rs.getString("symbol");
-                double quantity = rs.getDouble("quantity");
-                double avgBuyPrice = rs.getDouble("avg_buy_price");
-                double invested = rs.getDouble("total_invested");
+            if (quantity <= 0 || triggerPrice <= 0) {
+                return "❌ Quantità e prezzo devono essere maggiori di 0.";
+            }
 
-                totalInvested += invested;
+            Order order = orders().place(userId, chatId, symbol, side, type, quantity, triggerPrice);
+            if (order == null) {
+                return "❌ Errore durante la registrazione dell'ordine. Riprova.";
+            }
 
-                result.append(String.format("📌 %s\n", symbol));
-                result.append(String.format("Quantità: %.2f\n", quantity));
-                result.append(String.format("Prezzo medio: $%.2f\n", avgBuyPrice));
-                result.append(String.format("Investito: $%.2f\n\n", invested));
+            return String.format("""
+                    📋 ORDINE REGISTRATO!
+                    
+                    %s
+                    
+                    ⏳ Verrà eseguito al primo aggiornamento del prezzo che raggiunge la soglia
+                    💡 Usa /ordini per vedere gli ordini aperti
+                    """, order.describe());
+
+        } catch (NumberFormatException e) {
+            return "❌ Quantità o prezzo non validi. Usa numeri (es. 10 o 150.5)";
+        }
+    }
+
+    private String getOpenOrders(long userId) {
+        List<Order> orders = orders().getOpenOrders(userId);
+        if (orders.isEmpty()) {
+            return "📋 Nessun ordine aperto. Crea un ordine con /limite o /stop";
+        }
+
+        StringBuilder result = new StringBuilder("📋 ORDINI APERTI:\n\n");
+        for (Order order : orders) {
+            result.append("⏳ ").append(order.describe()).append("\n");
+        }
+        result.append("\n💡 Usa /annulla [ID] per annullare un ordine");
+        return result.toString();
+    }
+
+    private String cancelOrder(long userId, String idStr) {
+        try {
+            long orderId = Long.parseLong(idStr.replace("#", ""));
+            if (!orders().cancel(userId, orderId)) {
+                return "❌ Ordine non trovato tra i tuoi ordini aperti.";
             }
+            return "🗑️ Ordine #" + orderId + " annullato.";
+        } catch (NumberFormatException e) {
+            return "❌ ID ordine non valido.";
+        }
+    }
 
-            if (!hasStocks) {
+    private String getPortfolio(long userId) {
+        try {
+            // Prima ottieni i simboli nel portfolio
+            List<String> symbols = db.getPortfolioSymbols(userId);
+            if (symbols.isEmpty()) {
                 return "📊 Portfolio vuoto. Inizia a investire con /compra!";
             }
 
-            result.append("━━━━━━━━━━━━━━━━━━━━\n");
-            result.append(String.format("💵 Totale investito: $%.2f\n", totalInvested));
-            result.append(String.format("💳 Cash disponibile: $%.2f\n\n", db.getUserBalance(userId)));
-            result.append("⚠️ Prezzi attuali non disponibili (limite API)\n");
-            result.append("💡 Usa /prezzo [SIMBOLO] per vedere il prezzo corrente");
+            IntLongMap currentPrices = new IntLongMap(symbols.size());
+            long oldestStale = -1;
+            for (String symbol : symbols) {
+                try {
+                    long price = api.getCurrentPrice(symbol);
+                    currentPrices.put(ids.id(symbol), price);
+                } catch (IOException e) {
+                    // Con il circuito aperto si valuta all'ultimo prezzo noto, dichiarandone l'età
+                    AlphaVantageClient.CachedQuote quote = e instanceof CircuitOpenException ? api.getCachedQuote(symbol) : null;
+                    if (quote != null) {
+                        currentPrices.put(ids.id(symbol), quote.price());
+                        oldestStale = Math.max(oldestStale, quote.ageMillis());
+                    } else {
+                        System.err.println("Errore recupero prezzo per " + symbol + ": " + e.getMessage());
+                    }
+                    // Continua con gli altri simboli
+                }
+            }
+
+            // Se non abbiamo prezzi, usa un portfolio semplificato
+            if (currentPrices.isEmpty()) {
+                return db.getPortfolioWithoutPrices(userId, currencyOf(userId));
+            }
+
+            String portfolio = db.getPortfolio(userId, currentPrices, currencyOf(userId));
+            return oldestStale < 0 ? portfolio : portfolio + "\n⏳ Alcuni prezzi sono gli ultimi noti (fino a "
+                    + formatAge(oldestStale) + " fa): Alpha Vantage al momento non risponde";
 
         } catch (Exception e) {
             return "❌ Errore nel recupero del portfolio: " + e.getMessage();
         }
-
-        return result.toString();
     }
 
     private String getBalance(long userId) {
-        double balance = db.getUserBalance(userId);
+        long balance = db.getUserBalance(userId);
         return String.format("""
                 💳 SALDO DISPONIBILE
                 
-                💰 $%.2f
+                💰 %s
                 
                 💡 Usa /compra per investire
                 💡 Usa /portfolio per vedere i tuoi investimenti
-                """, balance);
+                """, currencyOf(userId).format(balance));
+    }
+
+    // Valuta in cui l'utente vede saldo, valori e P/L; i cambi sono già in memoria
+    private DisplayCurrency currencyOf(long userId) {
+        String code = db.getUserCurrency(userId);
+        return FxRates.getInstance().display(code != null ? code : config.getDefaultCurrency());
+    }
+
+    private String changeCurrency(long userId, CommandLine line) {
+        FxRates fx = FxRates.getInstance();
+        if (line.argCount() == 0) {
+            DisplayCurrency current = currencyOf(userId);
+            StringBuilder sb = new StringBuilder("💱 VALUTA DI VISUALIZZAZIONE: " + current.code() + "\n\n");
+            for (String code : fx.supported()) {
+                double rate = fx.rate("USD", code);
+                sb.append(Double.isNaN(rate) ? String.format("• %s: cambio non disponibile%n", code)
+                        : String.format("• %s: 1 USD = %.4f %s%n", code, rate, code));
+            }
+            if (fx.updatedAt() > 0) {
+                sb.append("\n⏳ Cambi aggiornati alle ").append(Instant.ofEpochMilli(fx.updatedAt())
+                        .atZone(ZoneId.systemDefault()).toLocalTime().format(DateTimeFormatter.ofPattern("HH:mm")));
+            }
+            sb.append("\n💡 Usa /valuta CODICE per cambiarla, es. /valuta EUR");
+            return sb.toString();
+        }
+
+        String code = line.symbol(0);
+        if (!fx.isSupported(code)) {
+            return "❌ Valuta non supportata. Disponibili: " + String.join(", ", fx.supported());
+        }
+        db.setUserCurrency(userId, code);
+        if (Double.isNaN(fx.rate("USD", code))) {
+            return "✅ Valuta impostata su " + code + ". Il cambio non è ancora disponibile: "
+                    + "fino ad allora gli importi restano in USD.";
+        }
+        return "✅ Valuta impostata su " + code + ". Saldo, portfolio e statistiche saranno mostrati in " + code
+                + " (i prezzi delle azioni restano in USD).";
+    }
+
+    private String getLeaderboard(long userId) {
+        db.refreshLeaderboard();
+        List<Leaderboard.Entry> top = leaderboard.top(10);
+        if (top.isEmpty()) {
+            return "🏆 Classifica vuota.";
+        }
+
+        StringBuilder result = new StringBuilder("🏆 CLASSIFICA PATRIMONIO:\n\n");
+        for (Leaderboard.Entry entry : top) {
+            String medal = switch (entry.rank()) {
+                case 1 -> "🥇";
+                case 2 -> "🥈";
+                case 3 -> "🥉";
+                default -> entry.rank() + ".";
+            };
+            result.append(String.format("%s %s - $%.2f\n", medal, entry.name(), Money.toDouble(entry.equity())));
+        }
+
+        int rank = leaderboard.getRank(userId);
+        if (rank > 0) {
+            result.append("━━━━━━━━━━━━━━━━━━━━\n");
+            result.append(String.format("📍 La tua posizione: %d su %d\n", rank, leaderboard.size()));
+            result.append(String.format("💰 Il tuo patrimonio: $%.2f", Money.toDouble(leaderboard.getEquity(userId))));
+        }
+
+        return result.toString();
+    }
+
+    private String getCacheStats() {
+        AlphaVantageClient.HttpCacheStats stats = api.getHttpCacheStats();
+        if (stats == null) {
+            return "📦 Cache HTTP disattivata.";
+        }
+        int served = stats.requests();
+        double hitRate = served > 0 ? stats.hits() * 100.0 / served : 0;
+        return String.format("""
+                📦 CACHE HTTP ALPHA VANTAGE:
+
+                📨 Richieste: %d
+                ✅ Servite dalla cache: %d (%.1f%%)
+                🌐 Chiamate di rete: %d
+                💾 Occupazione: %.1f / %.1f MB
+                """, served, stats.hits(), hitRate, stats.networkRequests(),
+                stats.sizeBytes() / (1024.0 * 1024.0), stats.maxBytes() / (1024.0 * 1024.0));
     }
 
     private String getHistory(long userId) {
         return db.getTransactionHistory(userId, 10);
     }
 
+    private String exportHistory(long userId, long chatId, CommandLine line) {
+        HistoryExporter.Format format;
+        try {
+            format = line.argCount() < 1 ? HistoryExporter.Format.CSV
+                    : HistoryExporter.Format.valueOf(line.arg(0).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return "❌ Formato non valido. Usa: /esporta [csv|json]";
+        }
+        exportExecutor.execute(RequestContext.bind(() -> uploadExport(userId, chatId, format)));
+        return "📦 Preparo il tuo storico completo in " + format + ": riceverai il file tra poco.";
+    }
+
+    private void uploadExport(long userId, long chatId, HistoryExporter.Format format) {
+        try (InputStream content = exporter.open(userId, format)) {
+            SendDocument document = new SendDocument();
+            document.setChatId(String.valueOf(chatId));
+            document.setDocument(new InputFile(content, HistoryExporter.fileName(userId, format)));
+            document.setCaption("📜 Storico completo: posizioni aperte e tutte le transazioni");
+
+            sendLimiter.acquire();
+            execute(document);
+        } catch (IOException | TelegramApiException e) {
+            System.err.println("Errore invio esportazione: " + e.getMessage());
+            sendMessage(chatId, "❌ Esportazione non riuscita. Riprova più tardi.");
+        }
+    }
+
+    private static final String BACKTEST_USAGE = """
+            ❌ Usa: /backtest hold|sma|ribilancia SIMBOLI... [PARAMETRI]
+            Esempi:
+            /backtest hold AAPL MSFT
+            /backtest sma AAPL - prova tutte le medie mobili
+            /backtest sma AAPL 10 50 - media veloce 10, lenta 50
+            /backtest ribilancia AAPL MSFT GOOGL 20 - pesi uguali ogni 20 sedute""";
+
+    private static final int BACKTEST_MAX_SYMBOLS = 10;
+
+    private String runBacktest(CommandLine line) {
+        String mode = line.arg(0).toLowerCase();
+        // Simboli seguiti da eventuali parametri numerici
+        List<String> symbols = new ArrayList<>();
+        List<Integer> params = new ArrayList<>();
+        for (int i = 1; i < line.argCount(); i++) {
+            String arg = line.arg(i);
+            if (arg.chars().allMatch(Character::isDigit)) {
+                try {
+                    params.add(Integer.parseInt(arg));
+                } catch (NumberFormatException e) {
+                    return BACKTEST_USAGE;
+                }
+            } else if (params.isEmpty() && !symbols.contains(arg.toUpperCase())) {
+                symbols.add(arg.toUpperCase());
+            } else {
+                return BACKTEST_USAGE;
+            }
+        }
+        if (symbols.isEmpty() || symbols.size() > BACKTEST_MAX_SYMBOLS) {
+            return "❌ Indica da 1 a " + BACKTEST_MAX_SYMBOLS + " simboli.";
+        }
+        // Comando e parametri controllati prima di scaricare lo storico: un errore non consuma quota API
+        switch (mode) {
+            case "hold" -> {
+                if (!params.isEmpty()) {
+                    return BACKTEST_USAGE;
+                }
+            }
+            case "sma" -> {
+                if (params.size() == 2 && (params.get(0) < 1 || params.get(0) >= params.get(1))) {
+                    return "❌ La media veloce deve essere più corta della lenta.";
+                }
+                if (params.size() != 2 && !params.isEmpty()) {
+                    return BACKTEST_USAGE;
+                }
+            }
+            case "ribilancia" -> {
+                if (symbols.size() < 2 || params.size() > 1) {
+                    return "❌ Usa: /backtest ribilancia SIMBOLO SIMBOLO... [SEDUTE]\nEsempio: /backtest ribilancia AAPL MSFT 20";
+                }
+                if (!params.isEmpty() && params.get(0) < 1) {
+                    return "❌ Il periodo deve essere di almeno una seduta.";
+                }
+            }
+            default -> {
+                return BACKTEST_USAGE;
+            }
+        }
+
+        BacktestEngine engine = BacktestEngine.getInstance();
+        List<DailySeries> series;
+        try {
+            series = engine.load(symbols);
+        } catch (IOException e) {
+            return "❌ Storico non disponibile: " + e.getMessage();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        switch (mode) {
+            case "hold" -> {
+                sb.append("📦 BACKTEST BUY & HOLD\n\n");
+                for (BacktestResult result : engine.buyAndHold(series)) {
+                    sb.append(formatBacktest(result, false)).append("\n");
+                }
+            }
+            case "sma" -> {
+                if (params.size() == 2) {
+                    int fast = params.get(0);
+                    int slow = params.get(1);
+                    sb.append("📈 BACKTEST SMA ").append(fast).append("/").append(slow).append("\n\n");
+                    List<BacktestResult> results = engine.smaCrossover(series, List.of(new Strategy.SmaCrossover(fast, slow)));
+                    if (results.isEmpty()) {
+                        return "❌ Storico troppo corto per una media di " + slow + " sedute.";
+                    }
+                    for (BacktestResult result : results) {
+                        sb.append(formatBacktest(result, true)).append("\n");
+                    }
+                } else {
+                    List<Strategy.SmaCrossover> grid = BacktestEngine.defaultGrid();
+                    List<BacktestResult> results = engine.smaCrossover(series, grid);
+                    sb.append("📈 BACKTEST SMA: ").append(results.size()).append(" combinazioni provate\n\n");
+                    // Per ogni simbolo la combinazione migliore in dettaglio e le due successive in breve
+                    for (String symbol : symbols) {
+                        List<BacktestResult> ranked = results.stream()
+                                .filter(r -> r.symbols().equals(symbol))
+                                .sorted(Comparator.comparingLong((BacktestResult r) -> r.stats().realizedPl()).reversed())
+                                .toList();
+                        if (ranked.isEmpty()) {
+                            continue;
+                        }
+                        sb.append("🏆 Migliore: ").append(formatBacktest(ranked.get(0), true));
+                        for (BacktestResult other : ranked.subList(1, Math.min(3, ranked.size()))) {
+                            sb.append(String.format("   %s: $%.2f (%+.2f%%), win rate %.1f%%%n",
+                                    other.strategy().label(), Money.toDouble(other.stats().realizedPl()),
+                                    other.returnPercent(), other.stats().winRate()));
+                        }
+                        sb.append("\n");
+                    }
+                }
+            }
+            case "ribilancia" -> {
+                int period = params.isEmpty() ? 20 : params.get(0);
+                BacktestResult result = engine.rebalance(series, period);
+                if (result == null) {
+                    return "❌ I simboli non hanno abbastanza sedute in comune.";
+                }
+                sb.append("⚖️ BACKTEST RIBILANCIAMENTO\n\n");
+                sb.append(formatBacktest(result, true));
+            }
+        }
+        sb.append(String.format("%n💡 Capitale simulato $%.2f, posizioni chiuse all'ultima seduta",
+                Money.toDouble(BacktestEngine.CAPITAL)));
+        return sb.toString();
+    }
+
+    private static String formatBacktest(BacktestResult result, boolean detailed) {
+        DateTimeFormatter dates = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        String header = String.format("%s %s: %s$%.2f (%+.2f%%)%n📅 %s - %s%n",
+                result.symbols(), result.strategy().label(),
+                result.stats().realizedPl() >= 0 ? "🟢 " : "🔴 ",
+                Money.toDouble(result.stats().realizedPl()), result.returnPercent(),
+                LocalDate.ofEpochDay(result.firstDay()).format(dates),
+                LocalDate.ofEpochDay(result.lastDay()).format(dates));
+        return detailed ? header + result.stats().format() : header;
+    }
+
+    private static final int RISK_DEFAULT_DAYS = 10;
+    private static final int RISK_MAX_DAYS = 250;
+
+    private String estimateRisk(long userId, CommandLine line) {
+        int horizon = RISK_DEFAULT_DAYS;
+        if (line.argCount() > 0) {
+            try {
+                horizon = Integer.parseInt(line.arg(0));
+            } catch (NumberFormatException e) {
+                horizon = -1;
+            }
+            if (horizon < 1 || horizon > RISK_MAX_DAYS) {
+                return "❌ Usa: /rischio [GIORNI] con un orizzonte da 1 a " + RISK_MAX_DAYS + " sedute\nEsempio: /rischio 20";
+            }
+        }
+        Map<String, Long> quantities = db.getPortfolioQuantities(userId);
+        if (quantities.isEmpty()) {
+            return "📊 Portfolio vuoto: niente da simulare. Inizia a investire con /compra!";
+        }
+        if (quantities.size() > BACKTEST_MAX_SYMBOLS) {
+            return "❌ La simulazione supporta fino a " + BACKTEST_MAX_SYMBOLS + " titoli in portfolio.";
+        }
+
+        // Solo prezzi già in cache: le serie storiche bastano a valorizzare il resto senza consumare quota
+        Map<String, Long> prices = new HashMap<>();
+        for (String symbol : quantities.keySet()) {
+            AlphaVantageClient.CachedQuote quote = api.getCachedQuote(symbol);
+            if (quote != null) {
+                prices.put(symbol, quote.price());
+            }
+        }
+
+        RiskReport report;
+        try {
+            report = MonteCarloRisk.getInstance().simulate(quantities, prices, horizon);
+        } catch (IOException e) {
+            return "❌ Storico non disponibile: " + e.getMessage();
+        }
+        if (report == null) {
+            return "❌ I titoli in portfolio non hanno abbastanza sedute in comune.";
+        }
+
+        double current = Money.toDouble(report.currentValue());
+        return String.format("""
+                🎲 RISCHIO DEL PORTFOLIO A %d SEDUTE
+                
+                💼 Valore attuale: $%.2f
+                
+                📉 VaR 95%%: $%.2f (%.2f%%)
+                📉 VaR 99%%: $%.2f (%.2f%%)
+                💥 Perdita media nel 5%% peggiore: $%.2f
+                🎯 Probabilità di perdita: %.1f%%
+                
+                📊 Valore a fine periodo:
+                • Pessimistico (5°): $%.2f
+                • Mediano: $%.2f
+                • Ottimistico (95°): $%.2f
+                
+                💡 %d percorsi simulati ricampionando %d sedute storiche
+                """, report.horizonDays(), current,
+                Money.toDouble(report.var95()), Money.percent(report.var95(), report.currentValue()),
+                Money.toDouble(report.var99()), Money.percent(report.var99(), report.currentValue()),
+                Money.toDouble(report.expectedShortfall95()), report.lossProbability(),
+                Money.toDouble(report.p5()), Money.toDouble(report.median()), Money.toDouble(report.p95()),
+                report.paths(), report.historyDays());
+    }
+
     private String addToWatchlist(long userId, String symbol) {
         try {
             // Verifica che il simbolo esista
             api.getCurrentPrice(symbol);
             db.addToWatchlist(userId, symbol);
+            digests().onWatch(userId, symbol);
 
             return String.format("""
                     ⭐ %s aggiunto alla watchlist!
@@ -447,6 +1353,25 @@ public class TradingBot extends TelegramLongPollingBot {
         return db.getWatchlist(userId);
     }
 
+    private String toggleDigest(long userId, long chatId) {
+        WatchlistDigest digest = digests();
+        if (digest.isSubscribed(userId)) {
+            digest.unsubscribe(userId);
+            return "🔕 Riepilogo della watchlist disattivato.";
+        }
+        int minutes = config.getDigestIntervalMinutes();
+        if (minutes <= 0) {
+            return "❌ I riepiloghi della watchlist non sono attivi su questo bot.";
+        }
+        digest.subscribe(userId, chatId);
+        return String.format("""
+                🔔 Riepilogo della watchlist attivato!
+
+                Riceverai i prezzi dei tuoi simboli ogni %d minuti.
+                💡 Usa /digest di nuovo per disattivarlo
+                """, minutes);
+    }
+
     private String searchSymbol(String keywords) {
         try {
             JsonObject result = api.searchSymbol(keywords);
@@ -471,7 +1396,7 @@ public class TradingBot extends TelegramLongPollingBot {
 
             response.append("💡 Usa /prezzo [SIMBOLO] per vedere il prezzo");
 
-            return response.toString();
+            return response.append(staleNote(result)).toString();
 
         } catch (IOException e) {
             return "❌ Errore nella ricerca: " + e.getMessage();
@@ -499,7 +1424,7 @@ public class TradingBot extends TelegramLongPollingBot {
     }
 
     private String resetAccount(long userId) {
-        double initialBalance = config.getInitialVirtualBalance();
+        long initialBalance = config.getInitialVirtualBalance();
         db.updateUserBalance(userId, initialBalance);
 
         return String.format("""
@@ -511,7 +1436,7 @@ public class TradingBot extends TelegramLongPollingBot {
                 ma puoi ricominciare da capo con un nuovo saldo.
                 
                 💡 Buon trading!
-                """, initialBalance);
+                """, Money.toDouble(initialBalance));
     }
 
     private String formatMarketCap(String marketCapStr) {
@@ -537,10 +1462,25 @@ public class TradingBot extends TelegramLongPollingBot {
         message.setChatId(String.valueOf(chatId));
         message.setText(text);
 
+        SendMessageEvent event = new SendMessageEvent();
+        event.begin();
+        long waitStart = System.nanoTime();
+        sendLimiter.acquire();
+        long throttled = System.nanoTime() - waitStart;
         try {
             execute(message);
+            event.succeeded = true;
         } catch (TelegramApiException e) {
             System.err.println("Errore invio messaggio: " + e.getMessage());
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.requestId = RequestContext.current();
+                event.chatId = chatId;
+                event.length = text.length();
+                event.throttled = throttled;
+                event.commit();
+            }
         }
     }
 }
\ No newline at end of file
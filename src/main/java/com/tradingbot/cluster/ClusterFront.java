@@ -0,0 +1,177 @@
+package com.tradingbot.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.updates.UpdateLog;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Processo front: riceve gli update da Telegram e li inoltra via socket locale
+// al worker che possiede l'utente. L'assegnazione usa il rendezvous hashing sui
+// worker vivi, quindi quando un worker muore si spostano solo i suoi utenti.
+public class ClusterFront extends TelegramLongPollingBot {
+    private final ConfigManager config;
+    private final List<WorkerLink> workers = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long healthIntervalMillis;
+    private ScheduledExecutorService healthChecker;
+    private volatile UpdateLog updateLog;
+
+    public ClusterFront(int workerCount) {
+        super(ConfigManager.getInstance().getBotToken());
+        this.config = ConfigManager.getInstance();
+        this.healthIntervalMillis = config.getClusterHealthIntervalMillis();
+        int basePort = config.getClusterBasePort();
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new WorkerLink(i, basePort + i));
+            processes.add(null);
+        }
+    }
+
+    @Override
+    public String getBotUsername() {
+        return config.getBotUsername();
+    }
+
+    // Avvia i worker sulla stessa macchina e il controllo di salute periodico
+    public void start() {
+        // Il front è l'unico processo che fa polling: offset e duplicati si gestiscono qui
+        updateLog = UpdateLog.open();
+        if (updateLog != null) {
+            updateLog.confirm(this);
+        }
+        for (WorkerLink worker : workers) {
+            spawn(worker);
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-health");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkWorkers, 0, healthIntervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopWorkers));
+    }
+
+    @Override
+    public void onUpdatesReceived(List<Update> updates) {
+        UpdateLog log = updateLog;
+        for (Update update : log != null ? log.admit(updates) : updates) {
+            onUpdateReceived(update);
+        }
+    }
+
+    @Override
+    public void onUpdateReceived(Update update) {
+        byte[] payload;
+        try {
+            payload = mapper.writeValueAsBytes(update);
+        } catch (JsonProcessingException e) {
+            System.err.println("Errore serializzazione update: " + e.getMessage());
+            return;
+        }
+
+        long userId = userIdOf(update);
+        // In caso di errore l'update va al prossimo worker vivo nell'ordine di preferenza
+        for (int attempt = 0; attempt < workers.size(); attempt++) {
+            WorkerLink worker = pickWorker(userId);
+            if (worker == null) {
+                break;
+            }
+            try {
+                worker.send(payload);
+                return;
+            } catch (IOException e) {
+                System.err.println("Inoltro al worker " + worker.port + " fallito: " + e.getMessage());
+            }
+        }
+        System.err.println("Nessun worker disponibile: update " + update.getUpdateId() + " scartato");
+    }
+
+    private WorkerLink pickWorker(long userId) {
+        WorkerLink best = null;
+        long bestScore = Long.MIN_VALUE;
+        for (WorkerLink worker : workers) {
+            if (!worker.isAlive()) {
+                continue;
+            }
+            long score = Placement.score(userId, worker.index);
+            if (best == null || score > bestScore) {
+                best = worker;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static long userIdOf(Update update) {
+        User from = null;
+        if (update.hasMessage()) {
+            from = update.getMessage().getFrom();
+        } else if (update.hasInlineQuery()) {
+            from = update.getInlineQuery().getFrom();
+        } else if (update.hasCallbackQuery()) {
+            from = update.getCallbackQuery().getFrom();
+        }
+        return from != null ? from.getId() : 0;
+    }
+
+    private void checkWorkers() {
+        for (WorkerLink worker : workers) {
+            boolean wasAlive = worker.isAlive();
+            if (worker.checkHealth(healthIntervalMillis * 3)) {
+                worker.ping();
+                continue;
+            }
+
+            Process process = processes.get(worker.index);
+            if (wasAlive && process != null && process.isAlive()) {
+                // Processo bloccato: va sostituito
+                process.destroyForcibly();
+            }
+            if (process == null || !process.isAlive()) {
+                spawn(worker);
+            }
+            try {
+                worker.connect();
+                System.out.println("🧩 Worker sulla porta " + worker.port + " connesso");
+            } catch (IOException e) {
+                // Il worker sta ancora partendo: si riprova al prossimo giro
+            }
+        }
+    }
+
+    private void spawn(WorkerLink worker) {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        ProcessBuilder builder = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                com.Main.class.getName(), "--worker", String.valueOf(worker.port));
+        builder.inheritIO();
+        try {
+            processes.set(worker.index, builder.start());
+            System.out.println("🚀 Avviato worker sulla porta " + worker.port);
+        } catch (IOException e) {
+            System.err.println("Impossibile avviare il worker " + worker.port + ": " + e.getMessage());
+        }
+    }
+
+    private void stopWorkers() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (Process process : processes) {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+}
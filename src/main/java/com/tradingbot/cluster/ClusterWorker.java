@@ -0,0 +1,79 @@
+package com.tradingbot.cluster;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tradingbot.bot.TradingBot;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Processo worker: riceve dal front gli update degli utenti che gli sono assegnati
+// e li elabora in ordine con la propria istanza di TradingBot.
+public class ClusterWorker {
+    private final int port;
+    private final TradingBot bot;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // Un solo thread: gli update dello stesso utente restano in ordine e
+    // i ping ricevono risposta anche mentre un comando è in corso
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "worker-dispatcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ClusterWorker(int port, TradingBot bot) {
+        this.port = port;
+        this.bot = bot;
+    }
+
+    // Bloccante: serve una connessione del front alla volta
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println("🧩 Worker in ascolto sulla porta " + port);
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    socket.setTcpNoDelay(true);
+                    serve(socket);
+                } catch (IOException e) {
+                    System.err.println("Connessione con il front persa: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        while (true) {
+            Frame frame = Frame.read(in);
+            switch (frame.type) {
+                case Frame.PING -> Frame.write(out, Frame.PONG);
+                case Frame.UPDATE -> dispatcher.execute(() -> handleUpdate(frame.payload));
+                default -> System.err.println("Frame sconosciuto: " + frame.type);
+            }
+        }
+    }
+
+    private void handleUpdate(byte[] payload) {
+        try {
+            Update update = mapper.readValue(payload, Update.class);
+            bot.onUpdateReceived(update);
+        } catch (IOException e) {
+            System.err.println("Update non valido dal front: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Errore elaborazione update: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.tradingbot.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Protocollo tra front e worker: [lunghezza][tipo][payload]
+final class Frame {
+    static final byte UPDATE = 1;
+    static final byte PING = 2;
+    static final byte PONG = 3;
+
+    private static final int MAX_PAYLOAD = 4 * 1024 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    final byte type;
+    final byte[] payload;
+
+    private Frame(byte type, byte[] payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    static void write(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeByte(type);
+        out.write(payload);
+        out.flush();
+    }
+
+    static void write(DataOutputStream out, byte type) throws IOException {
+        write(out, type, EMPTY);
+    }
+
+    static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("Frame non valido: " + length + " byte");
+        }
+        byte type = in.readByte();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+}
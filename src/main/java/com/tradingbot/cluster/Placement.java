@@ -0,0 +1,34 @@
+package com.tradingbot.cluster;
+
+// Rendezvous hashing degli utenti sui worker: ogni utente ha un ordine di preferenza
+// fisso tra i worker. Il front instrada sul primo worker vivo; il primo in assoluto
+// è il proprietario, a cui spettano i compiti di fondo dell'utente (es. gli ordini aperti).
+public final class Placement {
+    private Placement() {
+    }
+
+    static long score(long userId, int workerIndex) {
+        return mix(userId * 0x9E3779B97F4A7C15L + workerIndex);
+    }
+
+    // Indice del worker proprietario, considerando tutti i worker come vivi
+    public static int owner(long userId, int workerCount) {
+        int best = 0;
+        long bestScore = score(userId, 0);
+        for (int i = 1; i < workerCount; i++) {
+            long score = score(userId, i);
+            if (score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // Finalizzatore di SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
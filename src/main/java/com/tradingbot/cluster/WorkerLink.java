@@ -0,0 +1,114 @@
+package com.tradingbot.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+// Connessione del front verso un worker locale, con stato di salute basato sui pong
+class WorkerLink {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    final int index;
+    final int port;
+
+    private Socket socket;
+    private DataOutputStream out;
+    private volatile long lastPong;
+    private volatile boolean alive;
+
+    WorkerLink(int index, int port) {
+        this.index = index;
+        this.port = port;
+    }
+
+    boolean isAlive() {
+        return alive;
+    }
+
+    synchronized void connect() throws IOException {
+        close();
+        Socket s = new Socket();
+        s.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+        s.setTcpNoDelay(true);
+        socket = s;
+        out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        lastPong = System.currentTimeMillis();
+        alive = true;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        Thread reader = new Thread(() -> readPongs(s, in), "worker-link-" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    synchronized void send(byte[] payload) throws IOException {
+        if (!alive) {
+            throw new IOException("Worker " + port + " non disponibile");
+        }
+        try {
+            Frame.write(out, Frame.UPDATE, payload);
+        } catch (IOException e) {
+            markDead();
+            throw e;
+        }
+    }
+
+    synchronized void ping() {
+        if (!alive) {
+            return;
+        }
+        try {
+            Frame.write(out, Frame.PING);
+        } catch (IOException e) {
+            markDead();
+        }
+    }
+
+    // Morto se non risponde ai ping entro il timeout
+    boolean checkHealth(long timeoutMillis) {
+        if (alive && System.currentTimeMillis() - lastPong > timeoutMillis) {
+            markDead();
+        }
+        return alive;
+    }
+
+    private void readPongs(Socket s, DataInputStream in) {
+        try {
+            while (!s.isClosed()) {
+                if (Frame.read(in).type == Frame.PONG) {
+                    lastPong = System.currentTimeMillis();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                if (socket == s) {
+                    markDead();
+                }
+            }
+        }
+    }
+
+    synchronized void markDead() {
+        if (alive) {
+            System.err.println("⚠️ Worker sulla porta " + port + " non risponde");
+        }
+        alive = false;
+        close();
+    }
+
+    private void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // già chiuso
+            }
+            socket = null;
+        }
+    }
+}
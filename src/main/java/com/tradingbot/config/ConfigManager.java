@@ -1,32 +1,157 @@
 package com.tradingbot.config;
 
+import com.tradingbot.money.Money;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.builder.fluent.Configurations;
 import org.apache.commons.configuration2.ex.ConfigurationException;
-import java.io.File;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class ConfigManager {
     private static ConfigManager instance;
-    private Configuration config;
+    private static final Path CONFIG_PATH = Path.of("config.properties").toAbsolutePath();
+    // Gli editor salvano spesso in più passi: si aspetta che il file sia stabile
+    private static final long RELOAD_DEBOUNCE_MILLIS = 250;
+
+    private volatile Configuration config;
+    private volatile RuntimeSettings settings;
+    private final List<Consumer<RuntimeSettings>> subscribers = new CopyOnWriteArrayList<>();
+    // Valori impostati dal codice al posto del file; restano anche dopo un ricaricamento
+    private final Map<String, String> overrides = new ConcurrentHashMap<>();
+    private Thread watcher;
 
     private ConfigManager() {
         try {
             Configurations configs = new Configurations();
-            config = configs.properties(new File("config.properties"));
+            config = configs.properties(CONFIG_PATH.toFile());
+            settings = RuntimeSettings.from(config);
         } catch (ConfigurationException e) {
             System.err.println("Errore nel caricamento della configurazione: " + e.getMessage());
             System.err.println("Assicurati che il file config.properties esista nella root del progetto.");
             System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Configurazione non valida: " + e.getMessage());
+            System.exit(1);
         }
     }
 
-    public static ConfigManager getInstance() {
+    public static synchronized ConfigManager getInstance() {
         if (instance == null) {
             instance = new ConfigManager();
         }
         return instance;
     }
 
+    public RuntimeSettings getSettings() {
+        return settings;
+    }
+
+    // Il consumer riceve subito i valori attuali e poi ogni nuova versione valida
+    public void subscribe(Consumer<RuntimeSettings> subscriber) {
+        subscribers.add(subscriber);
+        subscriber.accept(settings);
+    }
+
+    // Osserva config.properties e ricarica i parametri quando il file cambia
+    public synchronized void startWatching() {
+        if (watcher != null) {
+            return;
+        }
+        WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            CONFIG_PATH.getParent().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Errore avvio controllo configurazione: " + e.getMessage());
+            return;
+        }
+        watcher = new Thread(() -> watchLoop(service), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (CONFIG_PATH.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    Thread.sleep(RELOAD_DEBOUNCE_MILLIS);
+                    // Eventi arrivati durante l'attesa appartengono allo stesso salvataggio
+                    WatchKey pending;
+                    while ((pending = service.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void reload() {
+        Configuration updated;
+        RuntimeSettings next;
+        try {
+            updated = new Configurations().properties(CONFIG_PATH.toFile());
+            next = RuntimeSettings.from(updated);
+        } catch (ConfigurationException e) {
+            System.err.println("Errore ricaricamento configurazione: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Configurazione non valida, restano i valori attuali: " + e.getMessage());
+            return;
+        }
+
+        overrides.forEach(updated::setProperty);
+        config = updated;
+        if (next.equals(settings)) {
+            return;
+        }
+        settings = next;
+        System.out.println("🔧 Configurazione ricaricata: " + next);
+        for (Consumer<RuntimeSettings> subscriber : subscribers) {
+            try {
+                subscriber.accept(next);
+            } catch (RuntimeException e) {
+                System.err.println("Errore applicazione configurazione: " + e.getMessage());
+            }
+        }
+    }
+
+    // Database, journal, update log, archivio e cache HTTP in una cartella di lavoro
+    // (run di addestramento CDS): nessun file dell'istanza in esercizio viene toccato
+    public synchronized void useScratchStorage(Path dir) {
+        String db = dir.resolve("tradingbot.db").toString();
+        overrides.put("DB_PATH", db);
+        overrides.put("JOURNAL_PATH", db + ".journal");
+        overrides.put("UPDATE_LOG_PATH", db + ".updates");
+        overrides.put("ARCHIVE_DIR", db + ".archive");
+        overrides.put("HTTP_CACHE_DIR", dir.resolve("http-cache").toString());
+        overrides.forEach(config::setProperty);
+    }
+
     public String getBotToken() {
         return config.getString("BOT_TOKEN");
     }
@@ -43,11 +168,151 @@ public class ConfigManager {
         return config.getString("DB_PATH", "trading_bot.db");
     }
 
-    public double getInitialVirtualBalance() {
-        return config.getDouble("INITIAL_VIRTUAL_BALANCE", 10000.00);
+    // Saldo iniziale in micro-unità (vedi Money)
+    public long getInitialVirtualBalance() {
+        return Money.parse(config.getString("INITIAL_VIRTUAL_BALANCE", "10000.00"));
     }
 
     public String getDefaultCurrency() {
-        return config.getString("DEFAULT_CURRENCY", "USD");
+        return config.getString("DEFAULT_CURRENCY", "USD").toUpperCase();
+    }
+
+    // Errori consecutivi che aprono il circuito di una famiglia di endpoint Alpha Vantage
+    public int getBreakerFailures() {
+        return Math.max(1, config.getInt("BREAKER_FAILURES", 3));
+    }
+
+    public int getBreakerCooldownSeconds() {
+        return Math.max(1, config.getInt("BREAKER_COOLDOWN_SECONDS", 30));
+    }
+
+    public int getBreakerMaxCooldownSeconds() {
+        return Math.max(1, config.getInt("BREAKER_MAX_COOLDOWN_SECONDS", 600));
+    }
+
+    // Valute selezionabili con /valuta (USD è sempre inclusa)
+    public List<String> getFxCurrencies() {
+        List<String> codes = new ArrayList<>();
+        for (String code : config.getString("FX_CURRENCIES", "USD,EUR,GBP,CHF,JPY").split(",")) {
+            if (!code.isBlank()) {
+                codes.add(code.strip().toUpperCase());
+            }
+        }
+        return codes;
+    }
+
+    public int getFxRefreshMinutes() {
+        return Math.max(5, config.getInt("FX_REFRESH_MINUTES", 60));
+    }
+
+    public String getJournalPath() {
+        String path = config.getString("JOURNAL_PATH", getDbPath() + ".journal");
+        // Ogni worker del cluster ha il proprio journal
+        String node = System.getProperty("tradingbot.node");
+        return node != null ? path + "." + node : path;
+    }
+
+    public String getUpdateLogPath() {
+        String path = config.getString("UPDATE_LOG_PATH", getDbPath() + ".updates");
+        String node = System.getProperty("tradingbot.node");
+        return node != null ? path + "." + node : path;
+    }
+
+    public int getUpdateDedupeWindow() {
+        return config.getInt("UPDATE_DEDUPE_WINDOW", 4096);
+    }
+
+    public int getJournalSizeMb() {
+        return config.getInt("JOURNAL_SIZE_MB", 16);
+    }
+
+    // Cartella condivisa da tutti i processi che usano lo stesso database
+    public String getArchiveDir() {
+        return config.getString("ARCHIVE_DIR", getDbPath() + ".archive");
+    }
+
+    // 0 disattiva l'archiviazione
+    public int getArchiveAfterDays() {
+        return Math.max(0, config.getInt("ARCHIVE_AFTER_DAYS", 90));
+    }
+
+    public int getArchiveIntervalHours() {
+        return Math.max(1, config.getInt("ARCHIVE_INTERVAL_HOURS", 24));
+    }
+
+    public String getHttpCacheDir() {
+        String dir = config.getString("HTTP_CACHE_DIR", "http-cache");
+        // La cache su disco non può essere condivisa tra processi
+        String node = System.getProperty("tradingbot.node");
+        return node != null ? dir + "-" + node : dir;
+    }
+
+    public int getHttpCacheSizeMb() {
+        return config.getInt("HTTP_CACHE_SIZE_MB", 50);
+    }
+
+    public int getTickBufferSize() {
+        return Math.max(2, config.getInt("TICK_BUFFER_SIZE", 512));
+    }
+
+    public boolean isTickBufferOffHeap() {
+        return config.getBoolean("TICK_BUFFER_OFF_HEAP", false);
+    }
+
+    // 0 disattiva l'invio dei riepiloghi
+    public int getDigestIntervalMinutes() {
+        return Math.max(0, config.getInt("DIGEST_INTERVAL_MINUTES", 60));
+    }
+
+    // Thread di calcolo per /backtest (0 = uno per core)
+    public int getBacktestThreads() {
+        int threads = config.getInt("BACKTEST_THREADS", 0);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Validità in memoria delle serie giornaliere già scaricate per /backtest
+    public int getBacktestSeriesCacheMinutes() {
+        return Math.max(1, config.getInt("BACKTEST_SERIES_CACHE_MINUTES", 60));
+    }
+
+    // Percorsi simulati da /rischio
+    public int getRiskPaths() {
+        return Math.max(1000, config.getInt("RISK_PATHS", 20000));
+    }
+
+    // Risultati per risposta inline (Telegram ne accetta al massimo 50)
+    public int getInlineMaxResults() {
+        return Math.min(50, Math.max(1, config.getInt("INLINE_MAX_RESULTS", 10)));
+    }
+
+    // Tempo massimo per costruire una risposta inline, oltre il primo risultato
+    public int getInlineBudgetMicros() {
+        return Math.max(50, config.getInt("INLINE_BUDGET_MICROS", 500));
+    }
+
+    // Chiamate ad Alpha Vantage al minuto per i dati mancanti nelle risposte inline
+    public int getInlinePrefetchPerMinute() {
+        return Math.max(0, config.getInt("INLINE_PREFETCH_PER_MINUTE", 10));
+    }
+
+    public int getClusterWorkers() {
+        return config.getInt("CLUSTER_WORKERS", 0);
+    }
+
+    public int getClusterBasePort() {
+        return config.getInt("CLUSTER_BASE_PORT", 7100);
+    }
+
+    // Indice di questo processo tra i worker del cluster (porta - CLUSTER_BASE_PORT); -1 se non è un worker
+    public int getClusterWorkerIndex() {
+        String node = System.getProperty("tradingbot.node");
+        if (node == null || !node.startsWith("worker")) {
+            return -1;
+        }
+        return Integer.parseInt(node.substring("worker".length())) - getClusterBasePort();
+    }
+
+    public long getClusterHealthIntervalMillis() {
+        return config.getLong("CLUSTER_HEALTH_INTERVAL_MS", 2000);
     }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.tradingbot.config;
+
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.ex.ConversionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parametri di prestazione modificabili senza riavvio. Vengono letti e validati
+// tutti insieme a ogni ricarica di config.properties: se anche uno solo non è
+// valido la ricarica viene scartata e restano in vigore i valori precedenti.
+public record RuntimeSettings(
+        long quoteCacheMillis,
+        int refreshAheadTopN,
+        int refreshAheadCallsPerMinute,
+        long refreshAheadLeadMillis,
+        double refreshAheadHalfLifeMinutes,
+        int notifyThreads,
+        int sendRatePerSecond,
+        long projectionFlushMillis,
+        int queryThreads,
+        int admissionQueueSize,
+        long degradeMillis,
+        long shedMillis,
+        long maxWaitMillis) {
+
+    static RuntimeSettings from(Configuration config) {
+        Reader reader = new Reader(config);
+        RuntimeSettings settings = new RuntimeSettings(
+                reader.longIn("QUOTE_CACHE_SECONDS", 60, 1, 3600) * 1000,
+                (int) reader.longIn("REFRESH_AHEAD_TOP_N", 10, 0, 100),
+                (int) reader.longIn("REFRESH_AHEAD_CALLS_PER_MINUTE", 2, 0, 500),
+                reader.longIn("REFRESH_AHEAD_LEAD_SECONDS", 10, 1, 300) * 1000,
+                reader.doubleIn("REFRESH_AHEAD_HALF_LIFE_MINUTES", 30.0, 0.1, 10080),
+                (int) reader.longIn("NOTIFY_THREADS", 2, 1, 32),
+                (int) reader.longIn("SEND_RATE_PER_SECOND", 25, 0, 1000),
+                reader.longIn("PROJECTION_FLUSH_MS", 0, 0, 5000),
+                (int) reader.longIn("ADMISSION_QUERY_THREADS", 4, 1, 64),
+                (int) reader.longIn("ADMISSION_QUEUE_SIZE", 200, 1, 10000),
+                reader.longIn("ADMISSION_DEGRADE_MS", 2000, 0, 60000),
+                reader.longIn("ADMISSION_SHED_MS", 6000, 0, 60000),
+                reader.longIn("ADMISSION_MAX_WAIT_MS", 15000, 1000, 120000));
+        if (settings.shedMillis() < settings.degradeMillis()) {
+            reader.errors.add("ADMISSION_SHED_MS deve essere >= ADMISSION_DEGRADE_MS");
+        }
+        if (!reader.errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", reader.errors));
+        }
+        return settings;
+    }
+
+    private static class Reader {
+        private final Configuration config;
+        private final List<String> errors = new ArrayList<>();
+
+        Reader(Configuration config) {
+            this.config = config;
+        }
+
+        long longIn(String key, long defaultValue, long min, long max) {
+            try {
+                long value = config.getLong(key, defaultValue);
+                if (value < min || value > max) {
+                    errors.add(key + "=" + value + " fuori dall'intervallo [" + min + ", " + max + "]");
+                }
+                return value;
+            } catch (ConversionException e) {
+                errors.add(key + "=" + config.getString(key) + " non è un numero intero");
+                return defaultValue;
+            }
+        }
+
+        double doubleIn(String key, double defaultValue, double min, double max) {
+            try {
+                double value = config.getDouble(key, defaultValue);
+                if (!(value >= min && value <= max)) {
+                    errors.add(key + "=" + value + " fuori dall'intervallo [" + min + ", " + max + "]");
+                }
+                return value;
+            } catch (ConversionException e) {
+                errors.add(key + "=" + config.getString(key) + " non è un numero");
+                return defaultValue;
+            }
+        }
+    }
+}
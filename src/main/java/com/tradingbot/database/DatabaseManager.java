@@ -1,24 +1,143 @@
 package com.tradingbot.database;
 
 import com.tradingbot.config.ConfigManager;
+import com.tradingbot.fx.DisplayCurrency;
+import com.tradingbot.leaderboard.Leaderboard;
+import com.tradingbot.money.Money;
+import com.tradingbot.orders.Order;
+import com.tradingbot.symbols.IntLongMap;
+import com.tradingbot.symbols.SymbolTable;
+import com.tradingbot.tracing.TracedConnection;
+import com.tradingbot.watchlist.WatchEntry;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseManager {
     private static DatabaseManager instance;
     private Connection connection;
+    private String dbPath;
+    private final Leaderboard leaderboard = Leaderboard.getInstance();
+    private final SymbolTable ids = SymbolTable.getInstance();
+
+    // I trade vengono confermati con un'append sul journal; le tabelle sono aggiornate in background
+    private TradeJournal journal;
+    private JournalProjector projector;
+    private final Object tradeLock = new Object();
+    // Cash e posizioni per le verifiche dei trade, sotto tradeLock: aggiornati a ogni append
+    // sul journal, quindi non aspettano la proiezione su SQLite. Un conto in memoria resta
+    // valido finché c'è: i trade di un utente passano solo da questo processo (nel cluster
+    // solo dal worker proprietario, vedi Placement). Si tengono i MAX_ACCOUNTS usati più di recente.
+    private static final int MAX_ACCOUNTS = 10_000;
+    private final Map<Long, Account> accounts = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Account> eldest) {
+            if (size() > MAX_ACCOUNTS) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private long evictions;
+    private TransactionArchive archive;
+    // Letture dello storico: tabella e archivio nella stessa transazione di lettura
+    private Connection historyReader;
+    private ScheduledExecutorService archiver;
+    private static final long PROJECTION_WAIT_MILLIS = 5000;
+    private static final long LEADERBOARD_REFRESH_MILLIS = 5000;
+    private long leaderboardLoadedAt;
+
+    // Riceve le righe di una lettura in streaming (es. esportazione verso un upload)
+    public interface RowSink<T> {
+        void accept(T row) throws IOException;
+    }
+
+    private static class Account {
+        long cash;
+        // Quantità per id di simbolo (vedi SymbolTable)
+        IntLongMap holdings = new IntLongMap();
+    }
+
+    public enum TradeStatus { EXECUTED, REJECTED, FAILED }
+
+    // Esito di un trade: cash dopo l'esecuzione, oppure quello disponibile se rifiutato
+    public record TradeResult(TradeStatus status, long cash) {
+    }
+
+    public record Position(String symbol, long quantity, long avgBuyPrice, long totalInvested, String purchaseDate) {
+    }
 
     private DatabaseManager() {
         try {
-            String dbPath = ConfigManager.getInstance().getDbPath();
-            connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+            ConfigManager config = ConfigManager.getInstance();
+            dbPath = config.getDbPath();
+            connection = TracedConnection.wrap(DriverManager.getConnection("jdbc:sqlite:" + dbPath));
             initDatabase();
+
+            journal = new TradeJournal(Path.of(config.getJournalPath()), config.getJournalSizeMb() * 1024 * 1024);
+            projector = new JournalProjector(dbPath, Path.of(config.getJournalPath()).getFileName().toString(),
+                    journal, leaderboard);
+            config.subscribe(settings -> projector.setFlushMillis(settings.projectionFlushMillis()));
+            projector.replay(journal.recover(projector.loadCheckpoint()));
+            journal.start(projector::enqueue);
+            projector.start();
+
+            archive = new TransactionArchive(dbPath, Path.of(config.getArchiveDir()));
+            historyReader = TracedConnection.wrap(DriverManager.getConnection("jdbc:sqlite:" + dbPath));
+            try (Statement stmt = historyReader.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000");
+            }
+
+            loadLeaderboard();
         } catch (SQLException e) {
             System.err.println("Errore connessione database: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Errore apertura journal dei trade o dell'archivio: " + e.getMessage());
+        }
+    }
+
+    // Solo nel processo singolo: più processi sullo stesso database archivierebbero in parallelo
+    public synchronized void startArchiver() {
+        ConfigManager config = ConfigManager.getInstance();
+        int days = config.getArchiveAfterDays();
+        if (archiver != null || archive == null || days <= 0) {
+            return;
+        }
+        archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transaction-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        archiver.scheduleWithFixedDelay(() -> archiveTransactions(days), 0,
+                config.getArchiveIntervalHours(), TimeUnit.HOURS);
+    }
+
+    private void archiveTransactions(int days) {
+        try {
+            long start = System.currentTimeMillis();
+            int moved = archive.archive(LocalDateTime.now().minusDays(days));
+            if (moved > 0) {
+                System.out.println("🗄️ Archiviate " + moved + " transazioni più vecchie di " + days
+                        + " giorni in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (SQLException | IOException e) {
+            System.err.println("Errore archiviazione transazioni: " + e.getMessage());
         }
     }
 
-    public static DatabaseManager getInstance() {
+    public static synchronized DatabaseManager getInstance() {
         if (instance == null) {
             instance = new DatabaseManager();
         }
@@ -32,7 +151,7 @@ public class DatabaseManager {
                 username TEXT,
                 first_name TEXT,
                 last_name TEXT,
-                virtual_balance REAL DEFAULT 10000.00,
+                virtual_balance INTEGER DEFAULT 10000000000,
                 registration_date TEXT NOT NULL,
                 last_activity TEXT NOT NULL,
                 total_trades INTEGER DEFAULT 0,
@@ -45,10 +164,11 @@ public class DatabaseManager {
                 id INTEGER PRIMARY KEY AUTOINCREMENT,
                 user_id INTEGER NOT NULL,
                 symbol TEXT NOT NULL,
-                quantity REAL NOT NULL,
-                avg_buy_price REAL NOT NULL,
-                total_invested REAL NOT NULL,
+                quantity INTEGER NOT NULL,
+                avg_buy_price INTEGER NOT NULL,
+                total_invested INTEGER NOT NULL,
                 purchase_date TEXT NOT NULL,
+                opened_at INTEGER,
                 FOREIGN KEY (user_id) REFERENCES users(user_id),
                 UNIQUE(user_id, symbol)
             )
@@ -60,10 +180,10 @@ public class DatabaseManager {
                 user_id INTEGER NOT NULL,
                 symbol TEXT NOT NULL,
                 transaction_type TEXT NOT NULL,
-                quantity REAL NOT NULL,
-                price REAL NOT NULL,
-                total_amount REAL NOT NULL,
-                profit_loss REAL,
+                quantity INTEGER NOT NULL,
+                price INTEGER NOT NULL,
+                total_amount INTEGER NOT NULL,
+                profit_loss INTEGER,
                 timestamp TEXT NOT NULL,
                 FOREIGN KEY (user_id) REFERENCES users(user_id)
             )
@@ -107,16 +227,292 @@ public class DatabaseManager {
             )
         """;
 
+        // Un checkpoint per journal: ogni worker del cluster ha il proprio file e la propria sequenza
+        String createJournalCheckpointTable = """
+            CREATE TABLE IF NOT EXISTS journal_checkpoints (
+                journal TEXT PRIMARY KEY,
+                last_seq INTEGER NOT NULL,
+                updated_at TEXT NOT NULL
+            )
+        """;
+
+        String createOrdersTable = """
+            CREATE TABLE IF NOT EXISTS orders (
+                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                user_id INTEGER NOT NULL,
+                chat_id INTEGER NOT NULL,
+                symbol TEXT NOT NULL,
+                side TEXT NOT NULL,
+                order_type TEXT NOT NULL,
+                quantity INTEGER NOT NULL,
+                trigger_price INTEGER NOT NULL,
+                status TEXT NOT NULL DEFAULT 'OPEN',
+                created_date TEXT NOT NULL,
+                executed_date TEXT,
+                executed_price INTEGER,
+                FOREIGN KEY (user_id) REFERENCES users(user_id)
+            )
+        """;
+
+        // Riepilogo delle prestazioni aggiornato dal proiettore a ogni vendita:
+        // /stats legge una riga sola invece di aggregare tutte le transazioni
+        String createPerformanceTable = """
+            CREATE TABLE IF NOT EXISTS user_performance (
+                user_id INTEGER PRIMARY KEY,
+                closed_trades INTEGER NOT NULL DEFAULT 0,
+                winning_trades INTEGER NOT NULL DEFAULT 0,
+                realized_pl INTEGER NOT NULL DEFAULT 0,
+                gross_profit INTEGER NOT NULL DEFAULT 0,
+                gross_loss INTEGER NOT NULL DEFAULT 0,
+                best_trade INTEGER,
+                best_symbol TEXT,
+                worst_trade INTEGER,
+                worst_symbol TEXT,
+                holding_trades INTEGER NOT NULL DEFAULT 0,
+                holding_millis INTEGER NOT NULL DEFAULT 0,
+                peak_realized_pl INTEGER NOT NULL DEFAULT 0,
+                max_drawdown INTEGER NOT NULL DEFAULT 0,
+                updated_at TEXT NOT NULL,
+                FOREIGN KEY (user_id) REFERENCES users(user_id)
+            )
+        """;
+
+        // Utenti che ricevono il riepilogo periodico della watchlist
+        String createDigestTable = """
+            CREATE TABLE IF NOT EXISTS watchlist_digest (
+                user_id INTEGER PRIMARY KEY,
+                chat_id INTEGER NOT NULL,
+                subscribed_date TEXT NOT NULL,
+                FOREIGN KEY (user_id) REFERENCES users(user_id)
+            )
+        """;
+
+        // Preferenze dell'utente (valuta in cui vedere gli importi, ...)
+        String createUserSettingsTable = """
+            CREATE TABLE IF NOT EXISTS user_settings (
+                user_id INTEGER PRIMARY KEY,
+                currency TEXT,
+                FOREIGN KEY (user_id) REFERENCES users(user_id)
+            )
+        """;
+
+        // Livello freddo dello storico (vedi TransactionArchive)
+        String createArchiveSegmentsTable = """
+            CREATE TABLE IF NOT EXISTS archive_segments (
+                id INTEGER PRIMARY KEY,
+                file TEXT NOT NULL,
+                rows INTEGER NOT NULL,
+                created_at TEXT NOT NULL
+            )
+        """;
+
+        String createArchiveIndexTable = """
+            CREATE TABLE IF NOT EXISTS archive_index (
+                user_id INTEGER NOT NULL,
+                segment_id INTEGER NOT NULL,
+                block_offset INTEGER NOT NULL,
+                block_length INTEGER NOT NULL,
+                rows INTEGER NOT NULL,
+                crc INTEGER NOT NULL,
+                first_ts TEXT NOT NULL,
+                last_ts TEXT NOT NULL,
+                PRIMARY KEY (user_id, segment_id),
+                FOREIGN KEY (segment_id) REFERENCES archive_segments(id)
+            )
+        """;
+
         try (Statement stmt = connection.createStatement()) {
+            // WAL: le letture non bloccano il proiettore del journal che scrive su un'altra connessione
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA busy_timeout = 5000");
             stmt.execute(createUsersTable);
             stmt.execute(createPortfolioTable);
             stmt.execute(createTransactionsTable);
             stmt.execute(createWatchlistTable);
             stmt.execute(createStockPricesTable);
             stmt.execute(createAlertsTable);
+            stmt.execute(createJournalCheckpointTable);
+            stmt.execute(createOrdersTable);
+            stmt.execute(createPerformanceTable);
+            stmt.execute(createDigestTable);
+            stmt.execute(createArchiveSegmentsTable);
+            stmt.execute(createArchiveIndexTable);
+            stmt.execute(createUserSettingsTable);
+        }
+
+        // Versione 1: importi e quantità da REAL a INTEGER in micro-unità
+        if (getSchemaVersion() < 1) {
+            connection.setAutoCommit(false);
+            try {
+                migrateToMicros("users", createUsersTable, "virtual_balance");
+                migrateToMicros("portfolio", createPortfolioTable, "quantity", "avg_buy_price", "total_invested");
+                migrateToMicros("transactions", createTransactionsTable, "quantity", "price", "total_amount", "profit_loss");
+                migrateToMicros("orders", createOrdersTable, "quantity", "trigger_price", "executed_price");
+                setSchemaVersion(1);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        // Versione 2: data media di apertura delle posizioni e riepilogo delle prestazioni
+        if (getSchemaVersion() < 2) {
+            connection.setAutoCommit(false);
+            try {
+                backfillOpenedAt();
+                backfillPerformance();
+                setSchemaVersion(2);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_status ON orders(status)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user ON transactions(user_id, timestamp)");
+        }
+    }
+
+    private void backfillOpenedAt() throws SQLException {
+        boolean hasColumn = false;
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT name FROM pragma_table_info('portfolio')");
+            while (rs.next()) {
+                hasColumn |= rs.getString("name").equals("opened_at");
+            }
+            if (!hasColumn) {
+                stmt.execute("ALTER TABLE portfolio ADD COLUMN opened_at INTEGER");
+            }
+        }
+
+        // Per le posizioni esistenti l'unica informazione è la data del primo acquisto
+        Map<Long, Long> openedAt = new HashMap<>();
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT id, purchase_date FROM portfolio WHERE opened_at IS NULL");
+            while (rs.next()) {
+                openedAt.put(rs.getLong("id"), LocalDateTime.parse(rs.getString("purchase_date"))
+                        .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement("UPDATE portfolio SET opened_at = ? WHERE id = ?")) {
+            for (Map.Entry<Long, Long> entry : openedAt.entrySet()) {
+                pstmt.setLong(1, entry.getValue());
+                pstmt.setLong(2, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
         }
     }
 
+    // Ricostruisce il riepilogo riapplicando le vendite già registrate in ordine;
+    // la durata di possesso non è ricavabile dallo storico e parte da zero
+    private void backfillPerformance() throws SQLException {
+        String sql = """
+            SELECT user_id, symbol, profit_loss, timestamp FROM transactions
+            WHERE transaction_type = 'SELL' AND profit_loss IS NOT NULL
+            ORDER BY id
+        """;
+        int count = 0;
+        try (Statement stmt = connection.createStatement();
+             PreparedStatement update = connection.prepareStatement(JournalProjector.PERFORMANCE_UPSERT)) {
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                JournalProjector.bindPerformance(update, rs.getLong("user_id"), rs.getString("symbol"),
+                        rs.getLong("profit_loss"), -1, rs.getString("timestamp"));
+                update.executeUpdate();
+                count++;
+            }
+        }
+        if (count > 0) {
+            System.out.println("🔄 Riepilogo prestazioni ricostruito da " + count + " vendite");
+        }
+    }
+
+    private int getSchemaVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery("PRAGMA user_version");
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void setSchemaVersion(int version) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA user_version = " + version);
+        }
+    }
+
+    // SQLite non cambia il tipo di una colonna: la tabella va ricreata e i valori riscalati
+    private void migrateToMicros(String table, String createSql, String... moneyColumns) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        String firstType = null;
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT name, type FROM pragma_table_info(?)")) {
+            pstmt.setString(1, table);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+                if (rs.getString("name").equals(moneyColumns[0])) {
+                    firstType = rs.getString("type");
+                }
+            }
+        }
+        if (!"REAL".equalsIgnoreCase(firstType)) {
+            return;
+        }
+
+        List<String> selected = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            selected.add(List.of(moneyColumns).contains(column)
+                    ? "CAST(ROUND(" + column + " * " + Money.SCALE + ") AS INTEGER)"
+                    : column);
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            // Evita che le foreign key delle altre tabelle seguano la tabella rinominata
+            stmt.execute("PRAGMA legacy_alter_table = ON");
+            stmt.execute("ALTER TABLE " + table + " RENAME TO " + table + "_real");
+            stmt.execute(createSql);
+            stmt.execute("INSERT INTO " + table + " (" + String.join(", ", columns) + ") SELECT "
+                    + String.join(", ", selected) + " FROM " + table + "_real");
+            stmt.execute("DROP TABLE " + table + "_real");
+            stmt.execute("PRAGMA legacy_alter_table = OFF");
+        }
+        System.out.println("🔄 Tabella " + table + " migrata a importi interi");
+    }
+
+    // Carica una volta sola cash e posizioni di tutti gli utenti nella classifica
+    private void loadLeaderboard() throws SQLException {
+        projector.loadLeaderboard();
+        leaderboardLoadedAt = System.currentTimeMillis();
+    }
+
+    // Nel cluster ogni worker proietta solo i fill dei propri utenti: prima di mostrare la classifica
+    // la si ricarica dal database condiviso, al più ogni LEADERBOARD_REFRESH_MILLIS
+    public synchronized void refreshLeaderboard() {
+        if (ConfigManager.getInstance().getClusterWorkerIndex() < 0
+                || System.currentTimeMillis() - leaderboardLoadedAt < LEADERBOARD_REFRESH_MILLIS) {
+            return;
+        }
+        try {
+            loadLeaderboard();
+        } catch (SQLException e) {
+            System.err.println("Errore aggiornamento classifica: " + e.getMessage());
+        }
+    }
+
+    static String displayName(String username, String firstName) {
+        if (username != null && !username.isBlank()) {
+            return "@" + username;
+        }
+        return firstName != null ? firstName : "Anonimo";
+    }
+
     public void addOrUpdateUser(long userId, String username, String firstName, String lastName) {
         String sql = """
             INSERT INTO users (user_id, username, first_name, last_name, virtual_balance, registration_date, last_activity)
@@ -133,176 +529,266 @@ public class DatabaseManager {
             pstmt.setString(2, username);
             pstmt.setString(3, firstName);
             pstmt.setString(4, lastName);
-            pstmt.setDouble(5, ConfigManager.getInstance().getInitialVirtualBalance());
+            pstmt.setLong(5, ConfigManager.getInstance().getInitialVirtualBalance());
             pstmt.setString(6, LocalDateTime.now().toString());
             pstmt.setString(7, LocalDateTime.now().toString());
             pstmt.executeUpdate();
+            leaderboard.registerUser(userId, displayName(username, firstName),
+                    ConfigManager.getInstance().getInitialVirtualBalance());
         } catch (SQLException e) {
             System.err.println("Errore aggiornamento utente: " + e.getMessage());
         }
     }
 
-    public double getUserBalance(long userId) {
+    public long getUserBalance(long userId) {
+        awaitProjection();
         String sql = "SELECT virtual_balance FROM users WHERE user_id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                return rs.getDouble("virtual_balance");
+                return rs.getLong("virtual_balance");
             }
         } catch (SQLException e) {
             System.err.println("Errore recupero balance: " + e.getMessage());
         }
-        return 0.0;
+        return 0;
     }
 
-    public void updateUserBalance(long userId, double newBalance) {
-        String sql = "UPDATE users SET virtual_balance = ? WHERE user_id = ?";
+    // Valuta scelta con /valuta; null se l'utente usa quella predefinita
+    public String getUserCurrency(long userId) {
+        String sql = "SELECT currency FROM user_settings WHERE user_id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setDouble(1, newBalance);
-            pstmt.setLong(2, userId);
-            pstmt.executeUpdate();
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("currency");
+            }
         } catch (SQLException e) {
-            System.err.println("Errore aggiornamento balance: " + e.getMessage());
+            System.err.println("Errore query valuta: " + e.getMessage());
         }
+        return null;
     }
 
-    public void buyStock(long userId, String symbol, double quantity, double price) {
-        double totalCost = quantity * price;
-
-        // Aggiorna o inserisci nel portfolio
-        String portfolioSql = """
-            INSERT INTO portfolio (user_id, symbol, quantity, avg_buy_price, total_invested, purchase_date)
-            VALUES (?, ?, ?, ?, ?, ?)
-            ON CONFLICT(user_id, symbol) DO UPDATE SET
-                quantity = quantity + excluded.quantity,
-                total_invested = total_invested + excluded.total_invested,
-                avg_buy_price = (total_invested + excluded.total_invested) / (quantity + excluded.quantity)
+    public void setUserCurrency(long userId, String currency) {
+        String sql = """
+            INSERT INTO user_settings (user_id, currency) VALUES (?, ?)
+            ON CONFLICT(user_id) DO UPDATE SET currency = excluded.currency
         """;
-
-        try (PreparedStatement pstmt = connection.prepareStatement(portfolioSql)) {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
-            pstmt.setString(2, symbol);
-            pstmt.setDouble(3, quantity);
-            pstmt.setDouble(4, price);
-            pstmt.setDouble(5, totalCost);
-            pstmt.setString(6, LocalDateTime.now().toString());
+            pstmt.setString(2, currency);
             pstmt.executeUpdate();
         } catch (SQLException e) {
-            System.err.println("Errore acquisto stock: " + e.getMessage());
-            return;
+            System.err.println("Errore aggiornamento valuta: " + e.getMessage());
         }
+    }
 
-        // Registra la transazione
-        recordTransaction(userId, symbol, "BUY", quantity, price, totalCost, null);
+    public void updateUserBalance(long userId, long newBalance) {
+        synchronized (tradeLock) {
+            awaitProjection();
+            String sql = "UPDATE users SET virtual_balance = ? WHERE user_id = ?";
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setLong(1, newBalance);
+                pstmt.setLong(2, userId);
+                pstmt.executeUpdate();
+                leaderboard.setCash(userId, newBalance);
+            } catch (SQLException e) {
+                System.err.println("Errore aggiornamento balance: " + e.getMessage());
+            }
+            Account account = accounts.get(userId);
+            if (account != null) {
+                account.cash = newBalance;
+            }
+        }
+    }
 
-        // Aggiorna il balance
-        double currentBalance = getUserBalance(userId);
-        updateUserBalance(userId, currentBalance - totalCost);
+    // Il saldo si verifica sotto tradeLock, come in executeFills: tra la verifica e l'append
+    // un fill di OrderEngine non può spendere lo stesso cash
+    public TradeResult buyStock(long userId, String symbol, long quantity, long price) {
+        return executeTrade(new TradeJournal.Fill(userId, symbol, TradeJournal.Side.BUY,
+                quantity, price, System.currentTimeMillis()));
+    }
 
-        // Incrementa contatore trades
-        incrementTotalTrades(userId);
+    public TradeResult sellStock(long userId, String symbol, long quantity, long currentPrice) {
+        return executeTrade(new TradeJournal.Fill(userId, symbol, TradeJournal.Side.SELL,
+                quantity, currentPrice, System.currentTimeMillis()));
     }
 
-    public boolean sellStock(long userId, String symbol, double quantity, double currentPrice) {
-        // Verifica se l'utente ha abbastanza azioni
-        String checkSql = "SELECT quantity, avg_buy_price FROM portfolio WHERE user_id = ? AND symbol = ?";
-        double ownedQuantity = 0;
-        double avgBuyPrice = 0;
+    private TradeResult executeTrade(TradeJournal.Fill fill) {
+        preload(fill.userId());
+        synchronized (tradeLock) {
+            Account account = account(fill.userId());
+            if (!allowed(account, fill)) {
+                return new TradeResult(TradeStatus.REJECTED, account.cash);
+            }
+            if (!appendFills(List.of(fill))) {
+                return new TradeResult(TradeStatus.FAILED, account.cash);
+            }
+            book(account, fill);
+            return new TradeResult(TradeStatus.EXECUTED, account.cash);
+        }
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(checkSql)) {
-            pstmt.setLong(1, userId);
-            pstmt.setString(2, symbol);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                ownedQuantity = rs.getDouble("quantity");
-                avgBuyPrice = rs.getDouble("avg_buy_price");
+    // Esegue un lotto di fill con una sola append sul journal. Ogni fill è verificato
+    // contro saldo e posizioni tenendo conto dei fill precedenti dello stesso lotto;
+    // con allOrNothing un solo fill non valido fa rifiutare l'intero lotto.
+    public boolean[] executeFills(List<TradeJournal.Fill> fills, boolean allOrNothing) {
+        boolean[] accepted = new boolean[fills.size()];
+        for (TradeJournal.Fill fill : fills) {
+            preload(fill.userId());
+        }
+        synchronized (tradeLock) {
+            // I conti si aggiornano solo dopo l'append: si verifica su una copia
+            Map<Long, Account> live = new HashMap<>();
+            Map<Long, Account> drafts = new HashMap<>();
+            List<TradeJournal.Fill> valid = new ArrayList<>(fills.size());
+
+            for (int i = 0; i < fills.size(); i++) {
+                TradeJournal.Fill fill = fills.get(i);
+                Account draft = drafts.computeIfAbsent(fill.userId(),
+                        userId -> copy(live.computeIfAbsent(userId, this::account)));
+                accepted[i] = allowed(draft, fill);
+                if (accepted[i]) {
+                    book(draft, fill);
+                    valid.add(fill);
+                } else if (allOrNothing) {
+                    return new boolean[fills.size()];
+                }
+            }
+
+            if (valid.isEmpty()) {
+                return accepted;
+            }
+            if (!appendFills(valid)) {
+                return new boolean[fills.size()];
+            }
+            for (TradeJournal.Fill fill : valid) {
+                book(live.get(fill.userId()), fill);
             }
-        } catch (SQLException e) {
-            System.err.println("Errore verifica portfolio: " + e.getMessage());
-            return false;
         }
+        return accepted;
+    }
 
-        if (ownedQuantity < quantity) {
-            return false;
+    // Cash disponibile per un nuovo trade, senza aspettare la proiezione
+    public long getAvailableCash(long userId) {
+        preload(userId);
+        synchronized (tradeLock) {
+            return account(userId).cash;
         }
+    }
 
-        double totalRevenue = quantity * currentPrice;
-        double profitLoss = (currentPrice - avgBuyPrice) * quantity;
+    // Quantità vendibile di un simbolo, senza aspettare la proiezione
+    public long getAvailableQuantity(long userId, String symbol) {
+        preload(userId);
+        synchronized (tradeLock) {
+            return account(userId).holdings.get(ids.id(symbol), 0);
+        }
+    }
 
-        // Aggiorna il portfolio
-        if (ownedQuantity == quantity) {
-            // Vendi tutto
-            String deleteSql = "DELETE FROM portfolio WHERE user_id = ? AND symbol = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(deleteSql)) {
-                pstmt.setLong(1, userId);
-                pstmt.setString(2, symbol);
-                pstmt.executeUpdate();
-            } catch (SQLException e) {
-                System.err.println("Errore vendita totale: " + e.getMessage());
-                return false;
+    // Carica il conto senza tradeLock: l'attesa della proiezione e le query di un utente
+    // non fermano i trade degli altri
+    private void preload(long userId) {
+        long seenEvictions;
+        synchronized (tradeLock) {
+            if (accounts.containsKey(userId)) {
+                return;
             }
-        } else {
-            // Vendi parzialmente
-            String updateSql = "UPDATE portfolio SET quantity = quantity - ? WHERE user_id = ? AND symbol = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(updateSql)) {
-                pstmt.setDouble(1, quantity);
-                pstmt.setLong(2, userId);
-                pstmt.setString(3, symbol);
-                pstmt.executeUpdate();
-            } catch (SQLException e) {
-                System.err.println("Errore vendita parziale: " + e.getMessage());
-                return false;
+            seenEvictions = evictions;
+        }
+        Account loaded = loadAccount(userId);
+        synchronized (tradeLock) {
+            // Un trade dell'utente richiede il conto in memoria: se nessun conto è stato scartato
+            // nel frattempo, l'utente non ha fatto trade dopo la proiezione letta qui
+            if (!accounts.containsKey(userId) && evictions == seenEvictions) {
+                accounts.put(userId, loaded);
             }
         }
+    }
 
-        // Registra la transazione
-        recordTransaction(userId, symbol, "SELL", quantity, currentPrice, totalRevenue, profitLoss);
+    // Da chiamare con tradeLock, dopo preload; carica qui solo nel caso raro in cui il conto
+    // non è stato tenuto (scartato o concorrente a uno scarto)
+    private Account account(long userId) {
+        Account account = accounts.get(userId);
+        if (account == null) {
+            account = loadAccount(userId);
+            accounts.put(userId, account);
+        }
+        return account;
+    }
 
-        // Aggiorna il balance
-        double currentBalance = getUserBalance(userId);
-        updateUserBalance(userId, currentBalance + totalRevenue);
+    // Dalle tabelle già proiettate
+    private Account loadAccount(long userId) {
+        Account account = new Account();
+        account.cash = getUserBalance(userId);
+        for (Map.Entry<String, Long> position : getPortfolioQuantities(userId).entrySet()) {
+            account.holdings.put(ids.id(position.getKey()), position.getValue());
+        }
+        return account;
+    }
+
+    private Account copy(Account account) {
+        Account copy = new Account();
+        copy.cash = account.cash;
+        copy.holdings = account.holdings.copy();
+        return copy;
+    }
 
-        // Incrementa contatori
-        incrementTotalTrades(userId);
-        if (profitLoss > 0) {
-            incrementProfitableTrades(userId);
+    private boolean allowed(Account account, TradeJournal.Fill fill) {
+        long amount;
+        try {
+            amount = Money.mul(fill.quantity(), fill.price());
+        } catch (ArithmeticException e) {
+            // Importo non rappresentabile: mai eseguibile
+            return false;
         }
+        if (fill.side() == TradeJournal.Side.BUY) {
+            return amount <= account.cash;
+        }
+        return account.holdings.get(ids.id(fill.symbol()), 0) >= fill.quantity();
+    }
 
-        return true;
+    private void book(Account account, TradeJournal.Fill fill) {
+        int symbolId = ids.id(fill.symbol());
+        long amount = Money.mul(fill.quantity(), fill.price());
+        long owned = account.holdings.get(symbolId, 0);
+        if (fill.side() == TradeJournal.Side.BUY) {
+            account.cash -= amount;
+            account.holdings.put(symbolId, owned + fill.quantity());
+        } else {
+            account.cash += amount;
+            account.holdings.put(symbolId, owned - fill.quantity());
+        }
     }
 
-    private void recordTransaction(long userId, String symbol, String type, double quantity,
-                                   double price, double totalAmount, Double profitLoss) {
-        String sql = """
-            INSERT INTO transactions (user_id, symbol, transaction_type, quantity, price, total_amount, profit_loss, timestamp)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
-        """;
+    private boolean appendFills(List<TradeJournal.Fill> fills) {
+        if (journal == null) {
+            return false;
+        }
+        try {
+            journal.append(fills).join();
+            return true;
+        } catch (CompletionException e) {
+            System.err.println("Errore registrazione trade: " + e.getCause().getMessage());
+            return false;
+        }
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setLong(1, userId);
-            pstmt.setString(2, symbol);
-            pstmt.setString(3, type);
-            pstmt.setDouble(4, quantity);
-            pstmt.setDouble(5, price);
-            pstmt.setDouble(6, totalAmount);
-            if (profitLoss != null) {
-                pstmt.setDouble(7, profitLoss);
-            } else {
-                pstmt.setNull(7, Types.DOUBLE);
-            }
-            pstmt.setString(8, LocalDateTime.now().toString());
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Errore registrazione transazione: " + e.getMessage());
+    // Le letture devono vedere tutti i trade già confermati sul journal
+    private void awaitProjection() {
+        if (journal != null && !journal.awaitProjected(PROJECTION_WAIT_MILLIS)) {
+            System.err.println("Proiezione del journal in ritardo: lettura potenzialmente non aggiornata");
         }
     }
 
-    public String getPortfolio(long userId, java.util.Map<String, Double> currentPrices) {
+    // Prezzi per azione in USD, la valuta di quotazione; valori e P/L nella valuta dell'utente
+    // currentPrices per id di simbolo (vedi SymbolTable)
+    public String getPortfolio(long userId, IntLongMap currentPrices, DisplayCurrency currency) {
+        awaitProjection();
         String sql = "SELECT symbol, quantity, avg_buy_price, total_invested FROM portfolio WHERE user_id = ?";
         StringBuilder result = new StringBuilder("📊 IL TUO PORTFOLIO:\n\n");
-        double totalValue = 0;
-        double totalInvested = 0;
+        long totalValue = 0;
+        long totalInvested = 0;
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
@@ -312,15 +798,15 @@ public class DatabaseManager {
             while (rs.next()) {
                 hasStocks = true;
                 String symbol = rs.getString("symbol");
-                double quantity = rs.getDouble("quantity");
-                double avgBuyPrice = rs.getDouble("avg_buy_price");
-                double invested = rs.getDouble("total_invested");
+                long quantity = rs.getLong("quantity");
+                long avgBuyPrice = rs.getLong("avg_buy_price");
+                long invested = rs.getLong("total_invested");
 
-                Double currentPrice = currentPrices.get(symbol);
-                if (currentPrice != null) {
-                    double currentValue = quantity * currentPrice;
-                    double profitLoss = currentValue - invested;
-                    double profitLossPercent = (profitLoss / invested) * 100;
+                long currentPrice = currentPrices.get(ids.find(symbol), -1);
+                if (currentPrice >= 0) {
+                    long currentValue = Money.mul(quantity, currentPrice);
+                    long profitLoss = currentValue - invested;
+                    double profitLossPercent = Money.percent(profitLoss, invested);
 
                     totalValue += currentValue;
                     totalInvested += invested;
@@ -328,11 +814,11 @@ public class DatabaseManager {
                     String profitEmoji = profitLoss >= 0 ? "📈" : "📉";
 
                     result.append(String.format("%s %s\n", profitEmoji, symbol));
-                    result.append(String.format("Quantità: %.2f\n", quantity));
-                    result.append(String.format("Prezzo medio: $%.2f\n", avgBuyPrice));
-                    result.append(String.format("Prezzo attuale: $%.2f\n", currentPrice));
-                    result.append(String.format("Valore: $%.2f\n", currentValue));
-                    result.append(String.format("P/L: $%.2f (%.2f%%)\n\n", profitLoss, profitLossPercent));
+                    result.append(String.format("Quantità: %.2f\n", Money.toDouble(quantity)));
+                    result.append(String.format("Prezzo medio: $%.2f\n", Money.toDouble(avgBuyPrice)));
+                    result.append(String.format("Prezzo attuale: $%.2f\n", Money.toDouble(currentPrice)));
+                    result.append(String.format("Valore: %s\n", currency.format(currentValue)));
+                    result.append(String.format("P/L: %s (%.2f%%)\n\n", currency.format(profitLoss), profitLossPercent));
                 }
             }
 
@@ -340,14 +826,14 @@ public class DatabaseManager {
                 return "📊 Portfolio vuoto. Inizia a investire con /compra!";
             }
 
-            double totalProfitLoss = totalValue - totalInvested;
-            double totalProfitLossPercent = totalInvested > 0 ? (totalProfitLoss / totalInvested) * 100 : 0;
+            long totalProfitLoss = totalValue - totalInvested;
+            double totalProfitLossPercent = Money.percent(totalProfitLoss, totalInvested);
 
             result.append("━━━━━━━━━━━━━━━━━━━━\n");
-            result.append(String.format("💰 Valore totale: $%.2f\n", totalValue));
-            result.append(String.format("💵 Investito: $%.2f\n", totalInvested));
-            result.append(String.format("📊 P/L totale: $%.2f (%.2f%%)\n", totalProfitLoss, totalProfitLossPercent));
-            result.append(String.format("💳 Cash disponibile: $%.2f", getUserBalance(userId)));
+            result.append(String.format("💰 Valore totale: %s\n", currency.format(totalValue)));
+            result.append(String.format("💵 Investito: %s\n", currency.format(totalInvested)));
+            result.append(String.format("📊 P/L totale: %s (%.2f%%)\n", currency.format(totalProfitLoss), totalProfitLossPercent));
+            result.append(String.format("💳 Cash disponibile: %s", currency.format(getUserBalance(userId))));
 
         } catch (SQLException e) {
             return "Errore nel recupero del portfolio";
@@ -356,48 +842,196 @@ public class DatabaseManager {
         return result.toString();
     }
 
-    public String getTransactionHistory(long userId, int limit) {
-        String sql = """
-            SELECT symbol, transaction_type, quantity, price, total_amount, profit_loss, timestamp 
-            FROM transactions WHERE user_id = ? 
-            ORDER BY timestamp DESC LIMIT ?
-        """;
+    public List<String> getPortfolioSymbols(long userId) {
+        awaitProjection();
+        String sql = "SELECT DISTINCT symbol FROM portfolio WHERE user_id = ?";
+        List<String> symbols = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                symbols.add(rs.getString("symbol"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore query simboli: " + e.getMessage());
+        }
+        return symbols;
+    }
 
-        StringBuilder result = new StringBuilder("📜 STORICO TRANSAZIONI:\n\n");
+    // Quantità detenute per simbolo, in micro-unità
+    public Map<String, Long> getPortfolioQuantities(long userId) {
+        awaitProjection();
+        String sql = "SELECT symbol, quantity FROM portfolio WHERE user_id = ? ORDER BY symbol";
+        Map<String, Long> quantities = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                quantities.put(rs.getString("symbol"), rs.getLong("quantity"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore query quantità portfolio: " + e.getMessage());
+        }
+        return quantities;
+    }
+
+    public String getPortfolioWithoutPrices(long userId, DisplayCurrency currency) {
+        awaitProjection();
+        String sql = "SELECT symbol, quantity, avg_buy_price, total_invested FROM portfolio WHERE user_id = ?";
+        StringBuilder result = new StringBuilder("📊 IL TUO PORTFOLIO:\n\n");
+        long totalInvested = 0;
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
-            pstmt.setInt(2, limit);
             ResultSet rs = pstmt.executeQuery();
 
-            boolean hasTransactions = false;
+            boolean hasStocks = false;
             while (rs.next()) {
-                hasTransactions = true;
+                hasStocks = true;
                 String symbol = rs.getString("symbol");
-                String type = rs.getString("transaction_type");
-                double quantity = rs.getDouble("quantity");
-                double price = rs.getDouble("price");
-                double totalAmount = rs.getDouble("total_amount");
-                Double profitLoss = rs.getObject("profit_loss", Double.class);
-                String timestamp = rs.getString("timestamp").substring(0, 16).replace("T", " ");
-
-                String emoji = type.equals("BUY") ? "🟢" : "🔴";
-                result.append(String.format("%s %s %s\n", emoji, type, symbol));
-                result.append(String.format("Quantità: %.2f @ $%.2f\n", quantity, price));
-                result.append(String.format("Totale: $%.2f\n", totalAmount));
-                if (profitLoss != null) {
-                    String plEmoji = profitLoss >= 0 ? "💚" : "❤️";
-                    result.append(String.format("%s P/L: $%.2f\n", plEmoji, profitLoss));
+                long quantity = rs.getLong("quantity");
+                long avgBuyPrice = rs.getLong("avg_buy_price");
+                long invested = rs.getLong("total_invested");
+
+                totalInvested += invested;
+
+                result.append(String.format("📌 %s\n", symbol));
+                result.append(String.format("Quantità: %.2f\n", Money.toDouble(quantity)));
+                result.append(String.format("Prezzo medio: $%.2f\n", Money.toDouble(avgBuyPrice)));
+                result.append(String.format("Investito: %s\n\n", currency.format(invested)));
+            }
+
+            if (!hasStocks) {
+                return "📊 Portfolio vuoto. Inizia a investire con /compra!";
+            }
+
+            result.append("━━━━━━━━━━━━━━━━━━━━\n");
+            result.append(String.format("💵 Totale investito: %s\n", currency.format(totalInvested)));
+            result.append(String.format("💳 Cash disponibile: %s\n\n", currency.format(getUserBalance(userId))));
+            result.append("⚠️ Prezzi attuali non disponibili (limite API)\n");
+            result.append("💡 Usa /prezzo [SIMBOLO] per vedere il prezzo corrente");
+
+        } catch (SQLException e) {
+            return "❌ Errore nel recupero del portfolio: " + e.getMessage();
+        }
+
+        return result.toString();
+    }
+
+    // Storico unificato: prima la tabella transactions, poi l'archivio se servono altre righe.
+    // Una sola transazione di lettura, come in exportHistory: un'archiviazione concorrente
+    // non può far comparire due volte o sparire le righe spostate tra le due letture.
+    public List<TransactionRecord> getTransactions(long userId, int limit) {
+        awaitProjection();
+        String sql = """
+            SELECT symbol, transaction_type, quantity, price, total_amount, profit_loss, timestamp
+            FROM transactions WHERE user_id = ?
+            ORDER BY timestamp DESC LIMIT ?
+        """;
+        List<TransactionRecord> records = new ArrayList<>();
+        if (historyReader == null) {
+            return records;
+        }
+
+        synchronized (historyReader) {
+            try {
+                historyReader.setAutoCommit(false);
+                try (PreparedStatement pstmt = historyReader.prepareStatement(sql)) {
+                    pstmt.setLong(1, userId);
+                    pstmt.setInt(2, limit);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        long profitLoss = rs.getLong("profit_loss");
+                        Long realized = rs.wasNull() ? null : profitLoss;
+                        records.add(new TransactionRecord(rs.getString("symbol"), rs.getString("transaction_type"),
+                                rs.getLong("quantity"), rs.getLong("price"), rs.getLong("total_amount"),
+                                realized, rs.getString("timestamp")));
+                    }
+                }
+
+                if (records.size() < limit && archive != null) {
+                    records.addAll(archive.read(historyReader, userId, limit - records.size()));
+                }
+            } catch (SQLException e) {
+                System.err.println("Errore recupero transazioni: " + e.getMessage());
+            } catch (IOException e) {
+                System.err.println("Errore lettura archivio transazioni: " + e.getMessage());
+            } finally {
+                try {
+                    historyReader.rollback();
+                    historyReader.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Errore chiusura lettura storico: " + e.getMessage());
                 }
-                result.append(String.format("📅 %s\n\n", timestamp));
             }
+        }
+        return records;
+    }
 
-            if (!hasTransactions) {
-                return "📜 Nessuna transazione effettuata.";
+    // Storico completo e posizioni aperte lette con cursori in avanti, una riga alla volta:
+    // la memoria usata non dipende dalla lunghezza dello storico. Una connessione dedicata
+    // in una sola transazione di lettura vede archivio e tabella nello stesso snapshot,
+    // anche se l'archiviazione sposta righe durante un'esportazione lenta.
+    public void exportHistory(long userId, RowSink<Position> positions, RowSink<TransactionRecord> transactions)
+            throws IOException {
+        awaitProjection();
+        try (Connection snapshot = TracedConnection.wrap(DriverManager.getConnection("jdbc:sqlite:" + dbPath))) {
+            snapshot.setAutoCommit(false);
+            try (PreparedStatement pstmt = snapshot.prepareStatement("""
+                SELECT symbol, quantity, avg_buy_price, total_invested, purchase_date
+                FROM portfolio WHERE user_id = ? ORDER BY symbol
+            """)) {
+                pstmt.setLong(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    positions.accept(new Position(rs.getString("symbol"), rs.getLong("quantity"),
+                            rs.getLong("avg_buy_price"), rs.getLong("total_invested"), rs.getString("purchase_date")));
+                }
             }
 
+            if (archive != null) {
+                archive.forEach(snapshot, userId, transactions);
+            }
+            try (PreparedStatement pstmt = snapshot.prepareStatement("""
+                SELECT symbol, transaction_type, quantity, price, total_amount, profit_loss, timestamp
+                FROM transactions WHERE user_id = ? ORDER BY timestamp, id
+            """)) {
+                pstmt.setLong(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    long profitLoss = rs.getLong("profit_loss");
+                    Long realized = rs.wasNull() ? null : profitLoss;
+                    transactions.accept(new TransactionRecord(rs.getString("symbol"), rs.getString("transaction_type"),
+                            rs.getLong("quantity"), rs.getLong("price"), rs.getLong("total_amount"),
+                            realized, rs.getString("timestamp")));
+                }
+            }
+            snapshot.rollback();
         } catch (SQLException e) {
-            return "Errore nel recupero dello storico";
+            throw new IOException("Errore lettura storico: " + e.getMessage(), e);
+        }
+    }
+
+    public String getTransactionHistory(long userId, int limit) {
+        List<TransactionRecord> records = getTransactions(userId, limit);
+        if (records.isEmpty()) {
+            return "📜 Nessuna transazione effettuata.";
+        }
+
+        StringBuilder result = new StringBuilder("📜 STORICO TRANSAZIONI:\n\n");
+        for (TransactionRecord record : records) {
+            String type = record.type();
+            String timestamp = record.timestamp().substring(0, 16).replace("T", " ");
+
+            String emoji = type.equals("BUY") ? "🟢" : "🔴";
+            result.append(String.format("%s %s %s\n", emoji, type, record.symbol()));
+            result.append(String.format("Quantità: %.2f @ $%.2f\n", Money.toDouble(record.quantity()), Money.toDouble(record.price())));
+            result.append(String.format("Totale: $%.2f\n", Money.toDouble(record.totalAmount())));
+            if (record.profitLoss() != null) {
+                String plEmoji = record.profitLoss() >= 0 ? "💚" : "❤️";
+                result.append(String.format("%s P/L: $%.2f\n", plEmoji, Money.toDouble(record.profitLoss())));
+            }
+            result.append(String.format("📅 %s\n\n", timestamp));
         }
 
         return result.toString();
@@ -440,30 +1074,178 @@ public class DatabaseManager {
         return result.toString();
     }
 
-    private void incrementTotalTrades(long userId) {
-        String sql = "UPDATE users SET total_trades = total_trades + 1 WHERE user_id = ?";
+    public List<String> getWatchlistSymbols(long userId) {
+        String sql = "SELECT symbol FROM watchlist WHERE user_id = ?";
+        List<String> symbols = new ArrayList<>();
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                symbols.add(rs.getString("symbol"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore lettura watchlist: " + e.getMessage());
+        }
+        return symbols;
+    }
+
+    // Tutti i simboli che compaiono in portfolio, watchlist e transazioni recenti
+    public List<String> getKnownSymbols() {
+        String sql = """
+            SELECT symbol FROM portfolio
+            UNION SELECT symbol FROM watchlist
+            UNION SELECT symbol FROM transactions
+            """;
+        List<String> symbols = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                symbols.add(rs.getString("symbol"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore lettura simboli noti: " + e.getMessage());
+        }
+        return symbols;
+    }
+
+    public void subscribeDigest(long userId, long chatId) {
+        String sql = "INSERT OR REPLACE INTO watchlist_digest (user_id, chat_id, subscribed_date) VALUES (?, ?, ?)";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
+            pstmt.setLong(2, chatId);
+            pstmt.setString(3, LocalDateTime.now().toString());
             pstmt.executeUpdate();
         } catch (SQLException e) {
-            System.err.println("Errore incremento trades: " + e.getMessage());
+            System.err.println("Errore iscrizione riepilogo: " + e.getMessage());
         }
     }
 
-    private void incrementProfitableTrades(long userId) {
-        String sql = "UPDATE users SET profitable_trades = profitable_trades + 1 WHERE user_id = ?";
+    public void unsubscribeDigest(long userId) {
+        String sql = "DELETE FROM watchlist_digest WHERE user_id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
             pstmt.executeUpdate();
         } catch (SQLException e) {
-            System.err.println("Errore incremento profitable trades: " + e.getMessage());
+            System.err.println("Errore disiscrizione riepilogo: " + e.getMessage());
+        }
+    }
+
+    // Una riga per ogni simbolo seguito dagli iscritti al riepilogo
+    // (symbol null per chi ha la watchlist vuota)
+    public List<WatchEntry> loadDigestWatchlists() {
+        String sql = """
+            SELECT d.user_id, d.chat_id, w.symbol
+            FROM watchlist_digest d LEFT JOIN watchlist w ON w.user_id = d.user_id
+        """;
+        List<WatchEntry> entries = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                entries.add(new WatchEntry(rs.getLong("user_id"), rs.getLong("chat_id"), rs.getString("symbol")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore caricamento riepiloghi watchlist: " + e.getMessage());
+        }
+        return entries;
+    }
+
+    public long insertOrder(long userId, long chatId, String symbol, String side, String type,
+                            long quantity, long triggerPrice) {
+        String sql = """
+            INSERT INTO orders (user_id, chat_id, symbol, side, order_type, quantity, trigger_price, created_date)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            RETURNING id
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            pstmt.setLong(2, chatId);
+            pstmt.setString(3, symbol);
+            pstmt.setString(4, side);
+            pstmt.setString(5, type);
+            pstmt.setLong(6, quantity);
+            pstmt.setLong(7, triggerPrice);
+            pstmt.setString(8, LocalDateTime.now().toString());
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getLong("id");
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore inserimento ordine: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    // Cambio di stato solo se l'ordine è ancora nello stato atteso: nel cluster più processi
+    // possono avere lo stesso ordine in memoria e soltanto uno deve poterlo eseguire o annullare.
+    // false se un altro processo (o un annullamento) è arrivato prima.
+    public boolean updateOrderStatus(long orderId, String expectedStatus, String status, Long executedPrice) {
+        String sql = "UPDATE orders SET status = ?, executed_date = ?, executed_price = ? WHERE id = ? AND status = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, status);
+            pstmt.setString(2, LocalDateTime.now().toString());
+            if (executedPrice != null) {
+                pstmt.setLong(3, executedPrice);
+            } else {
+                pstmt.setNull(3, Types.INTEGER);
+            }
+            pstmt.setLong(4, orderId);
+            pstmt.setString(5, expectedStatus);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            System.err.println("Errore aggiornamento ordine: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Annulla un ordine ancora aperto dell'utente, anche se non è nel book di questo processo
+    public boolean cancelOrder(long userId, long orderId) {
+        String sql = "UPDATE orders SET status = 'CANCELLED', executed_date = ? WHERE id = ? AND user_id = ? AND status = 'OPEN'";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, LocalDateTime.now().toString());
+            pstmt.setLong(2, orderId);
+            pstmt.setLong(3, userId);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            System.err.println("Errore annullamento ordine: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public List<Order> loadOpenOrders() {
+        String sql = """
+            SELECT id, user_id, chat_id, symbol, side, order_type, quantity, trigger_price
+            FROM orders WHERE status = 'OPEN'
+        """;
+        List<Order> orders = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                orders.add(new Order(rs.getLong("id"), rs.getLong("user_id"), rs.getLong("chat_id"),
+                        rs.getString("symbol"), TradeJournal.Side.valueOf(rs.getString("side")),
+                        Order.Type.valueOf(rs.getString("order_type")),
+                        rs.getLong("quantity"), rs.getLong("trigger_price")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore caricamento ordini: " + e.getMessage());
         }
+        return orders;
     }
 
-    public String getUserStats(long userId) {
+    // Una sola riga: i contatori di users più il riepilogo mantenuto dal proiettore
+    public String getUserStats(long userId, DisplayCurrency currency) {
+        awaitProjection();
         String sql = """
-            SELECT virtual_balance, total_trades, profitable_trades, registration_date 
-            FROM users WHERE user_id = ?
+            SELECT u.virtual_balance, u.total_trades, u.registration_date,
+                   p.closed_trades, p.winning_trades, p.realized_pl, p.gross_profit, p.gross_loss,
+                   p.best_trade, p.best_symbol, p.worst_trade, p.worst_symbol,
+                   p.holding_trades, p.holding_millis, p.max_drawdown
+            FROM users u LEFT JOIN user_performance p ON p.user_id = u.user_id
+            WHERE u.user_id = ?
         """;
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
@@ -471,22 +1253,52 @@ public class DatabaseManager {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                double balance = rs.getDouble("virtual_balance");
+                long balance = rs.getLong("virtual_balance");
                 int totalTrades = rs.getInt("total_trades");
-                int profitableTrades = rs.getInt("profitable_trades");
                 String regDate = rs.getString("registration_date").substring(0, 10);
+                int closedTrades = rs.getInt("closed_trades");
+                int winningTrades = rs.getInt("winning_trades");
 
-                double winRate = totalTrades > 0 ? (profitableTrades * 100.0 / totalTrades) : 0;
-
-                return String.format("""
+                StringBuilder result = new StringBuilder(String.format("""
                     📊 LE TUE STATISTICHE:
                     
-                    💰 Balance: $%.2f
+                    💰 Balance: %s
                     📈 Trades totali: %d
-                    ✅ Trades profittevoli: %d
-                    📊 Win Rate: %.1f%%
                     📅 Membro dal: %s
-                    """, balance, totalTrades, profitableTrades, winRate, regDate);
+                    """, currency.format(balance), totalTrades, regDate));
+
+                if (closedTrades == 0) {
+                    result.append("\n💡 Le statistiche sui risultati compaiono dopo la prima vendita");
+                    return result.toString();
+                }
+
+                long realized = rs.getLong("realized_pl");
+                long grossLoss = rs.getLong("gross_loss");
+                long holdingTrades = rs.getLong("holding_trades");
+                String profitFactor = grossLoss > 0
+                        ? String.format("%.2f", (double) rs.getLong("gross_profit") / grossLoss)
+                        : "∞";
+                String holding = holdingTrades > 0
+                        ? formatDuration(rs.getLong("holding_millis") / holdingTrades)
+                        : "N/D";
+
+                result.append(String.format("""
+                    
+                    🔒 Operazioni chiuse: %d
+                    ✅ In profitto: %d
+                    📊 Win Rate: %.1f%%
+                    %s P/L realizzato: %s
+                    🏆 Miglior trade: %s (%s)
+                    💥 Peggior trade: %s (%s)
+                    ⚖️ Profit factor: %s
+                    ⏱️ Possesso medio: %s
+                    📉 Max drawdown realizzato: %s
+                    """, closedTrades, winningTrades, winningTrades * 100.0 / closedTrades,
+                        realized >= 0 ? "🟢" : "🔴", currency.format(realized),
+                        currency.format(rs.getLong("best_trade")), rs.getString("best_symbol"),
+                        currency.format(rs.getLong("worst_trade")), rs.getString("worst_symbol"),
+                        profitFactor, holding, currency.format(rs.getLong("max_drawdown"))));
+                return result.toString();
             }
         } catch (SQLException e) {
             System.err.println("Errore statistiche utente: " + e.getMessage());
@@ -495,12 +1307,38 @@ public class DatabaseManager {
         return "Errore nel recupero delle statistiche";
     }
 
+    private static String formatDuration(long millis) {
+        long minutes = millis / 60_000;
+        long days = minutes / (24 * 60);
+        long hours = minutes / 60 % 24;
+        if (days > 0) {
+            return days + "g " + hours + "h";
+        }
+        return hours > 0 ? hours + "h " + minutes % 60 + "m" : minutes % 60 + "m";
+    }
+
     public Connection getConnection() {
         return connection;
     }
 
     public void close() {
+        if (journal != null) {
+            awaitProjection();
+            journal.close();
+        }
+        if (projector != null) {
+            projector.close();
+        }
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+        if (archive != null) {
+            archive.close();
+        }
         try {
+            if (historyReader != null) {
+                historyReader.close();
+            }
             if (connection != null && !connection.isClosed()) {
                 connection.close();
             }
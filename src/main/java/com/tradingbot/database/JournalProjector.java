@@ -0,0 +1,427 @@
+package com.tradingbot.database;
+
+import com.tradingbot.leaderboard.Leaderboard;
+import com.tradingbot.money.Money;
+
+import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Applica i fill del journal alle tabelle users, portfolio e transactions.
+// Lavora su una connessione dedicata e proietta ogni lotto di record in una sola
+// transazione insieme al checkpoint, così un riavvio non applica mai due volte lo stesso fill.
+class JournalProjector implements AutoCloseable {
+    // Un solo statement per vendita: nell'UPDATE ogni colonna a destra vale il valore precedente,
+    // quindi picco e drawdown si calcolano sul P/L realizzato cumulato prima e dopo il trade
+    static final String PERFORMANCE_UPSERT = """
+        INSERT INTO user_performance (user_id, closed_trades, winning_trades, realized_pl, gross_profit, gross_loss,
+                                      best_trade, best_symbol, worst_trade, worst_symbol, holding_trades, holding_millis,
+                                      peak_realized_pl, max_drawdown, updated_at)
+        VALUES (?1, 1, ?3 > 0, ?3, MAX(?3, 0), MAX(-?3, 0), ?3, ?2, ?3, ?2, ?4 >= 0, MAX(?4, 0),
+                MAX(?3, 0), MAX(-?3, 0), ?5)
+        ON CONFLICT(user_id) DO UPDATE SET
+            closed_trades = closed_trades + 1,
+            winning_trades = winning_trades + (excluded.realized_pl > 0),
+            realized_pl = realized_pl + excluded.realized_pl,
+            gross_profit = gross_profit + excluded.gross_profit,
+            gross_loss = gross_loss + excluded.gross_loss,
+            best_symbol = CASE WHEN best_trade IS NULL OR excluded.best_trade > best_trade
+                               THEN excluded.best_symbol ELSE best_symbol END,
+            best_trade = CASE WHEN best_trade IS NULL OR excluded.best_trade > best_trade
+                              THEN excluded.best_trade ELSE best_trade END,
+            worst_symbol = CASE WHEN worst_trade IS NULL OR excluded.worst_trade < worst_trade
+                                THEN excluded.worst_symbol ELSE worst_symbol END,
+            worst_trade = CASE WHEN worst_trade IS NULL OR excluded.worst_trade < worst_trade
+                               THEN excluded.worst_trade ELSE worst_trade END,
+            holding_trades = holding_trades + excluded.holding_trades,
+            holding_millis = holding_millis + excluded.holding_millis,
+            peak_realized_pl = MAX(peak_realized_pl, realized_pl + excluded.realized_pl),
+            max_drawdown = MAX(max_drawdown,
+                               MAX(peak_realized_pl, realized_pl + excluded.realized_pl)
+                               - (realized_pl + excluded.realized_pl)),
+            updated_at = excluded.updated_at
+    """;
+
+    private final Connection connection;
+    // Chiave del checkpoint: il nome del file del journal, diverso per ogni worker
+    private final String journalKey;
+    private final TradeJournal journal;
+    private final Leaderboard leaderboard;
+    private final BlockingQueue<TradeJournal.Entry> queue = new LinkedBlockingQueue<>();
+
+    private Thread worker;
+    private volatile boolean running;
+    // Attesa prima di proiettare, per raccogliere lotti più grandi (PROJECTION_FLUSH_MS)
+    private volatile long flushMillis;
+
+    private record UserRow(long userId, String name, long cash) {
+    }
+
+    private record PositionRow(long userId, String symbol, long quantity, long avgBuyPrice) {
+    }
+
+    JournalProjector(String dbPath, String journalKey, TradeJournal journal, Leaderboard leaderboard) throws SQLException {
+        this.connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        this.journalKey = journalKey;
+        this.journal = journal;
+        this.leaderboard = leaderboard;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+    }
+
+    long loadCheckpoint() throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT last_seq FROM journal_checkpoints WHERE journal = ?")) {
+            pstmt.setString(1, journalKey);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getLong("last_seq");
+            }
+        }
+        // Primo avvio dopo l'aggiornamento: si riparte dal vecchio checkpoint unico, come prima;
+        // dal primo lotto proiettato il journal ha il suo
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type = 'table' AND name = 'journal_checkpoint'");
+            if (!rs.next()) {
+                return 0;
+            }
+            rs = stmt.executeQuery("SELECT last_seq FROM journal_checkpoint WHERE id = 1");
+            return rs.next() ? rs.getLong("last_seq") : 0;
+        }
+    }
+
+    // Usato all'avvio per riapplicare la coda del journal prima di accettare nuovi trade
+    void replay(List<TradeJournal.Entry> entries) throws SQLException {
+        if (!entries.isEmpty()) {
+            apply(entries);
+            System.out.println("📒 Journal: riapplicati " + entries.size() + " record");
+        }
+    }
+
+    void enqueue(TradeJournal.Entry entry) {
+        queue.add(entry);
+    }
+
+    void setFlushMillis(long flushMillis) {
+        this.flushMillis = flushMillis;
+    }
+
+    void start() {
+        running = true;
+        worker = new Thread(this::projectLoop, "journal-projector");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void projectLoop() {
+        List<TradeJournal.Entry> batch = new ArrayList<>();
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                    long flush = flushMillis;
+                    if (flush > 0 && running) {
+                        Thread.sleep(flush);
+                    }
+                    queue.drainTo(batch);
+                }
+                apply(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                if (queue.isEmpty() && batch.isEmpty()) {
+                    break;
+                }
+                queue.drainTo(batch);
+            } catch (SQLException e) {
+                // Il lotto resta in memoria e nel journal: si riprova
+                System.err.println("Errore proiezione journal: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // Ricarica cash e posizioni di tutti gli utenti nella classifica, con una sola lettura consistente.
+    // Stesso monitor di apply: un lotto proiettato da questo worker finisce o nella lettura
+    // o negli aggiornamenti incrementali, mai in entrambi
+    synchronized void loadLeaderboard() throws SQLException {
+        List<UserRow> users = new ArrayList<>();
+        List<PositionRow> positions = new ArrayList<>();
+
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT user_id, username, first_name, virtual_balance FROM users");
+            while (rs.next()) {
+                users.add(new UserRow(rs.getLong("user_id"),
+                        DatabaseManager.displayName(rs.getString("username"), rs.getString("first_name")),
+                        rs.getLong("virtual_balance")));
+            }
+
+            rs = stmt.executeQuery("SELECT user_id, symbol, quantity, avg_buy_price FROM portfolio");
+            while (rs.next()) {
+                positions.add(new PositionRow(rs.getLong("user_id"), rs.getString("symbol"),
+                        rs.getLong("quantity"), rs.getLong("avg_buy_price")));
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        // Chi legge la classifica vede quella vecchia o quella nuova, mai una a metà
+        synchronized (leaderboard) {
+            leaderboard.reset();
+            for (UserRow user : users) {
+                leaderboard.registerUser(user.userId(), user.name(), user.cash());
+            }
+            for (PositionRow position : positions) {
+                leaderboard.loadPosition(position.userId(), position.symbol(),
+                        position.quantity(), position.avgBuyPrice());
+            }
+        }
+    }
+
+    private synchronized void apply(List<TradeJournal.Entry> entries) throws SQLException {
+        List<TradeJournal.Fill> applied = new ArrayList<>();
+        long lastSeq = 0;
+
+        connection.setAutoCommit(false);
+        try {
+            for (TradeJournal.Entry entry : entries) {
+                for (TradeJournal.Fill fill : entry.fills()) {
+                    if (fill.side() == TradeJournal.Side.BUY) {
+                        applyBuy(fill);
+                    } else {
+                        applySell(fill);
+                    }
+                    applied.add(fill);
+                }
+                lastSeq = entry.seq();
+            }
+            saveCheckpoint(lastSeq);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+
+        journal.markProjected(lastSeq);
+
+        for (TradeJournal.Fill fill : applied) {
+            long amount = Money.mul(fill.quantity(), fill.price());
+            if (fill.side() == TradeJournal.Side.BUY) {
+                leaderboard.addCash(fill.userId(), -amount);
+                leaderboard.addPosition(fill.userId(), fill.symbol(), fill.quantity(), fill.price());
+            } else {
+                leaderboard.addCash(fill.userId(), amount);
+                leaderboard.addPosition(fill.userId(), fill.symbol(), -fill.quantity(), fill.price());
+            }
+        }
+    }
+
+    private void applyBuy(TradeJournal.Fill fill) throws SQLException {
+        long totalCost = Money.mul(fill.quantity(), fill.price());
+        String timestamp = toTimestamp(fill.timestamp());
+
+        // Il prezzo medio si ricalcola in Java con aritmetica intera esatta
+        long quantity = fill.quantity();
+        long invested = totalCost;
+        long openedAt = fill.timestamp();
+        String checkSql = "SELECT quantity, total_invested, opened_at FROM portfolio WHERE user_id = ? AND symbol = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(checkSql)) {
+            pstmt.setLong(1, fill.userId());
+            pstmt.setString(2, fill.symbol());
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                long ownedQuantity = rs.getLong("quantity");
+                long previousOpenedAt = rs.getLong("opened_at");
+                quantity += ownedQuantity;
+                invested += rs.getLong("total_invested");
+                // Data di apertura media pesata sulle quantità, per la durata di possesso
+                if (!rs.wasNull()) {
+                    openedAt = previousOpenedAt
+                            + Money.mul(fill.timestamp() - previousOpenedAt, Money.div(fill.quantity(), quantity));
+                }
+            }
+        }
+
+        String portfolioSql = """
+            INSERT INTO portfolio (user_id, symbol, quantity, avg_buy_price, total_invested, purchase_date, opened_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT(user_id, symbol) DO UPDATE SET
+                quantity = excluded.quantity,
+                total_invested = excluded.total_invested,
+                avg_buy_price = excluded.avg_buy_price,
+                opened_at = excluded.opened_at
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(portfolioSql)) {
+            pstmt.setLong(1, fill.userId());
+            pstmt.setString(2, fill.symbol());
+            pstmt.setLong(3, quantity);
+            pstmt.setLong(4, Money.div(invested, quantity));
+            pstmt.setLong(5, invested);
+            pstmt.setString(6, timestamp);
+            pstmt.setLong(7, openedAt);
+            pstmt.executeUpdate();
+        }
+
+        recordTransaction(fill, totalCost, null, timestamp);
+        updateUser(fill.userId(), -totalCost, false);
+    }
+
+    private void applySell(TradeJournal.Fill fill) throws SQLException {
+        String checkSql = "SELECT quantity, avg_buy_price, opened_at FROM portfolio WHERE user_id = ? AND symbol = ?";
+        long ownedQuantity = 0;
+        long avgBuyPrice = 0;
+        long holdingMillis = -1;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(checkSql)) {
+            pstmt.setLong(1, fill.userId());
+            pstmt.setString(2, fill.symbol());
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                ownedQuantity = rs.getLong("quantity");
+                avgBuyPrice = rs.getLong("avg_buy_price");
+                long openedAt = rs.getLong("opened_at");
+                if (!rs.wasNull()) {
+                    holdingMillis = Math.max(0, fill.timestamp() - openedAt);
+                }
+            }
+        }
+
+        long totalRevenue = Money.mul(fill.quantity(), fill.price());
+        long profitLoss = Money.mul(fill.quantity(), fill.price() - avgBuyPrice);
+
+        if (ownedQuantity <= fill.quantity()) {
+            // Vendi tutto
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "DELETE FROM portfolio WHERE user_id = ? AND symbol = ?")) {
+                pstmt.setLong(1, fill.userId());
+                pstmt.setString(2, fill.symbol());
+                pstmt.executeUpdate();
+            }
+        } else {
+            // Vendi parzialmente
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE portfolio SET quantity = quantity - ? WHERE user_id = ? AND symbol = ?")) {
+                pstmt.setLong(1, fill.quantity());
+                pstmt.setLong(2, fill.userId());
+                pstmt.setString(3, fill.symbol());
+                pstmt.executeUpdate();
+            }
+        }
+
+        String timestamp = toTimestamp(fill.timestamp());
+        recordTransaction(fill, totalRevenue, profitLoss, timestamp);
+        updatePerformance(fill, profitLoss, holdingMillis, timestamp);
+        updateUser(fill.userId(), totalRevenue, profitLoss > 0);
+    }
+
+    // holdingMillis < 0 se la durata di possesso non è nota
+    static void bindPerformance(PreparedStatement pstmt, long userId, String symbol, long profitLoss,
+                                long holdingMillis, String timestamp) throws SQLException {
+        pstmt.setLong(1, userId);
+        pstmt.setString(2, symbol);
+        pstmt.setLong(3, profitLoss);
+        pstmt.setLong(4, holdingMillis);
+        pstmt.setString(5, timestamp);
+    }
+
+    private void updatePerformance(TradeJournal.Fill fill, long profitLoss, long holdingMillis,
+                                   String timestamp) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(PERFORMANCE_UPSERT)) {
+            bindPerformance(pstmt, fill.userId(), fill.symbol(), profitLoss, holdingMillis, timestamp);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void recordTransaction(TradeJournal.Fill fill, long totalAmount, Long profitLoss,
+                                   String timestamp) throws SQLException {
+        String sql = """
+            INSERT INTO transactions (user_id, symbol, transaction_type, quantity, price, total_amount, profit_loss, timestamp)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, fill.userId());
+            pstmt.setString(2, fill.symbol());
+            pstmt.setString(3, fill.side().name());
+            pstmt.setLong(4, fill.quantity());
+            pstmt.setLong(5, fill.price());
+            pstmt.setLong(6, totalAmount);
+            if (profitLoss != null) {
+                pstmt.setLong(7, profitLoss);
+            } else {
+                pstmt.setNull(7, Types.INTEGER);
+            }
+            pstmt.setString(8, timestamp);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Aggiornamento relativo del saldo e dei contatori in un solo statement
+    private void updateUser(long userId, long balanceDelta, boolean profitable) throws SQLException {
+        String sql = """
+            UPDATE users SET
+                virtual_balance = virtual_balance + ?,
+                total_trades = total_trades + 1,
+                profitable_trades = profitable_trades + ?
+            WHERE user_id = ?
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, balanceDelta);
+            pstmt.setInt(2, profitable ? 1 : 0);
+            pstmt.setLong(3, userId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void saveCheckpoint(long seq) throws SQLException {
+        String sql = """
+            INSERT INTO journal_checkpoints (journal, last_seq, updated_at) VALUES (?, ?, ?)
+            ON CONFLICT(journal) DO UPDATE SET last_seq = excluded.last_seq, updated_at = excluded.updated_at
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, journalKey);
+            pstmt.setLong(2, seq);
+            pstmt.setString(3, LocalDateTime.now().toString());
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static String toTimestamp(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).toString();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Errore chiusura proiettore journal: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.tradingbot.database;
+
+import com.tradingbot.money.Money;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Journal append-only dei trade su file mappato in memoria.
+// Ogni append è un record [lunghezza][crc][seq][fill...] seguito da un terminatore a zero;
+// le append concorrenti vengono scritte insieme e rese durevoli con un solo force (group commit).
+// Quando tutti i record sono stati proiettati su SQLite il journal riparte dall'inizio del file.
+public class TradeJournal implements AutoCloseable {
+    private static final int HEADER_SIZE = 16;
+    // Entra nel checksum, così il formato di ogni record si riconosce in lettura.
+    // Versione 1 (senza versione nel checksum): quantità e prezzo in double.
+    private static final long FORMAT_VERSION = 2;
+
+    public enum Side { BUY, SELL }
+
+    // Quantità e prezzo in micro-unità (vedi Money)
+    public record Fill(long userId, String symbol, Side side, long quantity, long price, long timestamp) {
+    }
+
+    public record Entry(long seq, List<Fill> fills) {
+    }
+
+    private record PendingAppend(List<Fill> fills, CompletableFuture<Long> result) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final BlockingQueue<PendingAppend> pending = new LinkedBlockingQueue<>();
+    private final Object progress = new Object();
+
+    private Thread writer;
+    private Consumer<Entry> sink;
+    private int position;
+    private long lastSeq;
+    private volatile long appendedSeq;
+    private volatile long projectedSeq;
+    private volatile boolean running;
+
+    public TradeJournal(Path path, int capacity) throws IOException {
+        this.capacity = capacity;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    // Legge i record ancora da proiettare (seq > checkpoint) lasciati da un'esecuzione precedente
+    public List<Entry> recover(long checkpointSeq) {
+        List<Entry> entries = new ArrayList<>();
+        lastSeq = checkpointSeq;
+        int pos = 0;
+
+        while (pos + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + HEADER_SIZE + length > capacity) {
+                break;
+            }
+            int crc = buffer.getInt(pos + 4);
+            long seq = buffer.getLong(pos + 8);
+            byte[] payload = new byte[length];
+            buffer.get(pos + HEADER_SIZE, payload);
+            List<Fill> fills;
+            if (checksum(seq, payload) == crc) {
+                fills = decode(payload);
+            } else if (legacyChecksum(seq, payload) == crc) {
+                // Scritto prima del passaggio alle micro-unità: confermato ma forse non ancora proiettato
+                fills = decodeLegacy(payload);
+            } else {
+                // Record scritto a metà durante un crash: il resto non è valido
+                break;
+            }
+            if (seq > checkpointSeq) {
+                entries.add(new Entry(seq, fills));
+                lastSeq = Math.max(lastSeq, seq);
+            }
+            pos += HEADER_SIZE + length;
+        }
+
+        appendedSeq = lastSeq;
+        projectedSeq = checkpointSeq;
+        return entries;
+    }
+
+    // Avvia il writer; va chiamato dopo che i record recuperati sono stati proiettati
+    public synchronized void start(Consumer<Entry> sink) {
+        this.sink = sink;
+        projectedSeq = Math.max(projectedSeq, appendedSeq);
+        rewind();
+        running = true;
+        writer = new Thread(this::writeLoop, "trade-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Restituisce il numero di sequenza una volta che i fill sono su disco
+    public CompletableFuture<Long> append(List<Fill> fills) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new IOException("Journal non attivo"));
+            return result;
+        }
+        pending.add(new PendingAppend(fills, result));
+        return result;
+    }
+
+    public void markProjected(long seq) {
+        synchronized (progress) {
+            projectedSeq = Math.max(projectedSeq, seq);
+            progress.notifyAll();
+        }
+    }
+
+    // Attende che tutto ciò che è stato confermato sia visibile nelle tabelle SQLite
+    public boolean awaitProjected(long timeoutMillis) {
+        long target = appendedSeq;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progress) {
+            while (projectedSeq < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    progress.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            pending.drainTo(batch);
+            writeBatch(batch);
+            batch.clear();
+        }
+
+        // Chi è ancora in attesa riceve un errore invece di restare bloccato
+        pending.drainTo(batch);
+        for (PendingAppend append : batch) {
+            append.result().completeExceptionally(new IOException("Journal chiuso"));
+        }
+    }
+
+    private void writeBatch(List<PendingAppend> batch) {
+        List<PendingAppend> written = new ArrayList<>(batch.size());
+        List<Entry> entries = new ArrayList<>(batch.size());
+
+        for (PendingAppend append : batch) {
+            byte[] payload = encode(append.fills());
+            int size = HEADER_SIZE + payload.length;
+            if (size + 4 > capacity) {
+                append.result().completeExceptionally(new IOException("Ordine troppo grande per il journal"));
+                continue;
+            }
+
+            if (position + size + 4 > capacity) {
+                // File pieno: rende durevole quanto scritto, aspetta la proiezione e riparte da capo
+                publish(written, entries);
+                if (!awaitProjected(30_000)) {
+                    append.result().completeExceptionally(new IOException("Proiezione del journal in ritardo"));
+                    continue;
+                }
+                rewind();
+            }
+
+            long seq = lastSeq + 1;
+            buffer.putInt(position + 4, checksum(seq, payload));
+            buffer.putLong(position + 8, seq);
+            buffer.put(position + HEADER_SIZE, payload);
+            buffer.putInt(position + size, 0);
+            // La lunghezza per ultima: il record diventa valido solo quando è completo
+            buffer.putInt(position, payload.length);
+            position += size;
+            lastSeq = seq;
+
+            written.add(append);
+            entries.add(new Entry(seq, append.fills()));
+        }
+
+        publish(written, entries);
+    }
+
+    private void publish(List<PendingAppend> written, List<Entry> entries) {
+        if (written.isEmpty()) {
+            return;
+        }
+        buffer.force();
+        for (int i = 0; i < written.size(); i++) {
+            Entry entry = entries.get(i);
+            appendedSeq = entry.seq();
+            sink.accept(entry);
+            written.get(i).result().complete(entry.seq());
+        }
+        written.clear();
+        entries.clear();
+    }
+
+    // Tutti i record sono già proiettati: si ricomincia a scrivere dall'inizio
+    private void rewind() {
+        buffer.putInt(0, 0);
+        buffer.force();
+        position = 0;
+    }
+
+    private static byte[] encode(List<Fill> fills) {
+        int size = 4;
+        List<byte[]> symbols = new ArrayList<>(fills.size());
+        for (Fill fill : fills) {
+            byte[] symbol = fill.symbol().getBytes(StandardCharsets.UTF_8);
+            symbols.add(symbol);
+            size += 8 + 1 + 8 + 8 + 8 + 2 + symbol.length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(fills.size());
+        for (int i = 0; i < fills.size(); i++) {
+            Fill fill = fills.get(i);
+            byte[] symbol = symbols.get(i);
+            out.putLong(fill.userId());
+            out.put((byte) fill.side().ordinal());
+            out.putLong(fill.quantity());
+            out.putLong(fill.price());
+            out.putLong(fill.timestamp());
+            out.putShort((short) symbol.length);
+            out.put(symbol);
+        }
+        return out.array();
+    }
+
+    private static List<Fill> decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int count = in.getInt();
+        List<Fill> fills = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long userId = in.getLong();
+            Side side = Side.values()[in.get()];
+            long quantity = in.getLong();
+            long price = in.getLong();
+            long timestamp = in.getLong();
+            byte[] symbol = new byte[in.getShort()];
+            in.get(symbol);
+            fills.add(new Fill(userId, new String(symbol, StandardCharsets.UTF_8), side, quantity, price, timestamp));
+        }
+        return fills;
+    }
+
+    private static List<Fill> decodeLegacy(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int count = in.getInt();
+        List<Fill> fills = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long userId = in.getLong();
+            Side side = Side.values()[in.get()];
+            long quantity = Money.of(in.getDouble());
+            long price = Money.of(in.getDouble());
+            long timestamp = in.getLong();
+            byte[] symbol = new byte[in.getShort()];
+            in.get(symbol);
+            fills.add(new Fill(userId, new String(symbol, StandardCharsets.UTF_8), side, quantity, price, timestamp));
+        }
+        return fills;
+    }
+
+    private static int legacyChecksum(long seq, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, seq));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static int checksum(long seq, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(16).putLong(0, FORMAT_VERSION).putLong(8, seq));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Errore chiusura journal: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.tradingbot.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+// Livello freddo dello storico: le transazioni più vecchie di una certa età escono dalla
+// tabella transactions e finiscono in segmenti append-only compressi, così la tabella
+// (e con lei storico, backup e indici) resta piccola qualunque sia l'età della piattaforma.
+// Ogni segmento contiene un blocco compresso per utente; archive_index dice dove si trova
+// il blocco di ogni utente, quindi la lettura apre solo i blocchi che servono.
+// Un segmento viene scritto e reso durevole prima del commit che cancella le righe:
+// dopo un crash resta al più un file orfano, che viene eliminato al giro successivo.
+class TransactionArchive implements AutoCloseable {
+    private static final int MAGIC = 0x54584131; // "TXA1"
+    private static final int BATCH_ROWS = 50_000;
+    private static final String SEGMENT_SUFFIX = ".txa";
+
+    private record IndexEntry(long userId, long offset, int length, int rows, int crc,
+                              String firstTimestamp, String lastTimestamp) {
+    }
+
+    private final Path dir;
+    // Connessione dedicata: lo spostamento è una transazione e non deve includere
+    // le scritture degli altri thread sulla connessione principale
+    private final Connection writer;
+
+    TransactionArchive(String dbPath, Path dir) throws SQLException, IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        this.writer = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        try (Statement stmt = writer.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+    }
+
+    // Sposta nell'archivio le transazioni con timestamp precedente a cutoff; ritorna le righe spostate
+    synchronized int archive(LocalDateTime cutoff) throws SQLException, IOException {
+        removeOrphans();
+        int total = 0;
+        int moved;
+        do {
+            moved = archiveBatch(cutoff.toString());
+            total += moved;
+        } while (moved == BATCH_ROWS);
+        return total;
+    }
+
+    private int archiveBatch(String cutoff) throws SQLException, IOException {
+        // Le nuove transazioni hanno sempre timestamp recenti: fissato l'id massimo,
+        // l'insieme da spostare non cambia mentre si scrive il segmento
+        long maxId;
+        try (PreparedStatement pstmt = writer.prepareStatement("""
+            SELECT MAX(id) FROM (SELECT id FROM transactions WHERE timestamp < ? ORDER BY id LIMIT ?)
+        """)) {
+            pstmt.setString(1, cutoff);
+            pstmt.setInt(2, BATCH_ROWS);
+            ResultSet rs = pstmt.executeQuery();
+            maxId = rs.next() ? rs.getLong(1) : 0;
+            if (maxId == 0) {
+                return 0;
+            }
+        }
+
+        long segmentId;
+        try (Statement stmt = writer.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM archive_segments");
+            segmentId = rs.getLong(1);
+        }
+        String fileName = String.format("segment-%06d%s", segmentId, SEGMENT_SUFFIX);
+        Path tmp = dir.resolve(fileName + ".tmp");
+
+        List<IndexEntry> index = new ArrayList<>();
+        int rows = 0;
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MAGIC);
+            long offset = Integer.BYTES;
+
+            try (PreparedStatement pstmt = writer.prepareStatement("""
+                SELECT user_id, symbol, transaction_type, quantity, price, total_amount, profit_loss, timestamp
+                FROM transactions WHERE timestamp < ? AND id <= ?
+                ORDER BY user_id, timestamp, id
+            """)) {
+                pstmt.setString(1, cutoff);
+                pstmt.setLong(2, maxId);
+                ResultSet rs = pstmt.executeQuery();
+
+                BlockWriter block = null;
+                while (rs.next()) {
+                    long userId = rs.getLong("user_id");
+                    if (block == null || block.userId != userId) {
+                        if (block != null) {
+                            IndexEntry entry = block.finish(out, offset);
+                            index.add(entry);
+                            offset += entry.length();
+                        }
+                        block = new BlockWriter(userId);
+                    }
+                    long profitLoss = rs.getLong("profit_loss");
+                    Long realized = rs.wasNull() ? null : profitLoss;
+                    block.add(new TransactionRecord(rs.getString("symbol"), rs.getString("transaction_type"),
+                            rs.getLong("quantity"), rs.getLong("price"), rs.getLong("total_amount"),
+                            realized, rs.getString("timestamp")));
+                    rows++;
+                }
+                if (block != null) {
+                    index.add(block.finish(out, offset));
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+        // Il rename è durevole solo dopo il sync della directory: prima del DELETE, altrimenti
+        // un crash potrebbe perdere sia il segmento sia le righe cancellate dalla tabella
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+
+        writer.setAutoCommit(false);
+        try {
+            try (PreparedStatement pstmt = writer.prepareStatement("""
+                INSERT INTO archive_segments (id, file, rows, created_at) VALUES (?, ?, ?, ?)
+            """)) {
+                pstmt.setLong(1, segmentId);
+                pstmt.setString(2, fileName);
+                pstmt.setInt(3, rows);
+                pstmt.setString(4, LocalDateTime.now().toString());
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = writer.prepareStatement("""
+                INSERT INTO archive_index (user_id, segment_id, block_offset, block_length, rows, crc, first_ts, last_ts)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """)) {
+                for (IndexEntry entry : index) {
+                    pstmt.setLong(1, entry.userId());
+                    pstmt.setLong(2, segmentId);
+                    pstmt.setLong(3, entry.offset());
+                    pstmt.setInt(4, entry.length());
+                    pstmt.setInt(5, entry.rows());
+                    pstmt.setInt(6, entry.crc());
+                    pstmt.setString(7, entry.firstTimestamp());
+                    pstmt.setString(8, entry.lastTimestamp());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = writer.prepareStatement(
+                    "DELETE FROM transactions WHERE timestamp < ? AND id <= ?")) {
+                pstmt.setString(1, cutoff);
+                pstmt.setLong(2, maxId);
+                pstmt.executeUpdate();
+            }
+            writer.commit();
+        } catch (SQLException e) {
+            writer.rollback();
+            throw e;
+        } finally {
+            writer.setAutoCommit(true);
+        }
+        return rows;
+    }
+
+    // Segmenti scritti da un giro interrotto prima del commit: le righe sono ancora nella tabella
+    private void removeOrphans() throws SQLException, IOException {
+        Set<String> known = new HashSet<>();
+        try (Statement stmt = writer.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT file FROM archive_segments");
+            while (rs.next()) {
+                known.add(rs.getString("file"));
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp") || (name.endsWith(SEGMENT_SUFFIX) && !known.contains(name))) {
+                    Files.delete(file);
+                    System.out.println("🗄️ Archivio: eliminato il segmento incompleto " + name);
+                }
+            }
+        }
+    }
+
+    // Le transazioni archiviate di un utente, dalla più recente, al massimo limit.
+    // Come in forEach, la connessione è quella della lettura in corso
+    List<TransactionRecord> read(Connection snapshot, long userId, int limit) throws SQLException, IOException {
+        List<TransactionRecord> result = new ArrayList<>();
+        // Un segmento più recente contiene sempre transazioni più recenti dello stesso utente
+        try (PreparedStatement pstmt = snapshot.prepareStatement("""
+            SELECT s.file, i.block_offset, i.block_length, i.rows, i.crc
+            FROM archive_index i JOIN archive_segments s ON s.id = i.segment_id
+            WHERE i.user_id = ? ORDER BY i.segment_id DESC
+        """)) {
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next() && result.size() < limit) {
+                List<TransactionRecord> block = readBlock(rs.getString("file"), rs.getLong("block_offset"),
+                        rs.getInt("block_length"), rs.getInt("rows"), rs.getInt("crc"));
+                for (int i = block.size() - 1; i >= 0 && result.size() < limit; i--) {
+                    result.add(block.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Tutte le transazioni archiviate di un utente in ordine cronologico, un blocco alla volta.
+    // La connessione è quella della lettura in corso: indice e tabella vanno letti nello stesso snapshot
+    void forEach(Connection snapshot, long userId, DatabaseManager.RowSink<TransactionRecord> sink)
+            throws SQLException, IOException {
+        try (PreparedStatement pstmt = snapshot.prepareStatement("""
+            SELECT s.file, i.block_offset, i.block_length, i.rows, i.crc
+            FROM archive_index i JOIN archive_segments s ON s.id = i.segment_id
+            WHERE i.user_id = ? ORDER BY i.segment_id
+        """)) {
+            pstmt.setLong(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                for (TransactionRecord record : readBlock(rs.getString("file"), rs.getLong("block_offset"),
+                        rs.getInt("block_length"), rs.getInt("rows"), rs.getInt("crc"))) {
+                    sink.accept(record);
+                }
+            }
+        }
+    }
+
+    private List<TransactionRecord> readBlock(String file, long offset, int length, int rows, int crc)
+            throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(dir.resolve(file), StandardOpenOption.READ)) {
+            while (compressed.hasRemaining()) {
+                if (channel.read(compressed, offset + compressed.position()) < 0) {
+                    throw new IOException("Segmento " + file + " troncato");
+                }
+            }
+        }
+        byte[] bytes = compressed.array();
+        if (checksum(bytes, bytes.length) != crc) {
+            throw new IOException("Blocco corrotto nel segmento " + file + " (offset " + offset + ")");
+        }
+
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(length * 4);
+        try {
+            inflater.setInput(bytes);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IOException("Blocco incompleto nel segmento " + file);
+                }
+                raw.write(chunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Blocco non valido nel segmento " + file + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw.toByteArray()));
+        List<TransactionRecord> records = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String symbol = in.readUTF();
+            String type = in.readUTF();
+            long quantity = in.readLong();
+            long price = in.readLong();
+            long totalAmount = in.readLong();
+            Long profitLoss = in.readBoolean() ? in.readLong() : null;
+            records.add(new TransactionRecord(symbol, type, quantity, price, totalAmount, profitLoss, in.readUTF()));
+        }
+        return records;
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    // Righe di un utente (già in ordine cronologico) compresse in un unico blocco
+    private static class BlockWriter {
+        final long userId;
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        final DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(compressed, deflater));
+        int rows;
+        String firstTimestamp;
+        String lastTimestamp;
+
+        BlockWriter(long userId) {
+            this.userId = userId;
+        }
+
+        void add(TransactionRecord record) throws IOException {
+            data.writeUTF(record.symbol());
+            data.writeUTF(record.type());
+            data.writeLong(record.quantity());
+            data.writeLong(record.price());
+            data.writeLong(record.totalAmount());
+            data.writeBoolean(record.profitLoss() != null);
+            if (record.profitLoss() != null) {
+                data.writeLong(record.profitLoss());
+            }
+            data.writeUTF(record.timestamp());
+            if (rows++ == 0) {
+                firstTimestamp = record.timestamp();
+            }
+            lastTimestamp = record.timestamp();
+        }
+
+        IndexEntry finish(OutputStream out, long offset) throws IOException {
+            data.close();
+            deflater.end();
+            byte[] bytes = compressed.toByteArray();
+            out.write(bytes);
+            return new IndexEntry(userId, offset, bytes.length, rows, checksum(bytes, bytes.length),
+                    firstTimestamp, lastTimestamp);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (SQLException e) {
+            System.err.println("Errore chiusura archivio transazioni: " + e.getMessage());
+        }
+    }
+}
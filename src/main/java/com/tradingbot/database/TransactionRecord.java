@@ -0,0 +1,7 @@
+package com.tradingbot.database;
+
+// Una riga dello storico, dalla tabella transactions o dall'archivio.
+// Importi e quantità in micro-unità; profitLoss null per gli acquisti.
+public record TransactionRecord(String symbol, String type, long quantity, long price, long totalAmount,
+                                Long profitLoss, String timestamp) {
+}
@@ -0,0 +1,18 @@
+package com.tradingbot.fx;
+
+import com.tradingbot.money.Money;
+
+// Valuta in cui mostrare gli importi a un utente, con il cambio da USD già risolto:
+// convertire un intero portfolio è una moltiplicazione per importo, senza chiamate API
+public record DisplayCurrency(String code, String symbol, double rateFromUsd, int decimals) {
+    public static final DisplayCurrency USD = new DisplayCurrency("USD", "$", 1.0, 2);
+
+    public long convert(long usdMicros) {
+        return rateFromUsd == 1.0 ? usdMicros : Math.round(usdMicros * rateFromUsd);
+    }
+
+    // Importo in USD (micro-unità) nella valuta dell'utente, es. "€1234.50"
+    public String format(long usdMicros) {
+        return symbol + String.format("%." + decimals + "f", Money.toDouble(convert(usdMicros)));
+    }
+}
@@ -0,0 +1,150 @@
+package com.tradingbot.fx;
+
+import com.tradingbot.api.AlphaVantageClient;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.money.Money;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Cambi tra le valute supportate, in una matrice n x n su un solo array.
+// Si scaricano solo le n-1 coppie USD -> valuta: ogni incrocio X -> Y si ricava
+// per triangolazione (USD->Y / USD->X). La matrice viene ricostruita a intervalli
+// e pubblicata come snapshot immutabile: le richieste la leggono senza lock e senza rete.
+public class FxRates {
+    private static final String BASE = "USD";
+    private static FxRates instance;
+
+    private final AlphaVantageClient api;
+    private final String[] codes;
+    private volatile Matrix matrix;
+    private ScheduledExecutorService scheduler;
+
+    // rates[i * n + j] = unità di codes[j] per un'unità di codes[i]; NaN se il cambio non è noto
+    private record Matrix(double[] rates, long updatedAt) {
+    }
+
+    private FxRates() {
+        this.api = AlphaVantageClient.getInstance();
+        // USD è sempre la prima: è la valuta in cui sono registrati tutti gli importi
+        Set<String> unique = new LinkedHashSet<>();
+        unique.add(BASE);
+        unique.addAll(ConfigManager.getInstance().getFxCurrencies());
+        this.codes = unique.toArray(String[]::new);
+        double[] rates = new double[codes.length * codes.length];
+        Arrays.fill(rates, Double.NaN);
+        for (int i = 0; i < codes.length; i++) {
+            rates[i * codes.length + i] = 1.0;
+        }
+        this.matrix = new Matrix(rates, 0);
+    }
+
+    public static synchronized FxRates getInstance() {
+        if (instance == null) {
+            instance = new FxRates();
+        }
+        return instance;
+    }
+
+    public synchronized void start() {
+        int minutes = ConfigManager.getInstance().getFxRefreshMinutes();
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fx-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, minutes, TimeUnit.MINUTES);
+    }
+
+    public List<String> supported() {
+        return List.of(codes);
+    }
+
+    public boolean isSupported(String code) {
+        return indexOf(code) >= 0;
+    }
+
+    // Cambio da una valuta all'altra; NaN se non ancora disponibile
+    public double rate(String from, String to) {
+        int i = indexOf(from);
+        int j = indexOf(to);
+        return i < 0 || j < 0 ? Double.NaN : matrix.rates()[i * codes.length + j];
+    }
+
+    public long updatedAt() {
+        return matrix.updatedAt();
+    }
+
+    // Valuta di visualizzazione; USD se il cambio non è (ancora) disponibile
+    public DisplayCurrency display(String code) {
+        double rate = rate(BASE, code);
+        if (code == null || code.equals(BASE) || Double.isNaN(rate)) {
+            return DisplayCurrency.USD;
+        }
+        return new DisplayCurrency(code, symbolOf(code), rate, decimalsOf(code));
+    }
+
+    void refresh() {
+        int n = codes.length;
+        double[] previous = matrix.rates();
+        double[] fromUsd = new double[n];
+        fromUsd[0] = 1.0;
+        int fetched = 0;
+        for (int j = 1; j < n; j++) {
+            try {
+                fromUsd[j] = Money.toDouble(api.getExchangeRate(BASE, codes[j]));
+                fetched++;
+            } catch (IOException | NumberFormatException e) {
+                // Si tiene il cambio precedente: meglio un cambio di un'ora fa che nessuno
+                fromUsd[j] = previous[j];
+                System.err.println("Errore cambio " + BASE + "/" + codes[j] + ": " + e.getMessage());
+            }
+        }
+        if (fetched == 0) {
+            return;
+        }
+        double[] rates = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                rates[i * n + j] = i == j ? 1.0 : fromUsd[j] / fromUsd[i];
+            }
+        }
+        matrix = new Matrix(rates, System.currentTimeMillis());
+    }
+
+    private int indexOf(String code) {
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i].equals(code)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String symbolOf(String code) {
+        return switch (code) {
+            case "EUR" -> "€";
+            case "GBP" -> "£";
+            case "JPY" -> "¥";
+            default -> code + " ";
+        };
+    }
+
+    private static int decimalsOf(String code) {
+        try {
+            return Math.max(0, Currency.getInstance(code).getDefaultFractionDigits());
+        } catch (IllegalArgumentException e) {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.tradingbot.leaderboard;
+
+import com.tradingbot.api.PriceListener;
+import com.tradingbot.money.Money;
+import com.tradingbot.symbols.SymbolSlots;
+import com.tradingbot.symbols.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Classifica degli utenti per equity (cash + posizioni al prezzo di mercato),
+// aggiornata in modo incrementale a ogni trade e a ogni nuovo prezzo.
+// Tutti gli importi sono in micro-unità (vedi Money).
+public class Leaderboard implements PriceListener {
+    private static Leaderboard instance;
+
+    private final Map<Long, UserEquity> users = new HashMap<>();
+    private final SymbolTable ids = SymbolTable.getInstance();
+    private final SymbolSlots<SymbolMark> marks = new SymbolSlots<>();
+    private final RankTree ranking = new RankTree();
+
+    private static class UserEquity {
+        String name;
+        long cash;
+        long equity;
+    }
+
+    // Prezzo di riferimento di un simbolo e quantità detenuta da ciascun utente.
+    // Finché non arriva un prezzo (quotazione o trade) il simbolo non ha riferimento:
+    // ogni posizione caricata dal database vale il suo costo, in unmarkedValues.
+    private static class SymbolMark {
+        long price;
+        boolean marked;
+        final Map<Long, Long> holders = new HashMap<>();
+        final Map<Long, Long> unmarkedValues = new HashMap<>();
+    }
+
+    public record Entry(int rank, long userId, String name, long equity) {
+    }
+
+    // Cash e quantità per simbolo (in ordine alfabetico) di un utente
+    public record Holdings(long cash, Map<String, Long> positions) {
+    }
+
+    private Leaderboard() {
+    }
+
+    public static synchronized Leaderboard getInstance() {
+        if (instance == null) {
+            instance = new Leaderboard();
+        }
+        return instance;
+    }
+
+    // Registra un utente se non è già in classifica
+    public synchronized void registerUser(long userId, String name, long initialCash) {
+        UserEquity user = users.get(userId);
+        if (user != null) {
+            if (name != null) {
+                user.name = name;
+            }
+            return;
+        }
+        user = new UserEquity();
+        user.name = name;
+        user.cash = initialCash;
+        user.equity = initialCash;
+        users.put(userId, user);
+        ranking.insert(userId, user.equity);
+    }
+
+    public synchronized void setCash(long userId, long cash) {
+        UserEquity user = users.get(userId);
+        if (user == null) {
+            registerUser(userId, null, cash);
+            return;
+        }
+        setEquity(userId, user, user.equity + cash - user.cash);
+        user.cash = cash;
+    }
+
+    public synchronized void addCash(long userId, long delta) {
+        UserEquity user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        user.cash += delta;
+        setEquity(userId, user, user.equity + delta);
+    }
+
+    // Variazione di quantità su una posizione; il prezzo di esecuzione diventa il nuovo riferimento
+    public synchronized void addPosition(long userId, String symbol, long quantityDelta, long price) {
+        UserEquity user = users.get(userId);
+        if (user == null) {
+            return;
+        }
+        SymbolMark mark = marks.computeIfAbsent(ids.id(symbol), id -> new SymbolMark());
+        remark(mark, price);
+
+        long quantity = mark.holders.getOrDefault(userId, 0L) + quantityDelta;
+        if (quantity <= 0) {
+            mark.holders.remove(userId);
+        } else {
+            mark.holders.put(userId, quantity);
+        }
+        setEquity(userId, user, user.equity + Money.mul(quantityDelta, mark.price));
+    }
+
+    // Posizione caricata all'avvio: senza un prezzo di mercato vale al prezzo medio di carico dell'utente
+    public synchronized void loadPosition(long userId, String symbol, long quantity, long avgBuyPrice) {
+        UserEquity user = users.get(userId);
+        if (user == null || quantity <= 0) {
+            return;
+        }
+        SymbolMark mark = marks.computeIfAbsent(ids.id(symbol), id -> new SymbolMark());
+        mark.holders.merge(userId, quantity, Long::sum);
+        long value = Money.mul(quantity, mark.marked ? mark.price : avgBuyPrice);
+        if (!mark.marked) {
+            mark.unmarkedValues.merge(userId, value, Long::sum);
+        }
+        setEquity(userId, user, user.equity + value);
+    }
+
+    // Svuota utenti e posizioni prima di ricaricarli dal database; i prezzi di riferimento restano
+    public synchronized void reset() {
+        users.clear();
+        ranking.clear();
+        for (int id = 0; id < ids.size(); id++) {
+            SymbolMark mark = marks.get(id);
+            if (mark != null) {
+                mark.holders.clear();
+                mark.unmarkedValues.clear();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onPriceUpdate(int symbolId, long price) {
+        SymbolMark mark = marks.get(symbolId);
+        if (mark != null) {
+            remark(mark, price);
+        }
+    }
+
+    public synchronized int getRank(long userId) {
+        UserEquity user = users.get(userId);
+        return user == null ? -1 : ranking.rank(userId, user.equity);
+    }
+
+    public synchronized int size() {
+        return ranking.size();
+    }
+
+    public synchronized List<Entry> top(int k) {
+        List<Long> ids = ranking.top(k);
+        List<Entry> result = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            long userId = ids.get(i);
+            UserEquity user = users.get(userId);
+            result.add(new Entry(i + 1, userId, user.name, user.equity));
+        }
+        return result;
+    }
+
+    public synchronized long getEquity(long userId) {
+        UserEquity user = users.get(userId);
+        return user == null ? 0 : user.equity;
+    }
+
+    // Copia dalla memoria, senza database: null se l'utente non è in classifica
+    public synchronized Holdings getHoldings(long userId) {
+        UserEquity user = users.get(userId);
+        if (user == null) {
+            return null;
+        }
+        Map<String, Long> positions = new TreeMap<>();
+        for (int id = 0; id < ids.size(); id++) {
+            SymbolMark mark = marks.get(id);
+            Long quantity = mark != null ? mark.holders.get(userId) : null;
+            if (quantity != null) {
+                positions.put(ids.name(id), quantity);
+            }
+        }
+        return new Holdings(user.cash, positions);
+    }
+
+    // Rivaluta solo chi detiene il simbolo, non tutti gli utenti
+    private void remark(SymbolMark mark, long price) {
+        if (!mark.marked) {
+            // Primo prezzo: dal costo di carico al valore di mercato
+            mark.marked = true;
+            mark.price = price;
+            for (Map.Entry<Long, Long> holder : mark.holders.entrySet()) {
+                UserEquity user = users.get(holder.getKey());
+                if (user != null) {
+                    long value = Money.mul(holder.getValue(), price);
+                    setEquity(holder.getKey(), user,
+                            user.equity + value - mark.unmarkedValues.getOrDefault(holder.getKey(), 0L));
+                }
+            }
+            mark.unmarkedValues.clear();
+            return;
+        }
+        long delta = price - mark.price;
+        mark.price = price;
+        if (delta == 0) {
+            return;
+        }
+        for (Map.Entry<Long, Long> holder : mark.holders.entrySet()) {
+            UserEquity user = users.get(holder.getKey());
+            if (user != null) {
+                setEquity(holder.getKey(), user, user.equity + Money.mul(holder.getValue(), delta));
+            }
+        }
+    }
+
+    private void setEquity(long userId, UserEquity user, long equity) {
+        ranking.remove(userId, user.equity);
+        user.equity = equity;
+        ranking.insert(userId, equity);
+    }
+}
@@ -0,0 +1,156 @@
+package com.tradingbot.leaderboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Treap ordinato per equity decrescente (a parità, user id crescente) con la
+// dimensione dei sottoalberi: inserimento, rimozione e rank in O(log n),
+// lettura dei primi K in O(log n + K).
+class RankTree {
+
+    private static class Node {
+        final long userId;
+        final long equity;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(long userId, long equity) {
+            this.userId = userId;
+            this.equity = equity;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    private Node root;
+
+    int size() {
+        return size(root);
+    }
+
+    void insert(long userId, long equity) {
+        root = insert(root, new Node(userId, equity));
+    }
+
+    void remove(long userId, long equity) {
+        root = remove(root, userId, equity);
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    // Posizione 1-based dell'elemento (numero di elementi che lo precedono + 1)
+    int rank(long userId, long equity) {
+        int before = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = compare(userId, equity, node);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                before += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return before + size(node.left) + 1;
+            }
+        }
+        return -1;
+    }
+
+    // I primi k user id in ordine di classifica
+    List<Long> top(int k) {
+        List<Long> result = new ArrayList<>(Math.min(k, size()));
+        collect(root, k, result);
+        return result;
+    }
+
+    private static void collect(Node node, int k, List<Long> out) {
+        if (node == null || out.size() >= k) {
+            return;
+        }
+        collect(node.left, k, out);
+        if (out.size() < k) {
+            out.add(node.userId);
+            collect(node.right, k, out);
+        }
+    }
+
+    private static int compare(long userId, long equity, Node node) {
+        int cmp = Long.compare(node.equity, equity);
+        return cmp != 0 ? cmp : Long.compare(userId, node.userId);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static Node insert(Node node, Node item) {
+        if (node == null) {
+            return item;
+        }
+        if (compare(item.userId, item.equity, node) < 0) {
+            node.left = insert(node.left, item);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, item);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        return update(node);
+    }
+
+    private static Node remove(Node node, long userId, long equity) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(userId, equity, node);
+        if (cmp < 0) {
+            node.left = remove(node.left, userId, equity);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, userId, equity);
+        } else {
+            return merge(node.left, node.right);
+        }
+        return update(node);
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = update(node);
+        return update(pivot);
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = update(node);
+        return update(pivot);
+    }
+}
@@ -0,0 +1,164 @@
+package com.tradingbot.money;
+
+// Importi, prezzi e quantità in virgola fissa: un long in micro-unità (1 = 0.000001).
+// Tutta l'aritmetica è intera e senza allocazioni; i double servono solo per la visualizzazione.
+public final class Money {
+    public static final long SCALE = 1_000_000L;
+    private static final int DECIMALS = 6;
+
+    private Money() {
+    }
+
+    // Conversione da valori esterni già in double (es. numeri JSON)
+    public static long of(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long micros) {
+        return (double) micros / SCALE;
+    }
+
+    // Legge un decimale in formato macchina (API, configurazione, file) come "123.4500"
+    // senza passare da double. Oltre il massimo di un long: NumberFormatException,
+    // come per ogni altro testo non valido.
+    public static long parse(String text) {
+        return parse(text, false);
+    }
+
+    // Come parse, per i numeri scritti dagli utenti ("12.5" o "-5,5"). Un solo separatore
+    // decimale, punto o virgola; niente separatori delle migliaia: "1,000" o "1.000" (mille o uno?)
+    // sono ambigui e vengono rifiutati, come ogni separatore seguito da tre cifre o da più di tre
+    // zeri ("1,0000").
+    public static long parseInput(String text) {
+        return parse(text, true);
+    }
+
+    private static long parse(String text, boolean rejectAmbiguous) {
+        try {
+            return parseChecked(text, rejectAmbiguous);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Numero troppo grande: " + text.trim());
+        }
+    }
+
+    private static long parseChecked(String text, boolean rejectAmbiguous) {
+        String s = text.trim();
+        int len = s.length();
+        if (len == 0) {
+            throw new NumberFormatException("Numero vuoto");
+        }
+
+        int i = 0;
+        boolean negative = false;
+        if (s.charAt(0) == '-' || s.charAt(0) == '+') {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+
+        long units = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        boolean roundUp = false;
+
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '.' || c == ',') {
+                if (seenPoint) {
+                    throw new NumberFormatException("Numero non valido: " + text);
+                }
+                if (rejectAmbiguous && ambiguous(s, i + 1)) {
+                    throw new NumberFormatException("Numero ambiguo: " + text
+                            + " (niente separatore delle migliaia: scrivi 1000 oppure 1.5)");
+                }
+                seenPoint = true;
+            } else if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (!seenPoint) {
+                    units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+                } else if (fractionDigits < DECIMALS) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits == DECIMALS) {
+                    // Arrotonda alla sesta cifra decimale
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else {
+                throw new NumberFormatException("Numero non valido: " + text);
+            }
+        }
+        if (!seenDigit) {
+            throw new NumberFormatException("Numero non valido: " + text);
+        }
+
+        for (int d = Math.min(fractionDigits, DECIMALS); d < DECIMALS; d++) {
+            fraction *= 10;
+        }
+        long micros = Math.addExact(Math.multiplyExact(units, SCALE), fraction + (roundUp ? 1 : 0));
+        return negative ? -micros : micros;
+    }
+
+    // Parte decimale che può essere un gruppo delle migliaia: tre cifre, o più di tre zeri
+    private static boolean ambiguous(String s, int from) {
+        int digits = s.length() - from;
+        if (digits == 3) {
+            return true;
+        }
+        if (digits < 3) {
+            return false;
+        }
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Valore esatto senza zeri finali (es. 1500000 -> "1.5"), per file esportati e formati macchina
+    public static String toPlainString(long micros) {
+        long units = micros / SCALE;
+        long fraction = Math.abs(micros % SCALE);
+        String sign = micros < 0 && units == 0 ? "-" : "";
+        if (fraction == 0) {
+            return sign + units;
+        }
+        int digits = DECIMALS;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        String text = Long.toString(fraction);
+        return sign + units + "." + "0".repeat(digits - text.length()) + text;
+    }
+
+    // a * b con entrambi in micro-unità (es. quantità * prezzo), arrotondato al micro
+    public static long mul(long a, long b) {
+        long whole = Math.multiplyExact(a / SCALE, b);
+        long part = divRound(Math.multiplyExact(a % SCALE, b), SCALE);
+        return Math.addExact(whole, part);
+    }
+
+    // a / b con entrambi in micro-unità (es. investito / quantità), arrotondato al micro
+    public static long div(long a, long b) {
+        long whole = Math.multiplyExact(a / b, SCALE);
+        long part = divRound(Math.multiplyExact(a % b, SCALE), b);
+        return Math.addExact(whole, part);
+    }
+
+    // Rapporto percentuale tra due importi, solo per la visualizzazione
+    public static double percent(long part, long total) {
+        return total != 0 ? (double) part * 100.0 / total : 0.0;
+    }
+
+    private static long divRound(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (Math.abs(remainder) * 2 >= Math.abs(divisor)) {
+            quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+}
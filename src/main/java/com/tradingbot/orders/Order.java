@@ -0,0 +1,23 @@
+package com.tradingbot.orders;
+
+import com.tradingbot.database.TradeJournal;
+import com.tradingbot.money.Money;
+
+// Ordine condizionato in attesa che il prezzo raggiunga la soglia (quantità e prezzo in micro-unità)
+public record Order(long id, long userId, long chatId, String symbol, TradeJournal.Side side,
+                    Type type, long quantity, long triggerPrice) {
+
+    public enum Type { LIMIT, STOP }
+
+    // Limit in acquisto e stop in vendita scattano quando il prezzo scende alla soglia,
+    // limit in vendita e stop in acquisto quando sale
+    boolean triggersOnFall() {
+        return (type == Type.LIMIT) == (side == TradeJournal.Side.BUY);
+    }
+
+    public String describe() {
+        String action = side == TradeJournal.Side.BUY ? "COMPRA" : "VENDI";
+        return String.format("#%d %s %s %.2f %s @ $%.2f", id, type, action,
+                Money.toDouble(quantity), symbol, Money.toDouble(triggerPrice));
+    }
+}
@@ -0,0 +1,44 @@
+package com.tradingbot.orders;
+
+import com.tradingbot.database.TradeJournal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Book di un simbolo: ordini in acquisto (bids) e in vendita (asks) tenuti separati,
+// ciascuno diviso tra limit e stop perché scattano in direzioni opposte
+class OrderBook {
+    private final PriceLevels buyLimits = new PriceLevels(true);
+    private final PriceLevels buyStops = new PriceLevels(false);
+    private final PriceLevels sellLimits = new PriceLevels(false);
+    private final PriceLevels sellStops = new PriceLevels(true);
+
+    void add(Order order) {
+        levelsFor(order).add(order);
+    }
+
+    boolean remove(Order order) {
+        return levelsFor(order).remove(order);
+    }
+
+    boolean isEmpty() {
+        return buyLimits.size() + buyStops.size() + sellLimits.size() + sellStops.size() == 0;
+    }
+
+    // Prima le vendite, così la liquidità incassata è disponibile per gli acquisti dello stesso lotto
+    List<Order> pollTriggered(long price) {
+        List<Order> triggered = new ArrayList<>();
+        sellStops.pollTriggered(price, triggered);
+        sellLimits.pollTriggered(price, triggered);
+        buyLimits.pollTriggered(price, triggered);
+        buyStops.pollTriggered(price, triggered);
+        return triggered;
+    }
+
+    private PriceLevels levelsFor(Order order) {
+        if (order.side() == TradeJournal.Side.BUY) {
+            return order.type() == Order.Type.LIMIT ? buyLimits : buyStops;
+        }
+        return order.type() == Order.Type.LIMIT ? sellLimits : sellStops;
+    }
+}
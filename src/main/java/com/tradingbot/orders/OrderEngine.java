@@ -0,0 +1,188 @@
+package com.tradingbot.orders;
+
+import com.tradingbot.api.PriceListener;
+import com.tradingbot.cluster.Placement;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.database.DatabaseManager;
+import com.tradingbot.database.TradeJournal;
+import com.tradingbot.money.Money;
+import com.tradingbot.symbols.SymbolSlots;
+import com.tradingbot.symbols.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+// Motore degli ordini limit e stop: gli ordini aperti stanno in book per simbolo
+// e vengono confrontati con ogni nuova quotazione, senza chiamate API aggiuntive.
+// Nel cluster ogni worker carica solo gli ordini degli utenti di cui è proprietario;
+// un ordine si esegue solo dopo averlo reclamato sul database (OPEN -> EXECUTING),
+// quindi anche se due worker lo hanno in memoria parte una volta sola.
+public class OrderEngine implements PriceListener {
+    private static OrderEngine instance;
+
+    private final DatabaseManager db;
+    private final SymbolTable ids = SymbolTable.getInstance();
+    // Book per id di simbolo: ogni quotazione arriva già con il suo id
+    private final SymbolSlots<OrderBook> books = new SymbolSlots<>();
+    private final Map<Long, Order> openOrders = new HashMap<>();
+
+    // L'esecuzione passa dal journal: si tiene fuori dal thread che ha scaricato la quotazione
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "order-engine");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile BiConsumer<Long, String> notifier = (chatId, text) -> { };
+
+    private OrderEngine() {
+        this.db = DatabaseManager.getInstance();
+        ConfigManager config = ConfigManager.getInstance();
+        int workerIndex = config.getClusterWorkerIndex();
+        int workers = config.getClusterWorkers();
+        for (Order order : db.loadOpenOrders()) {
+            if (workerIndex < 0 || Placement.owner(order.userId(), workers) == workerIndex) {
+                index(order);
+            }
+        }
+    }
+
+    public static synchronized OrderEngine getInstance() {
+        if (instance == null) {
+            instance = new OrderEngine();
+        }
+        return instance;
+    }
+
+    // Usato per avvisare l'utente quando un ordine viene eseguito o rifiutato
+    public void setNotifier(BiConsumer<Long, String> notifier) {
+        this.notifier = notifier;
+    }
+
+    public Order place(long userId, long chatId, String symbol, TradeJournal.Side side,
+                       Order.Type type, long quantity, long triggerPrice) {
+        long id = db.insertOrder(userId, chatId, symbol, side.name(), type.name(), quantity, triggerPrice);
+        if (id <= 0) {
+            return null;
+        }
+        Order order = new Order(id, userId, chatId, symbol, side, type, quantity, triggerPrice);
+        synchronized (this) {
+            index(order);
+        }
+        return order;
+    }
+
+    // L'ordine può essere nel book di un altro worker: decide il database
+    public boolean cancel(long userId, long orderId) {
+        synchronized (this) {
+            Order order = openOrders.get(orderId);
+            if (order != null && order.userId() == userId) {
+                unindex(order);
+            }
+        }
+        return db.cancelOrder(userId, orderId);
+    }
+
+    public synchronized List<Order> getOpenOrders(long userId) {
+        List<Order> result = new ArrayList<>();
+        for (Order order : openOrders.values()) {
+            if (order.userId() == userId) {
+                result.add(order);
+            }
+        }
+        result.sort(Comparator.comparingLong(Order::id));
+        return result;
+    }
+
+    @Override
+    public void onPriceUpdate(int symbolId, long price) {
+        List<Order> triggered;
+        synchronized (this) {
+            OrderBook book = books.get(symbolId);
+            if (book == null) {
+                return;
+            }
+            triggered = book.pollTriggered(price);
+            if (triggered.isEmpty()) {
+                return;
+            }
+            for (Order order : triggered) {
+                openOrders.remove(order.id());
+            }
+            if (book.isEmpty()) {
+                books.set(symbolId, null);
+            }
+        }
+        executor.execute(() -> execute(triggered, price));
+    }
+
+    // Tutti gli ordini scattati sulla stessa quotazione vanno sul journal con una sola append
+    private void execute(List<Order> triggered, long price) {
+        // Già eseguito da un altro worker o annullato: si scarta in silenzio
+        List<Order> claimed = new ArrayList<>(triggered.size());
+        for (Order order : triggered) {
+            if (db.updateOrderStatus(order.id(), "OPEN", "EXECUTING", null)) {
+                claimed.add(order);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<TradeJournal.Fill> fills = new ArrayList<>(claimed.size());
+        for (Order order : claimed) {
+            fills.add(new TradeJournal.Fill(order.userId(), order.symbol(), order.side(),
+                    order.quantity(), price, now));
+        }
+
+        boolean[] accepted = db.executeFills(fills, false);
+
+        for (int i = 0; i < claimed.size(); i++) {
+            Order order = claimed.get(i);
+            if (accepted[i]) {
+                db.updateOrderStatus(order.id(), "EXECUTING", "FILLED", price);
+                notifier.accept(order.chatId(), String.format("""
+                        ✅ ORDINE ESEGUITO!
+
+                        📋 %s
+                        💵 Prezzo di esecuzione: $%.2f
+                        💰 Totale: $%.2f
+                        """, order.describe(), Money.toDouble(price),
+                        Money.toDouble(Money.mul(order.quantity(), price))));
+            } else {
+                db.updateOrderStatus(order.id(), "EXECUTING", "REJECTED", price);
+                String reason = order.side() == TradeJournal.Side.BUY ? "fondi insufficienti" : "azioni insufficienti";
+                notifier.accept(order.chatId(), String.format("""
+                        ❌ ORDINE RIFIUTATO!
+
+                        📋 %s
+                        ⚠️ Motivo: %s al prezzo di $%.2f
+                        """, order.describe(), reason, Money.toDouble(price)));
+            }
+        }
+    }
+
+    private void index(Order order) {
+        openOrders.put(order.id(), order);
+        books.computeIfAbsent(ids.id(order.symbol()), id -> new OrderBook()).add(order);
+    }
+
+    private void unindex(Order order) {
+        openOrders.remove(order.id());
+        int symbolId = ids.find(order.symbol());
+        OrderBook book = books.get(symbolId);
+        if (book != null) {
+            book.remove(order);
+            if (book.isEmpty()) {
+                books.set(symbolId, null);
+            }
+        }
+    }
+}
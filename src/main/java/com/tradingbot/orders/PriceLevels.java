@@ -0,0 +1,60 @@
+package com.tradingbot.orders;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Livelli di prezzo ordinati in modo che gli ordini scattati siano sempre in testa:
+// la ricerca costa O(log n) e l'estrazione O(k) sugli ordini effettivamente eseguiti.
+class PriceLevels {
+    private final TreeMap<Long, ArrayDeque<Order>> levels;
+    private int size;
+
+    // triggersOnFall: scatta quando il prezzo scende alla soglia (testa = soglia più alta)
+    PriceLevels(boolean triggersOnFall) {
+        this.levels = new TreeMap<>(triggersOnFall ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder());
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(Order order) {
+        levels.computeIfAbsent(order.triggerPrice(), p -> new ArrayDeque<>()).addLast(order);
+        size++;
+    }
+
+    boolean remove(Order order) {
+        ArrayDeque<Order> level = levels.get(order.triggerPrice());
+        if (level == null) {
+            return false;
+        }
+        Iterator<Order> it = level.iterator();
+        while (it.hasNext()) {
+            if (it.next().id() == order.id()) {
+                it.remove();
+                size--;
+                if (level.isEmpty()) {
+                    levels.remove(order.triggerPrice());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Rimuove e restituisce, in ordine di priorità, tutti gli ordini scattati al prezzo dato
+    List<Order> pollTriggered(long price, List<Order> out) {
+        NavigableMap<Long, ArrayDeque<Order>> triggered = levels.headMap(price, true);
+        for (Map.Entry<Long, ArrayDeque<Order>> level : triggered.entrySet()) {
+            out.addAll(level.getValue());
+            size -= level.getValue().size();
+        }
+        triggered.clear();
+        return out;
+    }
+}
@@ -0,0 +1,96 @@
+package com.tradingbot.symbols;
+
+import java.util.Arrays;
+
+// Mappa int -> long a indirizzamento aperto (sondaggio lineare) per chiavi non negative,
+// tipicamente id di simbolo: nessun Integer o Long allocato per inserimento o lettura.
+// Non thread-safe: si usa per valori locali a una richiesta (es. prezzi per la valutazione).
+public final class IntLongMap {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    public IntLongMap() {
+        this(8);
+    }
+
+    public IntLongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    public void put(int key, long value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Chiave negativa: " + key);
+        }
+        int i = indexOf(key);
+        if (keys[i] == FREE) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+                i = indexOf(key);
+            }
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    public long get(int key, long missing) {
+        if (key < 0) {
+            return missing;
+        }
+        int i = indexOf(key);
+        return keys[i] == FREE ? missing : values[i];
+    }
+
+    public boolean containsKey(int key) {
+        return key >= 0 && keys[indexOf(key)] != FREE;
+    }
+
+    // Copia indipendente, stessa capacità
+    public IntLongMap copy() {
+        IntLongMap copy = new IntLongMap();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Posizione della chiave o del primo slot libero dove andrebbe inserita
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (keys[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != FREE) {
+                int i = indexOf(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.tradingbot.symbols;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+// Un valore per id di simbolo (vedi SymbolTable): un array indicizzato direttamente,
+// senza hash né oggetti chiave. Letture senza lock; scritture e crescita serializzate,
+// così un valore scritto durante una crescita non va perso.
+public final class SymbolSlots<V> {
+    private volatile AtomicReferenceArray<V> slots = new AtomicReferenceArray<>(64);
+
+    // null se assente o per id negativo (simbolo sconosciuto, vedi SymbolTable.find)
+    public V get(int id) {
+        AtomicReferenceArray<V> current = slots;
+        return id >= 0 && id < current.length() ? current.get(id) : null;
+    }
+
+    public synchronized void set(int id, V value) {
+        ensureCapacity(id).set(id, value);
+    }
+
+    public V computeIfAbsent(int id, IntFunction<V> factory) {
+        V value = get(id);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            AtomicReferenceArray<V> current = ensureCapacity(id);
+            value = current.get(id);
+            if (value == null) {
+                value = factory.apply(id);
+                current.set(id, value);
+            }
+            return value;
+        }
+    }
+
+    private AtomicReferenceArray<V> ensureCapacity(int id) {
+        AtomicReferenceArray<V> current = slots;
+        if (id < current.length()) {
+            return current;
+        }
+        AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(Math.max(id + 1, current.length() * 2));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        slots = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,128 @@
+package com.tradingbot.symbols;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Tabella dei simboli: ogni ticker riceve una volta sola un id intero denso (0, 1, 2, ...)
+// che fa da chiave per cache e indici (SymbolSlots, IntLongMap) al posto della stringa.
+// Maiuscole e minuscole sono equivalenti; il nome canonico è sempre in maiuscolo.
+// Letture senza lock su uno snapshot immutabile, inserimenti serializzati che lo sostituiscono.
+// Si internano solo simboli validi (quotati, scambiati, salvati): un ticker sbagliato
+// scritto da un utente passa da find() e non cresce la tabella.
+public final class SymbolTable {
+    private static SymbolTable instance;
+
+    // slots: id + 1 per posizione di hash (0 = libero); names: nome canonico per id
+    private record Table(int[] slots, String[] names, int size) {
+    }
+
+    private volatile Table table = new Table(new int[64], new String[32], 0);
+
+    private SymbolTable() {
+    }
+
+    public static synchronized SymbolTable getInstance() {
+        if (instance == null) {
+            instance = new SymbolTable();
+        }
+        return instance;
+    }
+
+    // Id del simbolo, assegnato alla prima occorrenza
+    public int id(String symbol) {
+        return intern(symbol, 0, symbol.length());
+    }
+
+    // -1 se il simbolo non è mai stato internato
+    public int find(String symbol) {
+        return find(symbol, 0, symbol.length());
+    }
+
+    // Come find(String) su una porzione di testo, senza allocare (es. un argomento di un comando)
+    public int find(CharSequence text, int start, int end) {
+        return find(table, text, start, end, hash(text, start, end));
+    }
+
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int id = find(table, text, start, end, hash);
+        return id >= 0 ? id : insert(text, start, end, hash);
+    }
+
+    public String name(int id) {
+        return table.names()[id];
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    private static int find(Table t, CharSequence text, int start, int end, int hash) {
+        int[] slots = t.slots();
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = slots[i];
+            if (entry == 0) {
+                return -1;
+            }
+            if (matches(t.names()[entry - 1], text, start, end)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private synchronized int insert(CharSequence text, int start, int end, int hash) {
+        Table t = table;
+        // Inserito da un altro thread tra la lettura e il lock
+        int existing = find(t, text, start, end, hash);
+        if (existing >= 0) {
+            return existing;
+        }
+        int id = t.size();
+        String[] names = id < t.names().length ? t.names().clone() : Arrays.copyOf(t.names(), id * 2);
+        names[id] = text.subSequence(start, end).toString().toUpperCase(Locale.ROOT);
+        // Fattore di carico massimo 1/2
+        int[] slots = (id + 1) * 2 > t.slots().length ? rehash(names, id, t.slots().length * 2) : t.slots().clone();
+        place(slots, hash, id);
+        table = new Table(slots, names, id + 1);
+        return id;
+    }
+
+    private static int[] rehash(String[] names, int count, int capacity) {
+        int[] slots = new int[capacity];
+        for (int id = 0; id < count; id++) {
+            place(slots, hash(names[id], 0, names[id].length()), id);
+        }
+        return slots;
+    }
+
+    private static void place(int[] slots, int hash, int id) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = id + 1;
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != Character.toUpperCase(text.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Hash sulle lettere maiuscole, rimescolato perché i ticker si somigliano molto
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toUpperCase(text.charAt(i));
+        }
+        return h ^ (h >>> 16) ^ (h >>> 7);
+    }
+}
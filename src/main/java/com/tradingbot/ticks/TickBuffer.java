@@ -0,0 +1,145 @@
+package com.tradingbot.ticks;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+// Buffer circolare a dimensione fissa con le ultime quotazioni osservate di un
+// simbolo (istante, prezzo in micro-unità, volume cumulato del giorno).
+// Le scritture sono serializzate; le letture non prendono lock e usano un seqlock:
+// se una scrittura avviene durante la copia, la lettura viene ripetuta.
+class TickBuffer {
+    private final int capacity;
+    private final Slots slots;
+
+    // Pari = stabile, dispari = scrittura in corso
+    private volatile long sequence;
+    // Numero totale di tick scritti (la posizione nel buffer è written % capacity)
+    private long written;
+
+    TickBuffer(int capacity, boolean offHeap) {
+        this.capacity = capacity;
+        this.slots = offHeap ? new DirectSlots(capacity) : new HeapSlots(capacity);
+    }
+
+    synchronized void record(long timestamp, long price, long volume) {
+        // Una risposta già vista (es. servita dalla cache HTTP) non è un nuovo tick
+        if (written > 0 && timestamp <= slots.timestamp(index(written - 1))) {
+            return;
+        }
+        long seq = sequence;
+        sequence = seq + 1;
+        VarHandle.storeStoreFence();
+        slots.put(index(written), timestamp, price, volume);
+        written++;
+        sequence = seq + 2;
+    }
+
+    // Copia i tick con istante >= since, dal più vecchio al più recente
+    TickSnapshot snapshot(long since) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            long total = written;
+            int count = (int) Math.min(total, capacity);
+            long[] timestamps = new long[count];
+            long[] prices = new long[count];
+            long[] volumes = new long[count];
+            int n = 0;
+            for (long i = total - count; i < total; i++) {
+                int slot = index(i);
+                long timestamp = slots.timestamp(slot);
+                if (timestamp >= since) {
+                    timestamps[n] = timestamp;
+                    prices[n] = slots.price(slot);
+                    volumes[n] = slots.volume(slot);
+                    n++;
+                }
+            }
+
+            VarHandle.acquireFence();
+            if (sequence == before) {
+                return new TickSnapshot(n, timestamps, prices, volumes);
+            }
+        }
+    }
+
+    private int index(long i) {
+        return (int) (i % capacity);
+    }
+
+    private interface Slots {
+        void put(int slot, long timestamp, long price, long volume);
+
+        long timestamp(int slot);
+
+        long price(int slot);
+
+        long volume(int slot);
+    }
+
+    private static class HeapSlots implements Slots {
+        private final long[] timestamps;
+        private final long[] prices;
+        private final long[] volumes;
+
+        HeapSlots(int capacity) {
+            timestamps = new long[capacity];
+            prices = new long[capacity];
+            volumes = new long[capacity];
+        }
+
+        public void put(int slot, long timestamp, long price, long volume) {
+            timestamps[slot] = timestamp;
+            prices[slot] = price;
+            volumes[slot] = volume;
+        }
+
+        public long timestamp(int slot) {
+            return timestamps[slot];
+        }
+
+        public long price(int slot) {
+            return prices[slot];
+        }
+
+        public long volume(int slot) {
+            return volumes[slot];
+        }
+    }
+
+    // Fuori dallo heap: tre colonne contigue nello stesso buffer diretto, invisibili al GC
+    private static class DirectSlots implements Slots {
+        private final ByteBuffer buffer;
+        private final int priceOffset;
+        private final int volumeOffset;
+
+        DirectSlots(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity * 3 * Long.BYTES);
+            priceOffset = capacity * Long.BYTES;
+            volumeOffset = 2 * capacity * Long.BYTES;
+        }
+
+        public void put(int slot, long timestamp, long price, long volume) {
+            int offset = slot * Long.BYTES;
+            buffer.putLong(offset, timestamp);
+            buffer.putLong(priceOffset + offset, price);
+            buffer.putLong(volumeOffset + offset, volume);
+        }
+
+        public long timestamp(int slot) {
+            return buffer.getLong(slot * Long.BYTES);
+        }
+
+        public long price(int slot) {
+            return buffer.getLong(priceOffset + slot * Long.BYTES);
+        }
+
+        public long volume(int slot) {
+            return buffer.getLong(volumeOffset + slot * Long.BYTES);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.tradingbot.ticks;
+
+import com.tradingbot.money.Money;
+
+// Copia immutabile dei tick di un simbolo in una finestra temporale, con le
+// statistiche calcolate direttamente sugli array primitivi
+public class TickSnapshot {
+    private static final char[] BARS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+
+    private final int size;
+    private final long[] timestamps;
+    private final long[] prices;
+    private final long[] volumes;
+
+    TickSnapshot(int size, long[] timestamps, long[] prices, long[] volumes) {
+        this.size = size;
+        this.timestamps = timestamps;
+        this.prices = prices;
+        this.volumes = volumes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long firstTimestamp() {
+        return timestamps[0];
+    }
+
+    public long lastTimestamp() {
+        return timestamps[size - 1];
+    }
+
+    public long firstPrice() {
+        return prices[0];
+    }
+
+    public long lastPrice() {
+        return prices[size - 1];
+    }
+
+    public long minPrice() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, prices[i]);
+        }
+        return min;
+    }
+
+    public long maxPrice() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, prices[i]);
+        }
+        return max;
+    }
+
+    // Prezzo medio ponderato per il volume scambiato tra due osservazioni consecutive.
+    // Il volume di GLOBAL_QUOTE è cumulato nel giorno: se cala è iniziata una nuova sessione.
+    // Restituisce -1 se nella finestra non risulta volume scambiato.
+    public long vwap() {
+        double weighted = 0;
+        double traded = 0;
+        for (int i = 1; i < size; i++) {
+            long delta = volumes[i] >= volumes[i - 1] ? volumes[i] - volumes[i - 1] : volumes[i];
+            weighted += (double) prices[i] * delta;
+            traded += delta;
+        }
+        return traded > 0 ? Math.round(weighted / traded) : -1;
+    }
+
+    // Andamento del prezzo su al massimo width caratteri, campionando i tick a intervalli regolari
+    public String sparkline(int width) {
+        if (size == 0) {
+            return "";
+        }
+        int points = Math.min(width, size);
+        long min = minPrice();
+        long range = maxPrice() - min;
+        StringBuilder line = new StringBuilder(points);
+        for (int i = 0; i < points; i++) {
+            int index = points == 1 ? size - 1 : (int) ((long) i * (size - 1) / (points - 1));
+            int level = range == 0 ? BARS.length / 2 : (int) ((prices[index] - min) * (BARS.length - 1) / range);
+            line.append(BARS[level]);
+        }
+        return line.toString();
+    }
+
+    public double changePercent() {
+        return size == 0 ? 0 : Money.percent(lastPrice() - firstPrice(), firstPrice());
+    }
+}
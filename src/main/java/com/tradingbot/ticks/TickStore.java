@@ -0,0 +1,42 @@
+package com.tradingbot.ticks;
+
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.symbols.SymbolSlots;
+import com.tradingbot.symbols.SymbolTable;
+
+// Storico recente delle quotazioni per simbolo, alimentato da ogni quotazione
+// scaricata: serve le statistiche intraday senza altre chiamate API.
+// Ogni simbolo occupa una quantità di memoria fissa (TICK_BUFFER_SIZE tick).
+public class TickStore {
+    private static TickStore instance;
+
+    private final int capacity;
+    private final boolean offHeap;
+    private final SymbolTable ids = SymbolTable.getInstance();
+    // Indicizzati per id di simbolo
+    private final SymbolSlots<TickBuffer> buffers = new SymbolSlots<>();
+
+    private TickStore() {
+        ConfigManager config = ConfigManager.getInstance();
+        this.capacity = config.getTickBufferSize();
+        this.offHeap = config.isTickBufferOffHeap();
+    }
+
+    public static synchronized TickStore getInstance() {
+        if (instance == null) {
+            instance = new TickStore();
+        }
+        return instance;
+    }
+
+    // timestamp in millisecondi, prezzo in micro-unità, volume cumulato del giorno
+    public void record(int symbolId, long timestamp, long price, long volume) {
+        buffers.computeIfAbsent(symbolId, id -> new TickBuffer(capacity, offHeap))
+                .record(timestamp, price, volume);
+    }
+
+    public TickSnapshot snapshot(String symbol, long since) {
+        TickBuffer buffer = buffers.get(ids.find(symbol));
+        return buffer != null ? buffer.snapshot(since) : new TickSnapshot(0, new long[0], new long[0], new long[0]);
+    }
+}
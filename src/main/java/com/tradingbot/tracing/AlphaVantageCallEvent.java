@@ -0,0 +1,30 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("tradingbot.AlphaVantageCall")
+@Label("Chiamata Alpha Vantage")
+@Description("Richiesta HTTP ad Alpha Vantage, servita dalla rete o dalla cache su disco")
+@Category({"Trading Bot", "Alpha Vantage"})
+@StackTrace(false)
+public class AlphaVantageCallEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("Funzione")
+    public String function;
+
+    @Label("Simbolo")
+    public String symbol;
+
+    @Label("Stato HTTP")
+    public int status;
+
+    @Label("Dalla cache HTTP")
+    public boolean fromCache;
+}
@@ -0,0 +1,26 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("tradingbot.Command")
+@Label("Comando eseguito")
+@Description("Esecuzione del gestore di un comando, senza l'invio della risposta")
+@Category({"Trading Bot", "Richieste"})
+@StackTrace(false)
+public class CommandEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("Comando")
+    public String command;
+
+    @Label("Attesa in coda")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queued;
+}
@@ -0,0 +1,27 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("tradingbot.InlineQuery")
+@Label("Query inline")
+@Description("Costruzione della risposta inline da indice dei simboli e cache, sul thread degli update")
+@Category({"Trading Bot", "Richieste"})
+@StackTrace(false)
+public class InlineQueryEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("Utente")
+    public long userId;
+
+    @Label("Query")
+    public String query;
+
+    @Label("Risultati")
+    public int results;
+}
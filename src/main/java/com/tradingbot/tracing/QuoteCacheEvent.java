@@ -0,0 +1,22 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("tradingbot.QuoteCacheLookup")
+@Label("Ricerca nella cache quotazioni")
+@Category({"Trading Bot", "Alpha Vantage"})
+@StackTrace(false)
+public class QuoteCacheEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("Simbolo")
+    public String symbol;
+
+    @Label("Trovato")
+    public boolean hit;
+}
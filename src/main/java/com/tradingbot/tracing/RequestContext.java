@@ -0,0 +1,44 @@
+package com.tradingbot.tracing;
+
+// Id della richiesta in corso sul thread (l'update_id di Telegram, 0 fuori da una richiesta).
+// Segue il comando attraverso le code con bind(): tutti gli eventi JFR della stessa
+// richiesta portano lo stesso id, da qualunque thread vengano emessi.
+public final class RequestContext {
+    // Contenitore mutabile: impostare l'id non crea oggetti
+    private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private RequestContext() {
+    }
+
+    public static long current() {
+        return CURRENT.get()[0];
+    }
+
+    // Imposta l'id e restituisce il precedente, da ripristinare con restore()
+    public static long enter(long requestId) {
+        long[] holder = CURRENT.get();
+        long previous = holder[0];
+        holder[0] = requestId;
+        return previous;
+    }
+
+    public static void restore(long previous) {
+        CURRENT.get()[0] = previous;
+    }
+
+    // Il compito girerà su un altro thread con l'id della richiesta corrente
+    public static Runnable bind(Runnable task) {
+        long requestId = current();
+        if (requestId == 0) {
+            return task;
+        }
+        return () -> {
+            long previous = enter(requestId);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("tradingbot.SendMessage")
+@Label("Messaggio inviato")
+@Category({"Trading Bot", "Telegram"})
+@StackTrace(false)
+public class SendMessageEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("Chat")
+    public long chatId;
+
+    @Label("Caratteri")
+    public int length;
+
+    @Label("Attesa del limite di invio")
+    @Timespan(Timespan.NANOSECONDS)
+    public long throttled;
+
+    @Label("Riuscito")
+    public boolean succeeded;
+}
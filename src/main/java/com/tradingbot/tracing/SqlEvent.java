@@ -0,0 +1,21 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("tradingbot.Sql")
+@Label("Statement SQLite")
+@Description("Esecuzione di uno statement; per le query non comprende la lettura delle righe")
+@Category({"Trading Bot", "Database"})
+@StackTrace(false)
+public class SqlEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("SQL")
+    public String sql;
+}
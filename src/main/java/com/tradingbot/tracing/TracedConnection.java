@@ -0,0 +1,68 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.EventType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+// Connessione JDBC che emette un SqlEvent per ogni execute*, con il testo dello statement.
+// Un solo punto copre tutti gli statement di DatabaseManager senza toccare le singole query.
+// Gli statement passano dal proxy solo se l'evento è attivo quando vengono preparati:
+// a registrazione spenta resta un solo passaggio dal proxy della connessione per statement.
+public final class TracedConnection {
+    private static final EventType EVENT = EventType.getEventType(SqlEvent.class);
+
+    private TracedConnection() {
+    }
+
+    public static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(TracedConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (!EVENT.isEnabled()) {
+                        return result;
+                    }
+                    if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                        return traced(statement, PreparedStatement.class, (String) args[0]);
+                    }
+                    if (result instanceof Statement statement && method.getName().equals("createStatement")) {
+                        return traced(statement, Statement.class, null);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object traced(Statement statement, Class<? extends Statement> type, String sql) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            SqlEvent event = new SqlEvent();
+            event.begin();
+            try {
+                return invoke(statement, method, args);
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.requestId = RequestContext.current();
+                    event.sql = sql != null ? sql : args != null && args.length > 0 ? String.valueOf(args[0]) : null;
+                    event.commit();
+                }
+            }
+        };
+        return Proxy.newProxyInstance(TracedConnection.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.tradingbot.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("tradingbot.Update")
+@Label("Update ricevuto")
+@Description("Instradamento di un messaggio sul thread che riceve gli update")
+@Category({"Trading Bot", "Richieste"})
+@StackTrace(false)
+public class UpdateEvent extends Event {
+    @Label("Request ID")
+    public long requestId;
+
+    @Label("Comando")
+    public String command;
+
+    @Label("Utente")
+    public long userId;
+
+    @Label("Esecuzione")
+    @Description("INLINE, SERIAL, POOLED, oppure CACHED/BUSY/UNKNOWN se risposto subito")
+    public String route;
+}
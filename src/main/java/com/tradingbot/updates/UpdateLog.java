@@ -0,0 +1,130 @@
+package com.tradingbot.updates;
+
+import com.tradingbot.config.ConfigManager;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.updates.GetUpdates;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Ultimo update_id elaborato, su un piccolo file mappato in memoria, più una finestra
+// degli id recenti per scartare gli update ricevuti due volte.
+// L'offset viene reso durevole una volta per batch di getUpdates (group commit) e prima
+// di elaborarlo: dopo un crash un comando in corso può andare perso ma non viene mai
+// ripetuto (un /compra eseguito due volte è peggio di uno da rimandare).
+// Due slot scritti a turno [generazione][offset][crc]: uno dei due è sempre integro.
+public class UpdateLog implements AutoCloseable {
+    private static final int SLOT_SIZE = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final UpdateWindow window;
+    private long generation;
+    private long offset;
+
+    public UpdateLog(Path path, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * SLOT_SIZE);
+        this.window = new UpdateWindow(windowSize);
+
+        for (int slot = 0; slot < 2; slot++) {
+            int pos = slot * SLOT_SIZE;
+            long gen = buffer.getLong(pos);
+            long value = buffer.getLong(pos + 8);
+            if (gen > generation && buffer.getInt(pos + 16) == checksum(gen, value)) {
+                generation = gen;
+                offset = value;
+            }
+        }
+        if (generation > 0) {
+            window.restore(offset);
+        }
+    }
+
+    // Log configurato in config.properties; null se il file non si può aprire
+    // (il bot funziona lo stesso, senza protezione dai duplicati dopo un riavvio)
+    public static UpdateLog open() {
+        ConfigManager config = ConfigManager.getInstance();
+        try {
+            return new UpdateLog(Path.of(config.getUpdateLogPath()), config.getUpdateDedupeWindow());
+        } catch (IOException e) {
+            System.err.println("Errore apertura log degli update: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    // Toglie i duplicati e rende durevole l'id più alto del batch prima di restituirlo
+    public synchronized List<Update> admit(List<Update> updates) {
+        List<Update> fresh = new ArrayList<>(updates.size());
+        long highest = -1;
+        for (Update update : updates) {
+            if (window.add(update.getUpdateId())) {
+                fresh.add(update);
+                highest = Math.max(highest, update.getUpdateId());
+            } else {
+                System.out.println("🔁 Update " + update.getUpdateId() + " già elaborato: scartato");
+            }
+        }
+        if (highest >= 0) {
+            commit(highest);
+        }
+        return fresh;
+    }
+
+    // Conferma a Telegram gli update fino all'offset salvato, così la sessione di polling
+    // riparte dal primo non elaborato invece di ricevere di nuovo quelli già gestiti
+    public void confirm(TelegramLongPollingBot bot) {
+        long saved = getOffset();
+        if (saved <= 0) {
+            return;
+        }
+        try {
+            bot.clearWebhook();
+            bot.execute(GetUpdates.builder().offset((int) saved + 1).limit(1).timeout(0).build());
+            System.out.println("📬 Ripresa dagli update successivi a " + saved);
+        } catch (TelegramApiException e) {
+            // Non bloccante: gli update già elaborati vengono comunque scartati dalla finestra
+            System.err.println("Errore conferma offset update: " + e.getMessage());
+        }
+    }
+
+    private void commit(long updateId) {
+        generation++;
+        offset = updateId;
+        int pos = (int) (generation % 2) * SLOT_SIZE;
+        buffer.putLong(pos, generation);
+        buffer.putLong(pos + 8, updateId);
+        buffer.putInt(pos + 16, checksum(generation, updateId));
+        buffer.force(pos, SLOT_SIZE);
+    }
+
+    private static int checksum(long generation, long value) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 8; i++) {
+            crc.update((int) (generation >>> (8 * i)));
+        }
+        for (int i = 0; i < 8; i++) {
+            crc.update((int) (value >>> (8 * i)));
+        }
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,70 @@
+package com.tradingbot.updates;
+
+import java.util.Arrays;
+
+// Insieme degli update_id visti negli ultimi size identificativi: un bit per id
+// in un array circolare, quindi controllo e inserimento costano O(1) e la memoria è fissa.
+class UpdateWindow {
+    private final long[] bits;
+    private final int size;
+    // Id più alto visto (-1 = finestra vuota)
+    private long highest = -1;
+
+    UpdateWindow(int size) {
+        // Potenza di due: la posizione nel ring è id & (size - 1)
+        int n = Math.max(64, size);
+        this.size = Integer.bitCount(n) == 1 ? n : Integer.highestOneBit(n) << 1;
+        this.bits = new long[this.size / 64];
+    }
+
+    // Dopo un riavvio non si sa quali id siano stati visti: tutti quelli <= offset lo sono
+    void restore(long offset) {
+        Arrays.fill(bits, -1L);
+        highest = offset;
+    }
+
+    // false se l'id è già stato visto
+    boolean add(long id) {
+        if (highest < 0 || id <= highest - size) {
+            // Finestra vuota, oppure Telegram ha ricominciato la numerazione
+            // (succede dopo una settimana senza update): si riparte da questo id
+            Arrays.fill(bits, 0);
+            highest = id;
+            set(id);
+            return true;
+        }
+        if (id > highest) {
+            if (id - highest >= size) {
+                Arrays.fill(bits, 0);
+            } else {
+                // Le posizioni saltate appartenevano a id usciti dalla finestra
+                for (long i = highest + 1; i < id; i++) {
+                    clear(i);
+                }
+            }
+            highest = id;
+            set(id);
+            return true;
+        }
+        if (isSet(id)) {
+            return false;
+        }
+        set(id);
+        return true;
+    }
+
+    private boolean isSet(long id) {
+        int slot = (int) (id & (size - 1));
+        return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void set(long id) {
+        int slot = (int) (id & (size - 1));
+        bits[slot >>> 6] |= 1L << slot;
+    }
+
+    private void clear(long id) {
+        int slot = (int) (id & (size - 1));
+        bits[slot >>> 6] &= ~(1L << slot);
+    }
+}
@@ -0,0 +1,5 @@
+package com.tradingbot.watchlist;
+
+// Simbolo seguito da un iscritto al riepilogo (symbol null se la watchlist è vuota)
+public record WatchEntry(long userId, long chatId, String symbol) {
+}
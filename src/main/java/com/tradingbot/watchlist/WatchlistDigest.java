@@ -0,0 +1,201 @@
+package com.tradingbot.watchlist;
+
+import com.tradingbot.api.AlphaVantageClient;
+import com.tradingbot.config.ConfigManager;
+import com.tradingbot.database.DatabaseManager;
+import com.tradingbot.money.Money;
+import com.tradingbot.ticks.TickSnapshot;
+import com.tradingbot.ticks.TickStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// Riepilogo periodico della watchlist per gli utenti iscritti.
+// L'indice è invertito (simbolo -> iscritti): a ogni giro ogni simbolo viene
+// quotato una volta sola e la riga formattata viene condivisa da tutti i messaggi,
+// quindi le chiamate API crescono con i simboli distinti e non con gli utenti.
+public class WatchlistDigest {
+    private static final long CHANGE_WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+    private static WatchlistDigest instance;
+
+    private final DatabaseManager db;
+    private final AlphaVantageClient api;
+    private final TickStore tickStore;
+
+    // Simbolo -> utenti iscritti che lo seguono (ordinato: i messaggi escono in ordine alfabetico)
+    private final Map<String, Set<Long>> subscribers = new TreeMap<>();
+    // Utente iscritto -> chat in cui mandare il riepilogo
+    private final Map<Long, Long> chats = new HashMap<>();
+
+    private volatile BiConsumer<Long, String> notifier = (chatId, text) -> { };
+    private ScheduledExecutorService scheduler;
+    // Nel cluster gli utenti si iscrivono su worker diversi: l'indice si rilegge a ogni giro
+    private boolean reloadEachRound;
+
+    private WatchlistDigest() {
+        this.db = DatabaseManager.getInstance();
+        this.api = AlphaVantageClient.getInstance();
+        this.tickStore = TickStore.getInstance();
+        load();
+    }
+
+    private synchronized void load() {
+        List<WatchEntry> entries = db.loadDigestWatchlists();
+        subscribers.clear();
+        chats.clear();
+        for (WatchEntry entry : entries) {
+            chats.put(entry.userId(), entry.chatId());
+            if (entry.symbol() != null) {
+                subscribers.computeIfAbsent(entry.symbol(), s -> new HashSet<>()).add(entry.userId());
+            }
+        }
+    }
+
+    public static synchronized WatchlistDigest getInstance() {
+        if (instance == null) {
+            instance = new WatchlistDigest();
+        }
+        return instance;
+    }
+
+    public void setNotifier(BiConsumer<Long, String> notifier) {
+        this.notifier = notifier;
+    }
+
+    public synchronized boolean isSubscribed(long userId) {
+        return chats.containsKey(userId);
+    }
+
+    public void subscribe(long userId, long chatId) {
+        db.subscribeDigest(userId, chatId);
+        List<String> symbols = db.getWatchlistSymbols(userId);
+        synchronized (this) {
+            chats.put(userId, chatId);
+            for (String symbol : symbols) {
+                subscribers.computeIfAbsent(symbol, s -> new HashSet<>()).add(userId);
+            }
+        }
+    }
+
+    public void unsubscribe(long userId) {
+        db.unsubscribeDigest(userId);
+        List<String> symbols = db.getWatchlistSymbols(userId);
+        synchronized (this) {
+            chats.remove(userId);
+            for (String symbol : symbols) {
+                Set<Long> users = subscribers.get(symbol);
+                if (users != null && users.remove(userId) && users.isEmpty()) {
+                    subscribers.remove(symbol);
+                }
+            }
+        }
+    }
+
+    // Chiamato quando un utente aggiunge un simbolo alla watchlist
+    public synchronized void onWatch(long userId, String symbol) {
+        if (chats.containsKey(userId)) {
+            subscribers.computeIfAbsent(symbol, s -> new HashSet<>()).add(userId);
+        }
+    }
+
+    public synchronized void start() {
+        int minutes = ConfigManager.getInstance().getDigestIntervalMinutes();
+        if (scheduler != null || minutes <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "watchlist-digest");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::sendDigests, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    // Un solo processo del cluster manda i riepiloghi di tutti gli utenti
+    public synchronized void startShared() {
+        reloadEachRound = true;
+        start();
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    void sendDigests() {
+        try {
+            // Copia dell'indice: le quotazioni si scaricano senza tenere il lock
+            Map<String, long[]> index = new TreeMap<>();
+            Map<Long, Long> recipients;
+            synchronized (this) {
+                if (reloadEachRound) {
+                    load();
+                }
+                subscribers.forEach((symbol, users) ->
+                        index.put(symbol, users.stream().mapToLong(Long::longValue).toArray()));
+                recipients = new HashMap<>(chats);
+            }
+            if (index.isEmpty()) {
+                return;
+            }
+
+            long since = System.currentTimeMillis() - CHANGE_WINDOW_MILLIS;
+            Map<Long, StringBuilder> messages = new HashMap<>();
+            int unavailable = 0;
+            for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                String line = formatLine(entry.getKey(), since);
+                if (line == null) {
+                    unavailable++;
+                }
+                for (long userId : entry.getValue()) {
+                    messages.computeIfAbsent(userId, u -> new StringBuilder("⭐ RIEPILOGO WATCHLIST\n\n"))
+                            .append(line != null ? line : "⚠️ " + entry.getKey() + " - prezzo non disponibile\n");
+                }
+            }
+
+            List<Long> users = new ArrayList<>(messages.keySet());
+            for (long userId : users) {
+                Long chatId = recipients.get(userId);
+                if (chatId != null) {
+                    notifier.accept(chatId, messages.get(userId)
+                            .append("\n💡 /digest per disattivare il riepilogo").toString());
+                }
+            }
+            System.out.println("⭐ Riepiloghi watchlist: " + index.size() + " simboli, "
+                    + users.size() + " utenti, " + unavailable + " prezzi non disponibili");
+        } catch (RuntimeException e) {
+            System.err.println("Errore invio riepiloghi watchlist: " + e.getMessage());
+        }
+    }
+
+    // Una riga per simbolo, calcolata una volta per giro; null se il prezzo non è disponibile
+    private String formatLine(String symbol, long since) {
+        long price;
+        try {
+            price = api.getCurrentPrice(symbol);
+        } catch (IOException e) {
+            System.err.println("Errore quotazione riepilogo per " + symbol + ": " + e.getMessage());
+            return null;
+        }
+
+        TickSnapshot ticks = tickStore.snapshot(symbol, since);
+        if (ticks.size() < 2) {
+            return String.format("📌 %s  $%.2f\n", symbol, Money.toDouble(price));
+        }
+        double change = ticks.changePercent();
+        return String.format("%s %s  $%.2f (%+.2f%% 24h)\n",
+                change >= 0 ? "📈" : "📉", symbol, Money.toDouble(price), change);
+    }
+}